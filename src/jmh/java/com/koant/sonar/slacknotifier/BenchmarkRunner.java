@@ -0,0 +1,27 @@
+package com.koant.sonar.slacknotifier;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that allocation per operation (gc.alloc.rate.norm) is reported.
+ * Accepts the usual JMH command line options, e.g. a benchmark name pattern.
+ */
+public class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // Main class
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
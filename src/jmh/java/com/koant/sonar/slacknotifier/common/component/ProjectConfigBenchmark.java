@@ -0,0 +1,79 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.openjdk.jmh.annotations.*;
+import org.sonar.api.config.MapSettings;
+import org.sonar.api.config.Settings;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.koant.sonar.slacknotifier.common.SlackNotifierProp.*;
+
+/**
+ * Cost of the per analysis config work, by number of project configs:
+ * refreshing unchanged settings, looking up an exactly configured, a wildcard configured and an unconfigured project,
+ * and rejecting an unconfigured project that was looked up before.
+ * Half of the configs are exact project keys and half are wildcards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectConfigBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int configs;
+
+    private BenchmarkComponent component;
+
+    @Setup
+    public void setup() {
+        Settings settings = new MapSettings();
+        StringBuilder ids = new StringBuilder();
+        for (int i = 0; i < configs; i++) {
+            String id = "c" + i;
+            ids.append(i == 0 ? "" : ",").append(id);
+            String prefix = CONFIG.property() + "." + id + ".";
+            settings.setProperty(prefix + PROJECT.property(), i % 2 == 0 ? "org.team" + i + ":project" : "org.team" + i + ":*");
+            settings.setProperty(prefix + CHANNEL.property(), "#team" + i);
+            settings.setProperty(prefix + QG_FAIL_ONLY.property(), "false");
+        }
+        settings.setProperty(CONFIG.property(), ids.toString());
+        component = new BenchmarkComponent(settings);
+        component.refreshSettings();
+        component.getProjectConfig("com.elsewhere:unconfigured");
+    }
+
+    @Benchmark
+    public void refreshUnchangedSettings() {
+        component.refreshSettings();
+    }
+
+    @Benchmark
+    public Optional<ProjectConfig> lookupExact() {
+        return component.getProjectConfig("org.team" + (configs - 2) + ":project");
+    }
+
+    @Benchmark
+    public Optional<ProjectConfig> lookupWildcard() {
+        return component.getProjectConfig("org.team" + (configs - 1) + ":module:submodule");
+    }
+
+    @Benchmark
+    public Optional<ProjectConfig> lookupUnconfigured() {
+        return component.getProjectConfig("com.elsewhere:unconfigured");
+    }
+
+    @Benchmark
+    public boolean rejectKnownUnconfigured() {
+        return component.isKnownUnconfigured("com.elsewhere:unconfigured");
+    }
+
+    static class BenchmarkComponent extends AbstractSlackNotifyingComponent {
+        BenchmarkComponent(Settings settings) {
+            super(settings);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.openjdk.jmh.annotations.*;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester.newConditionBuilder;
+import static org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester.newQualityGateBuilder;
+
+/**
+ * Cost of routing an analysis by number of rules, each with a glob project key, a quality gate status, a failing metric
+ * and a branch condition: matching the last rule, and falling through every rule whose key matches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int rules;
+
+    private ProjectConfigIndex index;
+    private String projectKey;
+    private QualityGate qualityGate;
+    private Map<String, String> release;
+    private Map<String, String> master;
+
+    @Setup
+    public void setup() {
+        List<ProjectConfig> configs = new ArrayList<>(rules);
+        for (int i = 0; i < rules; i++) {
+            configs.add(new ProjectConfig("org.team" + i + ".*:*", "#team" + i, false, false, null, null, false,
+                    RoutingConditions.parse("ERROR", "metric" + i, "sonar.analysis.branch=release/" + i + ".*")));
+        }
+        configs.add(new ProjectConfig("*", "#all", false));
+        index = new ProjectConfigIndex(configs);
+        projectKey = "org.team" + (rules - 1) + ".group:project";
+        qualityGate = newQualityGateBuilder()
+                .setId("id")
+                .setName("name")
+                .setStatus(QualityGate.Status.ERROR)
+                .add(newConditionBuilder()
+                        .setMetricKey("metric" + (rules - 1))
+                        .setOperator(QualityGate.Operator.GREATER_THAN)
+                        .setErrorThreshold("0")
+                        .build(QualityGate.EvaluationStatus.ERROR, "1"))
+                .build();
+        release = Collections.singletonMap("sonar.analysis.branch", "release/" + (rules - 1) + ".0");
+        master = Collections.singletonMap("sonar.analysis.branch", "master");
+    }
+
+    @Benchmark
+    public Optional<ProjectConfig> matchLastRule() {
+        return index.lookup(projectKey, qualityGate, release);
+    }
+
+    @Benchmark
+    public Optional<ProjectConfig> fallThroughToCatchAll() {
+        return index.lookup(projectKey, qualityGate, master);
+    }
+}
@@ -0,0 +1,116 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import com.koant.sonar.slacknotifier.common.delivery.PayloadEncoder;
+import com.koant.sonar.slacknotifier.common.delivery.PayloadRequestBody;
+import okio.Buffer;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.utils.System2;
+import org.sonar.core.i18n.DefaultI18n;
+import org.sonar.core.platform.PluginRepository;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rendering one notification with ProjectAnalysisPayloadBuilder, and of serializing it into a request body,
+ * by quality gate size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadBuilderBenchmark {
+
+    @Param({"5", "50", "200"})
+    int conditions;
+
+    @Param({"false", "true"})
+    boolean qgFailOnly;
+
+    @Param({"en", "fr"})
+    String locale;
+
+    private final MetricNameCache metricNames = new MetricNameCache();
+    private DefaultI18n i18n;
+    private PostProjectAnalysisTask.ProjectAnalysis analysis;
+    private ProjectConfig projectConfig;
+    private final Gson gson = GsonFactory.createSnakeCase();
+    private final PayloadEncoder encoder = new PayloadEncoder();
+    private final Buffer sink = new Buffer();
+    private Payload payload;
+
+    @Setup
+    public void setup() {
+        i18n = new DefaultI18n(Mockito.mock(PluginRepository.class), Mockito.mock(System2.class));
+        i18n.start();
+        CaptorPostProjectAnalysisTask captor = new CaptorPostProjectAnalysisTask();
+        Analyses.qualityGateWithConditions(captor, "bench:project", QualityGate.Status.ERROR, conditions);
+        analysis = captor.getProjectAnalysis();
+        projectConfig = new ProjectConfig("bench:*", "#bench", qgFailOnly);
+        payload = build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        i18n.stop();
+    }
+
+    @Benchmark
+    public Payload build() {
+        return ProjectAnalysisPayloadBuilder.of(analysis)
+                .projectConfig(projectConfig)
+                .i18n(i18n)
+                .locale(Locale.forLanguageTag(locale))
+                .metricNames(metricNames)
+                .projectUrl("http://localhost:9000/dashboard?id=bench:project")
+                .username("CKSSlackNotifier")
+                .build();
+    }
+
+    @Benchmark
+    public List<Payload> buildMessages() {
+        return ProjectAnalysisPayloadBuilder.of(analysis)
+                .projectConfig(projectConfig)
+                .i18n(i18n)
+                .locale(Locale.forLanguageTag(locale))
+                .metricNames(metricNames)
+                .projectUrl("http://localhost:9000/dashboard?id=bench:project")
+                .username("CKSSlackNotifier")
+                .buildMessages();
+    }
+
+    @Benchmark
+    public long serialize() throws IOException {
+        new PayloadRequestBody(encoder, payload, bytes -> { }).writeTo(sink);
+        long size = sink.size();
+        sink.clear();
+        return size;
+    }
+
+    /**
+     * Baseline of {@link #serialize()}: the same JSON written by reflection, as jslack does
+     */
+    @Benchmark
+    public long serializeWithGson() throws IOException {
+        Writer writer = new OutputStreamWriter(sink.outputStream(), StandardCharsets.UTF_8);
+        gson.toJson(payload, Payload.class, gson.newJsonWriter(writer));
+        writer.flush();
+        long size = sink.size();
+        sink.clear();
+        return size;
+    }
+}
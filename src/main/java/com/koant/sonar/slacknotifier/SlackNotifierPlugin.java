@@ -1,5 +1,6 @@
 package com.koant.sonar.slacknotifier;
 
+import com.koant.sonar.slacknotifier.extension.task.PayloadTemplates;
 import com.koant.sonar.slacknotifier.extension.task.SlackPostProjectAnalysisTask;
 import org.sonar.api.Plugin;
 import org.sonar.api.PropertyType;
@@ -8,8 +9,10 @@ import org.sonar.api.config.PropertyFieldDefinition;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.koant.sonar.slacknotifier.common.SlackNotifierProp.*;
+import static com.koant.sonar.slacknotifier.common.component.AbstractSlackNotifyingComponent.*;
 
 public class SlackNotifierPlugin implements Plugin {
 
@@ -69,20 +72,363 @@ public class SlackNotifierPlugin implements Plugin {
                 .fields(
                     PropertyFieldDefinition.build(PROJECT.property())
                         .name("Project Key")
-                        .description("Ex: com.koant.sonar.slack:sonar-slack-notifier-plugin, can use '*' wildcard at the end")
+                        .description("Ex: com.koant.sonar.slack:sonar-slack-notifier-plugin, can use '*' and '?' wildcards, " +
+                                "or a regular expression prefixed with regex:")
                         .type(PropertyType.STRING)
                         .build(),
                     PropertyFieldDefinition.build(CHANNEL.property())
                         .name("Slack channel")
-                        .description("Channel to send project specific messages to")
+                        .description("Channel to send project specific messages to. " +
+                                "Several channels and incoming webhook URLs can be given, separated by commas; messages are sent to all of them.")
                         .type(PropertyType.STRING)
                         .build(),
                         PropertyFieldDefinition.build(QG_FAIL_ONLY.property())
                         .name("Send on failed Quality Gate")
                         .description("Should notification be sent only if Quality Gate did not pass OK")
                         .type(PropertyType.BOOLEAN)
+                        .build(),
+                        PropertyFieldDefinition.build(STATUS_CHANGE_ONLY.property())
+                        .name("Send on Quality Gate status change")
+                        .description("Should notification be sent only if the Quality Gate status differs from the previous analysis, e.g. from OK to ERROR")
+                        .type(PropertyType.BOOLEAN)
+                        .build(),
+                        PropertyFieldDefinition.build(PROJECT_MESSAGE_TEMPLATE.property())
+                        .name("Message template")
+                        .description("Notification text for this project, overriding the global message template")
+                        .type(PropertyType.STRING)
+                        .build(),
+                        PropertyFieldDefinition.build(PROJECT_CONDITION_TEMPLATE.property())
+                        .name("Condition template")
+                        .description("Title of the quality gate condition fields for this project, overriding the global condition template")
+                        .type(PropertyType.STRING)
+                        .build(),
+                        PropertyFieldDefinition.build(DIGEST.property())
+                        .name("Digest")
+                        .description("Should analyses be summarised in one message per channel per digest period instead of notified one by one")
+                        .type(PropertyType.BOOLEAN)
+                        .build(),
+                        PropertyFieldDefinition.build(QG_STATUS.property())
+                        .name("Quality Gate statuses")
+                        .description("Use this configuration only for these Quality Gate statuses, comma separated: OK, WARN, ERROR, " +
+                                "or NONE for analyses without Quality Gate. Empty for all statuses")
+                        .type(PropertyType.STRING)
+                        .build(),
+                        PropertyFieldDefinition.build(FAILING_METRICS.property())
+                        .name("Failing metrics")
+                        .description("Use this configuration only if the Quality Gate condition on one of these metrics failed, " +
+                                "comma separated metric keys, e.g. new_coverage,new_bugs")
+                        .type(PropertyType.STRING)
+                        .build(),
+                        PropertyFieldDefinition.build(SCANNER_PROPERTIES.property())
+                        .name("Scanner properties")
+                        .description("Use this configuration only if the analysis scanner context has these properties, comma separated " +
+                                "key=glob pairs, e.g. sonar.analysis.branch=release/*. A key alone only requires the property to be set")
+                        .type(PropertyType.STRING)
                         .build()
                 )
                 .build());
+
+        extensions.add(PropertyDefinition.builder(DELIVERY_QUEUE_CAPACITY.property())
+            .name("Delivery queue capacity")
+            .description("Maximum number of notifications waiting to be sent to Slack. Notifications are dropped when the queue is full. " +
+                    "Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_QUEUE_CAPACITY))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(4)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_WORKERS.property())
+            .name("Delivery worker threads")
+            .description("Number of threads sending queued notifications to Slack. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_WORKERS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(5)
+            .build());
+        extensions.add(PropertyDefinition.builder(BATCH_WINDOW.property())
+            .name("Batching window (seconds)")
+            .description("Notifications to the same Slack channel arriving within this many seconds are merged into a single message, " +
+                    "with one attachment per project. 0 sends every notification separately.")
+            .defaultValue("0")
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(6)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_RETRY_ATTEMPTS.property())
+            .name("Delivery attempts")
+            .description("How many times a notification is attempted when Slack is unreachable, answers with a server error " +
+                    "or rate limits the webhook. Retries back off exponentially. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_RETRY_ATTEMPTS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(7)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_RATE.property())
+            .name("Messages per second per webhook")
+            .description("Rate limit applied to each Slack incoming webhook. Slack allows about one message per second. " +
+                    "Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_RATE))
+            .type(PropertyType.FLOAT)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(8)
+            .build());
+        extensions.add(PropertyDefinition.builder(DATA_DIR.property())
+            .name("Data directory")
+            .description("Directory where the plugin keeps its durable state, such as the outbox of undelivered notifications. " +
+                    "Defaults to " + DEFAULT_DATA_DIR_NAME + " under the SonarQube data directory (sonar.path.data).")
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(9)
+            .build());
+        extensions.add(PropertyDefinition.builder(OUTBOX_ENABLED.property())
+            .name("Durable outbox")
+            .description("Journal notifications to disk until Slack has accepted them, and resend undelivered ones after a restart. " +
+                    "Changes take effect after a restart.")
+            .defaultValue("true")
+            .type(PropertyType.BOOLEAN)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(10)
+            .build());
+        extensions.add(PropertyDefinition.builder(HTTP_CONNECT_TIMEOUT.property())
+            .name("HTTP connect timeout")
+            .description("Milliseconds to wait for a connection to Slack. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_HTTP_CONNECT_TIMEOUT_MS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(11)
+            .build());
+        extensions.add(PropertyDefinition.builder(HTTP_READ_TIMEOUT.property())
+            .name("HTTP read timeout")
+            .description("Milliseconds to wait for data from Slack once connected. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_HTTP_READ_TIMEOUT_MS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(12)
+            .build());
+        extensions.add(PropertyDefinition.builder(HTTP_DEADLINE.property())
+            .name("HTTP deadline")
+            .description("Milliseconds after which a webhook call is cancelled, whatever its progress. " +
+                    "A cancelled call counts as a failed attempt and is retried. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_HTTP_DEADLINE_MS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(13)
+            .build());
+        extensions.add(PropertyDefinition.builder(LOCALE.property())
+            .name("Locale")
+            .description("Language tag of the locale used for metric names and numbers in notifications, e.g. en or fr-FR. " +
+                    "Metric names are taken from the installed language packs.")
+            .defaultValue(DEFAULT_LOCALE)
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(14)
+            .build());
+        extensions.add(PropertyDefinition.builder(MESSAGE_TEMPLATE.property())
+            .name("Message template")
+            .description("Notification text. Placeholders: " + placeholders(PayloadTemplates.MESSAGE_VARIABLES) + ". " +
+                    "Defaults to " + PayloadTemplates.DEFAULT_MESSAGE)
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(15)
+            .build());
+        extensions.add(PropertyDefinition.builder(CONDITION_TEMPLATE.property())
+            .name("Condition template")
+            .description("Title of the quality gate condition fields. Placeholders: " + placeholders(PayloadTemplates.CONDITION_VARIABLES) + ". " +
+                    "Defaults to " + PayloadTemplates.DEFAULT_CONDITION)
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(16)
+            .build());
+        extensions.add(PropertyDefinition.builder(DEDUP_TTL.property())
+            .name("Duplicate suppression (seconds)")
+            .description("A notification with the same project, quality gate status and condition values as the last one sent " +
+                    "to the same channel within this many seconds is not sent. 0 disables duplicate suppression.")
+            .defaultValue("0")
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(17)
+            .build());
+        extensions.add(PropertyDefinition.builder(DEDUP_MAX_ENTRIES.property())
+            .name("Duplicate suppression capacity")
+            .description("Maximum number of projects whose last notification is remembered. The least recently analyzed projects are forgotten first.")
+            .defaultValue(String.valueOf(DEFAULT_DEDUP_MAX_ENTRIES))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(18)
+            .build());
+        extensions.add(PropertyDefinition.builder(CIRCUIT_WINDOW.property())
+            .name("Circuit breaker window")
+            .description("Number of recent calls to a Slack webhook whose failure rate decides whether its circuit opens. " +
+                    "Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_CIRCUIT_WINDOW))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(19)
+            .build());
+        extensions.add(PropertyDefinition.builder(CIRCUIT_FAILURE_RATE.property())
+            .name("Circuit breaker failure rate (%)")
+            .description("Percentage of failed calls (server errors and timeouts) in the window that opens the circuit of a webhook. " +
+                    "While it is open, notifications to the webhook are parked instead of attempted. " +
+                    "A value above 100 disables the circuit breaker. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_CIRCUIT_FAILURE_RATE))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(20)
+            .build());
+        extensions.add(PropertyDefinition.builder(CIRCUIT_OPEN_SECONDS.property())
+            .name("Circuit breaker probe interval (seconds)")
+            .description("How long an open circuit waits before a single parked notification is sent as a probe. " +
+                    "If it is delivered, the circuit closes and the parked notifications are sent. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_CIRCUIT_OPEN_SECONDS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(21)
+            .build());
+        extensions.add(PropertyDefinition.builder(DIGEST_PERIOD.property())
+            .name("Digest period (minutes)")
+            .description("Minutes summarised by one digest message, for projects configured to receive digests, e.g. 60 for hourly " +
+                    "or 1440 for daily digests. Digests are sent at multiples of the period since midnight UTC.")
+            .defaultValue(String.valueOf(DEFAULT_DIGEST_PERIOD_MINUTES))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(22)
+            .build());
+        extensions.add(PropertyDefinition.builder(WEBAPI_TOKEN.property())
+            .name("Slack bot token")
+            .description("Bot token with the chat:write scope. When set, notifications to channels are posted through the Slack Web API " +
+                    "instead of the webhook, and later notifications of a project update its message or reply in its thread " +
+                    "instead of posting new messages. Webhook URLs listed as project channels are still posted to. " +
+                    "Changes take effect after a restart.")
+            .type(PropertyType.PASSWORD)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(23)
+            .build());
+        extensions.add(PropertyDefinition.builder(WEBAPI_URL.property())
+            .name("Slack Web API URL")
+            .description("Base URL of the Slack Web API methods. Changes take effect after a restart.")
+            .defaultValue(DEFAULT_WEBAPI_URL)
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(24)
+            .build());
+        extensions.add(PropertyDefinition.builder(WEBAPI_MODE.property())
+            .name("Slack Web API mode")
+            .description("What later notifications of a project do with the message posted for it: \"update\" replaces its content, " +
+                    "\"thread\" replies in its thread. Changes take effect after a restart.")
+            .defaultValue(DEFAULT_WEBAPI_MODE)
+            .type(PropertyType.SINGLE_SELECT_LIST)
+            .options("update", "thread")
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(25)
+            .build());
+        extensions.add(PropertyDefinition.builder(WEBAPI_MESSAGE_TTL.property())
+            .name("Slack Web API message lifetime (hours)")
+            .description("Hours after which the message of a project is not updated or replied to anymore, and the next " +
+                    "notification is posted as a new message. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_WEBAPI_MESSAGE_TTL_HOURS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(26)
+            .build());
+        extensions.add(PropertyDefinition.builder(WEBAPI_MAX_MESSAGES.property())
+            .name("Slack Web API remembered messages")
+            .description("Maximum number of project messages remembered for updates and replies. When full, the message of the " +
+                    "project notified least recently is forgotten. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_WEBAPI_MAX_MESSAGES))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(27)
+            .build());
+        extensions.add(PropertyDefinition.builder(MEASURES.property())
+            .name("Measures")
+            .description("Comma separated keys of metrics whose measures are added to the notifications, e.g. " +
+                    "coverage,bugs,vulnerabilities,code_smells. The measures are fetched from the SonarQube web API with a single " +
+                    "request per analysis. Leave empty to only show the quality gate conditions.")
+            .type(PropertyType.STRING)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(28)
+            .build());
+        extensions.add(PropertyDefinition.builder(MEASURES_TOKEN.property())
+            .name("Measures token")
+            .description("Token of a SonarQube user allowed to browse the projects, used to fetch the measures. " +
+                    "Leave empty if projects can be browsed anonymously.")
+            .type(PropertyType.PASSWORD)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(29)
+            .build());
+        extensions.add(PropertyDefinition.builder(MEASURES_BUDGET.property())
+            .name("Measures time budget (ms)")
+            .description("Milliseconds a notification waits for the measures of its project. When they are not fetched in time, " +
+                    "the notification is sent without them.")
+            .defaultValue(String.valueOf(DEFAULT_MEASURES_BUDGET_MS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(30)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_AGING.property())
+            .name("Delivery aging (seconds)")
+            .description("Notifications are delivered by priority: failed quality gates first, then warnings, then passed quality gates. " +
+                    "Every this many seconds of waiting raise a notification by one priority level, so that passed quality gates are " +
+                    "still delivered when failures keep coming. Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_AGING_SECONDS))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(31)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_SHEDDING.property())
+            .name("Load shedding")
+            .description("What happens to passed quality gate notifications when the delivery backlog reaches the load shedding threshold: " +
+                    "\"none\" queues them like the others, \"drop\" drops them, \"merge\" merges them into a waiting passed quality gate " +
+                    "notification to the same channel. Except with \"none\", a full queue also drops the passed quality gate notification " +
+                    "that would be delivered last to make room for a failed one. Changes take effect after a restart.")
+            .defaultValue(DEFAULT_DELIVERY_SHEDDING)
+            .type(PropertyType.SINGLE_SELECT_LIST)
+            .options("none", "drop", "merge")
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(32)
+            .build());
+        extensions.add(PropertyDefinition.builder(DELIVERY_SHEDDING_THRESHOLD.property())
+            .name("Load shedding threshold")
+            .description("Number of notifications waiting for delivery from which passed quality gate notifications are shed. " +
+                    "Changes take effect after a restart.")
+            .defaultValue(String.valueOf(DEFAULT_DELIVERY_SHEDDING_THRESHOLD))
+            .type(PropertyType.INTEGER)
+            .category(CATEGORY)
+            .subCategory(SUBCATEGORY)
+            .index(33)
+            .build());
+    }
+
+    private static String placeholders(List<String> variables) {
+        return variables.stream().map(v -> "${" + v + "}").collect(Collectors.joining(", "));
     }
 }
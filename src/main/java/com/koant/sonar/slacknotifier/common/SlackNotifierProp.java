@@ -48,7 +48,171 @@ public enum SlackNotifierProp {
     /**
      * @see SlackNotifierProp#CONFIG
      */
-    QG_FAIL_ONLY("qg");
+    QG_FAIL_ONLY("qg"),
+    /**
+     * Should notifications be sent only when the quality gate status of the project changes?
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    STATUS_CHANGE_ONLY("statusChangeOnly"),
+    /**
+     * Project specific template of the notification text
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    PROJECT_MESSAGE_TEMPLATE("messageTemplate"),
+    /**
+     * Project specific template of the condition field titles
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    PROJECT_CONDITION_TEMPLATE("conditionTemplate"),
+    /**
+     * Should analyses be summarised in a periodic digest instead of notified one by one?
+     *
+     * @see SlackNotifierProp#DIGEST_PERIOD
+     * @see SlackNotifierProp#CONFIG
+     */
+    DIGEST("digest"),
+    /**
+     * Quality gate statuses the project config is used for, all if empty
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    QG_STATUS("qgStatus"),
+    /**
+     * Metrics one of which must have a failed quality gate condition for the project config to be used
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    FAILING_METRICS("failingMetrics"),
+    /**
+     * Scanner context properties, such as the branch, the analysis must have for the project config to be used
+     *
+     * @see SlackNotifierProp#CONFIG
+     */
+    SCANNER_PROPERTIES("scannerProperties"),
+
+    /**
+     * Maximum number of notifications waiting for delivery. Notifications beyond this are dropped.
+     */
+    DELIVERY_QUEUE_CAPACITY("ckss.delivery.queue.capacity"),
+    /**
+     * Number of threads posting queued notifications to Slack
+     */
+    DELIVERY_WORKERS("ckss.delivery.workers"),
+    /**
+     * Seconds to collect notifications to the same channel before sending them merged into one message. 0 disables batching.
+     */
+    BATCH_WINDOW("ckss.batch.window"),
+    /**
+     * How many times a notification is attempted before it is given up, when Slack fails or rate limits it
+     */
+    DELIVERY_RETRY_ATTEMPTS("ckss.delivery.retry.attempts"),
+    /**
+     * Messages per second posted to a single incoming webhook
+     */
+    DELIVERY_RATE("ckss.delivery.rate"),
+    /**
+     * Directory where the plugin keeps its durable state. Defaults to a directory under sonar.path.data
+     */
+    DATA_DIR("ckss.data.dir"),
+    /**
+     * Should notifications be journaled to disk until delivered, so they survive a restart?
+     */
+    OUTBOX_ENABLED("ckss.outbox.enabled"),
+    /**
+     * Milliseconds to wait for a connection to Slack
+     */
+    HTTP_CONNECT_TIMEOUT("ckss.http.connectTimeout"),
+    /**
+     * Milliseconds to wait for data from Slack
+     */
+    HTTP_READ_TIMEOUT("ckss.http.readTimeout"),
+    /**
+     * Milliseconds after which a single webhook call is cancelled
+     */
+    HTTP_DEADLINE("ckss.http.deadline"),
+    /**
+     * Locale of metric names and numbers in notifications, as a language tag
+     */
+    LOCALE("ckss.locale"),
+    /**
+     * Template of the notification text, for projects without their own
+     */
+    MESSAGE_TEMPLATE("ckss.template.message"),
+    /**
+     * Template of the condition field titles, for projects without their own
+     */
+    CONDITION_TEMPLATE("ckss.template.condition"),
+    /**
+     * Seconds during which a notification identical to the last one sent for the project is suppressed, 0 to disable
+     */
+    DEDUP_TTL("ckss.dedup.ttl"),
+    /**
+     * Maximum number of projects whose last notification is remembered for duplicate suppression
+     */
+    DEDUP_MAX_ENTRIES("ckss.dedup.maxEntries"),
+    /**
+     * Number of recent calls to a webhook its failure rate is computed over
+     */
+    CIRCUIT_WINDOW("ckss.circuit.window"),
+    /**
+     * Percentage of failed calls to a webhook that opens its circuit
+     */
+    CIRCUIT_FAILURE_RATE("ckss.circuit.failureRate"),
+    /**
+     * Seconds a circuit stays open before a probe is sent
+     */
+    CIRCUIT_OPEN_SECONDS("ckss.circuit.openSeconds"),
+    /**
+     * Minutes covered by a digest, e.g. 60 for hourly or 1440 for daily digests
+     */
+    DIGEST_PERIOD("ckss.digest.period"),
+    /**
+     * Slack bot token. When set, notifications to channels are posted through the Web API instead of the webhook
+     */
+    WEBAPI_TOKEN("ckss.webapi.token.secured"),
+    /**
+     * Base URL of the Slack Web API methods
+     */
+    WEBAPI_URL("ckss.webapi.url"),
+    /**
+     * What later notifications of a project do with its message: "update" it or reply in its "thread"
+     */
+    WEBAPI_MODE("ckss.webapi.mode"),
+    /**
+     * Hours after which the message of a project is not updated or replied to anymore, and a new one is posted
+     */
+    WEBAPI_MESSAGE_TTL("ckss.webapi.messageTtl"),
+    /**
+     * Maximum number of project messages remembered for updates and replies
+     */
+    WEBAPI_MAX_MESSAGES("ckss.webapi.maxMessages"),
+    /**
+     * Comma separated keys of the metrics whose measures are added to the notifications, e.g. coverage,bugs
+     */
+    MEASURES("ckss.measures"),
+    /**
+     * SonarQube user token the measures are fetched with
+     */
+    MEASURES_TOKEN("ckss.measures.token.secured"),
+    /**
+     * Milliseconds a notification waits for the measures of its project before being sent without them
+     */
+    MEASURES_BUDGET("ckss.measures.budget"),
+    /**
+     * Seconds of waiting that raise a queued notification by one priority level
+     */
+    DELIVERY_AGING("ckss.delivery.aging"),
+    /**
+     * What happens to passed quality gate notifications when the delivery backlog is high: "none", "drop" or "merge"
+     */
+    DELIVERY_SHEDDING("ckss.delivery.shedding"),
+    /**
+     * Number of waiting notifications from which passed quality gate notifications are shed
+     */
+    DELIVERY_SHEDDING_THRESHOLD("ckss.delivery.shedding.threshold");
 
     private String property;
 
@@ -0,0 +1,117 @@
+package com.koant.sonar.slacknotifier.common.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Bounded map whose entries expire a fixed time after they were put. When full, the least recently used entry
+ * is evicted, so memory stays capped however many keys are seen. Lookups and updates are O(1).
+ * <p>
+ * Thread-safe: all operations hold the cache lock, which is never held for longer than a map update.
+ * </p>
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    public ExpiringLruCache(int maxEntries, long ttl, TimeUnit unit) {
+        this(maxEntries, ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of the current time in nanoseconds
+     */
+    public ExpiringLruCache(int maxEntries, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the value, or null if absent or expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() - entry.expiresAt >= 0) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long now = clock.getAsLong();
+        evictExpiredEldest(now);
+        entries.put(key, new Entry<>(value, now + ttlNanos));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes the entries whose key matches. Unlike the other operations it goes through all the entries.
+     */
+    public synchronized void removeIf(Predicate<K> matches) {
+        entries.keySet().removeIf(matches);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public long getTtl(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Drops expired entries from the least recently used end, stopping at the first live one so that a put stays O(1)
+     * amortized. Entries expiring behind a recently used one are dropped when looked up or evicted by size.
+     */
+    private void evictExpiredEldest(long now) {
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().expiresAt < 0) {
+                return;
+            }
+            it.remove();
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package com.koant.sonar.slacknotifier.common.component;
 
 import com.koant.sonar.slacknotifier.common.SlackNotifierProp;
+import com.koant.sonar.slacknotifier.common.delivery.DeliveryQueue;
+import com.koant.sonar.slacknotifier.common.delivery.SlackWebApiSender;
+import com.koant.sonar.slacknotifier.common.metrics.SkipReason;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Settings;
-import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Abstract base component for Slack notifying Sonar extensions.
@@ -18,8 +22,37 @@ public abstract class AbstractSlackNotifyingComponent {
 
     private static final Logger LOG = Loggers.get(AbstractSlackNotifyingComponent.class);
 
+    public static final int DEFAULT_DELIVERY_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_DELIVERY_WORKERS = 2;
+    public static final int DEFAULT_DELIVERY_RETRY_ATTEMPTS = 4;
+    public static final double DEFAULT_DELIVERY_RATE = 1.0;
+    public static final String DEFAULT_DATA_DIR_NAME = "cks-slack-notifier";
+    public static final int DEFAULT_HTTP_CONNECT_TIMEOUT_MS = 5_000;
+    public static final int DEFAULT_HTTP_READ_TIMEOUT_MS = 10_000;
+    public static final int DEFAULT_HTTP_DEADLINE_MS = 30_000;
+    public static final String DEFAULT_LOCALE = "en";
+    public static final int DEFAULT_DEDUP_MAX_ENTRIES = 10_000;
+    public static final int DEFAULT_CIRCUIT_WINDOW = 10;
+    public static final int DEFAULT_CIRCUIT_FAILURE_RATE = 50;
+    public static final int DEFAULT_CIRCUIT_OPEN_SECONDS = 30;
+    public static final int DEFAULT_DIGEST_PERIOD_MINUTES = 60;
+    public static final String DEFAULT_WEBAPI_URL = "https://slack.com/api/";
+    public static final String DEFAULT_WEBAPI_MODE = "update";
+    public static final int DEFAULT_WEBAPI_MESSAGE_TTL_HOURS = 24;
+    public static final int DEFAULT_WEBAPI_MAX_MESSAGES = 10_000;
+    public static final int DEFAULT_MEASURES_BUDGET_MS = 500;
+    public static final int DEFAULT_DELIVERY_AGING_SECONDS = 60;
+    public static final String DEFAULT_DELIVERY_SHEDDING = "none";
+    public static final int DEFAULT_DELIVERY_SHEDDING_THRESHOLD = 500;
+
     private final Settings settings;
-    private Map<String, ProjectConfig> projectConfigMap = Collections.emptyMap();
+    /**
+     * How long a project found to have no config is rejected without checking the project config settings for changes
+     */
+    static final long UNCONFIGURED_RECHECK_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private volatile ProjectConfigSnapshot projectConfigs = ProjectConfigSnapshot.EMPTY;
+    private volatile long projectConfigsCheckedAtNanos;
 
     public AbstractSlackNotifyingComponent(Settings settings) {
         this.settings = settings;
@@ -33,23 +66,45 @@ public abstract class AbstractSlackNotifyingComponent {
      * 1) the Settings object is constructor injected to this class.
      * 2) the values reflected by the Settings object reflect latest settings configured
      * 3) but the constructor of this class is called only once, and after that the class is never instantiated again (the same instance is reused)
-     * 4) thus when the instance is used to perform something, we must refresh the projectConfigMap when the execution starts
+     * 4) thus when the instance is used to perform something, we must refresh the project configs when the execution starts
      * </pre>
+     * The project configs are only rebuilt when the settings they depend on have changed.
      */
     protected void refreshSettings() {
-        LOG.info("Refreshing settings");
+        LOG.debug("Refreshing settings");
         refreshProjectConfigs();
     }
 
     private void refreshProjectConfigs() {
-        LOG.info("Refreshing project configs");
-        Set<ProjectConfig> oldValues = new HashSet<>();
-        this.projectConfigMap.values().forEach(c -> oldValues.add(new ProjectConfig(c)));
-        this.projectConfigMap = buildProjectConfigByProjectKeyMap(settings);
-        Set<ProjectConfig> newValues = new HashSet<>(this.projectConfigMap.values());
-        if (!oldValues.equals(newValues)) {
-            LOG.info("Old configs [{}] --> new configs [{}]", oldValues, newValues);
+        ProjectConfigSnapshot current = this.projectConfigs;
+        long checkedAt = System.nanoTime();
+        if (current.isCurrent(settings)) {
+            projectConfigsCheckedAtNanos = checkedAt;
+            return;
         }
+        LOG.info("Refreshing project configs");
+        ProjectConfigSnapshot refreshed = ProjectConfigSnapshot.build(settings);
+        LOG.info("Old configs [{}] --> new configs [{}]", current, refreshed);
+        this.projectConfigs = refreshed;
+        projectConfigsCheckedAtNanos = checkedAt;
+    }
+
+    /**
+     * Fast rejection of the projects without config, meant to be called before {@link #refreshSettings()}.
+     * <p>
+     * A project found to have no config is rejected by a set lookup, as long as no config was added or removed and
+     * the project configs were checked for changes less than {@link #UNCONFIGURED_RECHECK_NANOS} ago. Otherwise
+     * the caller goes through the full refresh and lookup, so an edited project pattern is picked up within that delay.
+     * </p>
+     *
+     * @return true if the project is known to have no config
+     */
+    protected boolean isKnownUnconfigured(String projectKey) {
+        ProjectConfigSnapshot current = this.projectConfigs;
+        return current != ProjectConfigSnapshot.EMPTY
+                && current.isKnownUnconfigured(projectKey)
+                && System.nanoTime() - projectConfigsCheckedAtNanos < UNCONFIGURED_RECHECK_NANOS
+                && current.hasSameConfigIds(settings);
     }
 
     protected String getSlackIncomingWebhookUrl() {
@@ -64,6 +119,178 @@ public abstract class AbstractSlackNotifyingComponent {
         return settings.getBoolean(SlackNotifierProp.ENABLED.property());
     }
 
+    protected int getDeliveryQueueCapacity() {
+        return positiveIntOrDefault(SlackNotifierProp.DELIVERY_QUEUE_CAPACITY, DEFAULT_DELIVERY_QUEUE_CAPACITY);
+    }
+
+    protected int getDeliveryWorkerCount() {
+        return positiveIntOrDefault(SlackNotifierProp.DELIVERY_WORKERS, DEFAULT_DELIVERY_WORKERS);
+    }
+
+    protected int getDeliveryRetryAttempts() {
+        return positiveIntOrDefault(SlackNotifierProp.DELIVERY_RETRY_ATTEMPTS, DEFAULT_DELIVERY_RETRY_ATTEMPTS);
+    }
+
+    protected double getDeliveryRate() {
+        Double rate = settings.getDouble(SlackNotifierProp.DELIVERY_RATE.property());
+        return rate != null && rate > 0 ? rate : DEFAULT_DELIVERY_RATE;
+    }
+
+    protected int getDeliveryAgingSeconds() {
+        return positiveIntOrDefault(SlackNotifierProp.DELIVERY_AGING, DEFAULT_DELIVERY_AGING_SECONDS);
+    }
+
+    protected DeliveryQueue.LoadShedding getDeliveryShedding() {
+        return DeliveryQueue.LoadShedding.parse(settings.getString(SlackNotifierProp.DELIVERY_SHEDDING.property()));
+    }
+
+    protected int getDeliverySheddingThreshold() {
+        return positiveIntOrDefault(SlackNotifierProp.DELIVERY_SHEDDING_THRESHOLD, DEFAULT_DELIVERY_SHEDDING_THRESHOLD);
+    }
+
+    /**
+     * Returns the directory for durable plugin state: the configured data directory, or a directory under the
+     * SonarQube data directory. Empty if neither is known, in which case state is kept in memory only.
+     *
+     * @return
+     */
+    protected Optional<Path> getDataDirectory() {
+        String configured = settings.getString(SlackNotifierProp.DATA_DIR.property());
+        if (configured != null && !configured.trim().isEmpty()) {
+            return Optional.of(Paths.get(configured.trim()));
+        }
+        String sonarData = settings.getString("sonar.path.data");
+        if (sonarData == null) {
+            return Optional.empty();
+        }
+        return Optional.of(Paths.get(sonarData, DEFAULT_DATA_DIR_NAME));
+    }
+
+    protected Optional<Path> getOutboxDirectory() {
+        if (!settings.getBoolean(SlackNotifierProp.OUTBOX_ENABLED.property())) {
+            return Optional.empty();
+        }
+        return getDataDirectory().map(d -> d.resolve("outbox"));
+    }
+
+    protected int getDigestPeriodMinutes() {
+        return positiveIntOrDefault(SlackNotifierProp.DIGEST_PERIOD, DEFAULT_DIGEST_PERIOD_MINUTES);
+    }
+
+    /**
+     * @return the batching window in seconds, 0 if batching is disabled
+     */
+    protected int getBatchWindowSeconds() {
+        return Math.max(0, settings.getInt(SlackNotifierProp.BATCH_WINDOW.property()));
+    }
+
+    /**
+     * @return the Slack bot token, empty if notifications to channels are posted through the webhook
+     */
+    protected Optional<String> getWebApiToken() {
+        String token = settings.getString(SlackNotifierProp.WEBAPI_TOKEN.property());
+        return token == null || token.trim().isEmpty() ? Optional.empty() : Optional.of(token.trim());
+    }
+
+    protected String getWebApiUrl() {
+        String url = settings.getString(SlackNotifierProp.WEBAPI_URL.property());
+        return url == null || url.trim().isEmpty() ? DEFAULT_WEBAPI_URL : url.trim();
+    }
+
+    protected SlackWebApiSender.Mode getWebApiMode() {
+        return SlackWebApiSender.Mode.parse(settings.getString(SlackNotifierProp.WEBAPI_MODE.property()));
+    }
+
+    protected int getWebApiMessageTtlHours() {
+        return positiveIntOrDefault(SlackNotifierProp.WEBAPI_MESSAGE_TTL, DEFAULT_WEBAPI_MESSAGE_TTL_HOURS);
+    }
+
+    protected int getWebApiMaxMessages() {
+        return positiveIntOrDefault(SlackNotifierProp.WEBAPI_MAX_MESSAGES, DEFAULT_WEBAPI_MAX_MESSAGES);
+    }
+
+    /**
+     * @return the keys of the metrics whose measures are added to the notifications, empty if measures are not fetched
+     */
+    protected List<String> getMeasureMetricKeys() {
+        String[] keys = settings.getStringArray(SlackNotifierProp.MEASURES.property());
+        List<String> metricKeys = new ArrayList<>(keys.length);
+        for (String key : keys) {
+            if (!key.trim().isEmpty() && !metricKeys.contains(key.trim())) {
+                metricKeys.add(key.trim());
+            }
+        }
+        return metricKeys;
+    }
+
+    /**
+     * @return the SonarQube token the measures are fetched with, empty to fetch them anonymously
+     */
+    protected Optional<String> getMeasuresToken() {
+        String token = settings.getString(SlackNotifierProp.MEASURES_TOKEN.property());
+        return token == null || token.trim().isEmpty() ? Optional.empty() : Optional.of(token.trim());
+    }
+
+    protected int getMeasuresBudgetMillis() {
+        return positiveIntOrDefault(SlackNotifierProp.MEASURES_BUDGET, DEFAULT_MEASURES_BUDGET_MS);
+    }
+
+    protected int getHttpConnectTimeoutMillis() {
+        return positiveIntOrDefault(SlackNotifierProp.HTTP_CONNECT_TIMEOUT, DEFAULT_HTTP_CONNECT_TIMEOUT_MS);
+    }
+
+    protected int getHttpReadTimeoutMillis() {
+        return positiveIntOrDefault(SlackNotifierProp.HTTP_READ_TIMEOUT, DEFAULT_HTTP_READ_TIMEOUT_MS);
+    }
+
+    protected int getHttpDeadlineMillis() {
+        return positiveIntOrDefault(SlackNotifierProp.HTTP_DEADLINE, DEFAULT_HTTP_DEADLINE_MS);
+    }
+
+    protected Locale getOutputLocale() {
+        String tag = settings.getString(SlackNotifierProp.LOCALE.property());
+        if (tag == null || tag.trim().isEmpty()) {
+            tag = DEFAULT_LOCALE;
+        }
+        return Locale.forLanguageTag(tag.trim());
+    }
+
+    protected String getMessageTemplate() {
+        return settings.getString(SlackNotifierProp.MESSAGE_TEMPLATE.property());
+    }
+
+    protected String getConditionTemplate() {
+        return settings.getString(SlackNotifierProp.CONDITION_TEMPLATE.property());
+    }
+
+    /**
+     * @return the duplicate suppression TTL in seconds, 0 if duplicates are not suppressed
+     */
+    protected int getDedupTtlSeconds() {
+        return Math.max(0, settings.getInt(SlackNotifierProp.DEDUP_TTL.property()));
+    }
+
+    protected int getDedupMaxEntries() {
+        return positiveIntOrDefault(SlackNotifierProp.DEDUP_MAX_ENTRIES, DEFAULT_DEDUP_MAX_ENTRIES);
+    }
+
+    protected int getCircuitWindow() {
+        return positiveIntOrDefault(SlackNotifierProp.CIRCUIT_WINDOW, DEFAULT_CIRCUIT_WINDOW);
+    }
+
+    protected int getCircuitFailureRate() {
+        return positiveIntOrDefault(SlackNotifierProp.CIRCUIT_FAILURE_RATE, DEFAULT_CIRCUIT_FAILURE_RATE);
+    }
+
+    protected int getCircuitOpenSeconds() {
+        return positiveIntOrDefault(SlackNotifierProp.CIRCUIT_OPEN_SECONDS, DEFAULT_CIRCUIT_OPEN_SECONDS);
+    }
+
+    private int positiveIntOrDefault(SlackNotifierProp prop, int defaultValue) {
+        int value = settings.getInt(prop.property());
+        return value > 0 ? value : defaultValue;
+    }
+
     /**
      * Returns the sonar server url, with a trailing /
      *
@@ -80,41 +307,32 @@ public abstract class AbstractSlackNotifyingComponent {
         return u + "/";
     }
 
+    /**
+     * @return the config of the first routing rule matching the project key, regardless of the quality gate and
+     * scanner properties, see {@link ProjectConfigIndex#lookup(String)}
+     */
     protected Optional<ProjectConfig> getProjectConfig(String projectKey) {
-        List<ProjectConfig> projectConfigs = projectConfigMap.keySet()
-                .stream()
-                .filter(key -> key.endsWith("*") ? projectKey.startsWith(key.substring(0, key.length() - 1))
-                        : key.equals(projectKey))
-                .map(projectConfigMap::get)
-                .collect(Collectors.toList());
-        // Not configured at all
-        if (projectConfigs.isEmpty()) {
-            LOG.info("Could not find config for project [{}] in [{}]", projectKey, projectConfigMap);
-            return Optional.empty();
-        }
+        return getProjectConfig(projectKey, null, Collections.emptyMap());
+    }
 
-        if(projectConfigs.size() > 1) {
-            LOG.warn("More than 1 project key was matched. Using first one: {}", projectConfigs.get(0).getProjectKey());
-        }
-        return Optional.of(projectConfigs.get(0));
-    }
-
-    private static Map<String, ProjectConfig> buildProjectConfigByProjectKeyMap(Settings settings) {
-        Map<String, ProjectConfig> map = new HashMap<>();
-        String[] projectConfigIndexes = settings.getStringArray(SlackNotifierProp.CONFIG.property());
-        LOG.info("SlackNotifierProp.CONFIG=[{}]", projectConfigIndexes);
-        for (String projectConfigIndex : projectConfigIndexes) {
-            String projectKeyProperty = SlackNotifierProp.CONFIG.property() + "." + projectConfigIndex + "." + SlackNotifierProp.PROJECT.property();
-            String projectKey = settings.getString(projectKeyProperty);
-            if (projectKey == null) {
-                throw MessageException.of("Slack notifier configuration is corrupted. At least one project specific parameter has no project key. " +
-                        "Contact your administrator to update this configuration in the global administration section of SonarQube.");
-            }
-            ProjectConfig value = ProjectConfig.create(settings, projectConfigIndex);
-            LOG.info("Found project configuration [{}]", value);
-            map.put(projectKey, value);
+    /**
+     * @return all the project configs of the current settings, including the ones sharing a project key
+     */
+    protected Collection<ProjectConfig> getProjectConfigs() {
+        refreshProjectConfigs();
+        return projectConfigs.getRules();
+    }
+
+    /**
+     * @return the config of the first routing rule matching the project key, quality gate and scanner properties
+     */
+    protected Optional<ProjectConfig> getProjectConfig(String projectKey, QualityGate qualityGate, Map<String, String> scannerProperties) {
+        Optional<ProjectConfig> projectConfig = projectConfigs.lookup(projectKey, qualityGate, scannerProperties);
+        // Not configured at all. Most projects are not, so the configs are only listed when debugging
+        if (!projectConfig.isPresent() && LOG.isDebugEnabled()) {
+            LOG.debug("Could not find config for project [{}] in [{}]", projectKey, projectConfigs);
         }
-        return map;
+        return projectConfig;
     }
 
     protected String logRelevantSettings() {
@@ -123,7 +341,7 @@ public abstract class AbstractSlackNotifyingComponent {
         mapSetting(pluginSettings, SlackNotifierProp.USER);
         mapSetting(pluginSettings, SlackNotifierProp.ENABLED);
         mapSetting(pluginSettings, SlackNotifierProp.CONFIG);
-        return pluginSettings.toString() + "; project specific channel config: " + projectConfigMap;
+        return pluginSettings.toString() + "; project specific channel config: " + projectConfigs;
     }
 
     private void mapSetting(Map<String, String> pluginSettings, SlackNotifierProp key) {
@@ -131,16 +349,23 @@ public abstract class AbstractSlackNotifyingComponent {
     }
 
     protected boolean shouldSkipSendingNotification(ProjectConfig projectConfig, QualityGate qualityGate) {
+        return skipReason(projectConfig, qualityGate).isPresent();
+    }
+
+    /**
+     * @return why no notification should be sent for the analysis, empty if it should be sent
+     */
+    protected Optional<SkipReason> skipReason(ProjectConfig projectConfig, QualityGate qualityGate) {
         // Disabled due to missing channel value
         if (projectConfig.getSlackChannel() == null ||
                 "".equals(projectConfig.getSlackChannel().trim())) {
             LOG.info("Slack channel for project [{}] is blank, notifications disabled", projectConfig.getProjectKey());
-            return true;
+            return Optional.of(SkipReason.BLANK_CHANNEL);
         }
         if (projectConfig.isQgFailOnly() && qualityGate != null && QualityGate.Status.OK.equals(qualityGate.getStatus())) {
             LOG.info("Project [{}] set up to send notification on failed Quality Gate, but was: {}", projectConfig.getProjectKey(), qualityGate.getStatus().name());
-            return true;
+            return Optional.of(SkipReason.QUALITY_GATE_OK);
         }
-        return false;
+        return Optional.empty();
     }
 }
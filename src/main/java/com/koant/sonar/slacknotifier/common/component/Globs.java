@@ -0,0 +1,49 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import java.util.regex.Pattern;
+
+/**
+ * Globs of project keys and scanner property values: '*' matches any characters, '?' any single character.
+ */
+final class Globs {
+
+    private Globs() {
+        // Static utility
+    }
+
+    static boolean isGlob(String value) {
+        return value.indexOf('*') >= 0 || value.indexOf('?') >= 0;
+    }
+
+    /**
+     * @return the characters before the first wildcard, which every matching value starts with
+     */
+    static String literalPrefix(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                return glob.substring(0, i);
+            }
+        }
+        return glob;
+    }
+
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        int literalStart = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? ".*" : ".");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(literalStart)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
@@ -13,11 +13,36 @@ public class ProjectConfig {
     private final String projectKey;
     private final String slackChannel;
     private final boolean qgFailOnly;
+    private final boolean statusChangeOnly;
+    private final String messageTemplate;
+    private final String conditionTemplate;
+    private final boolean digest;
+    private final RoutingConditions conditions;
 
     public ProjectConfig(String projectKey, String slackChannel, boolean qgFailOnly) {
+        this(projectKey, slackChannel, qgFailOnly, false, null, null);
+    }
+
+    public ProjectConfig(String projectKey, String slackChannel, boolean qgFailOnly, boolean statusChangeOnly,
+                         String messageTemplate, String conditionTemplate) {
+        this(projectKey, slackChannel, qgFailOnly, statusChangeOnly, messageTemplate, conditionTemplate, false);
+    }
+
+    public ProjectConfig(String projectKey, String slackChannel, boolean qgFailOnly, boolean statusChangeOnly,
+                         String messageTemplate, String conditionTemplate, boolean digest) {
+        this(projectKey, slackChannel, qgFailOnly, statusChangeOnly, messageTemplate, conditionTemplate, digest, RoutingConditions.NONE);
+    }
+
+    public ProjectConfig(String projectKey, String slackChannel, boolean qgFailOnly, boolean statusChangeOnly,
+                         String messageTemplate, String conditionTemplate, boolean digest, RoutingConditions conditions) {
         this.projectKey = projectKey;
         this.slackChannel = slackChannel;
         this.qgFailOnly = qgFailOnly;
+        this.statusChangeOnly = statusChangeOnly;
+        this.messageTemplate = messageTemplate;
+        this.conditionTemplate = conditionTemplate;
+        this.digest = digest;
+        this.conditions = conditions;
     }
 
     /**
@@ -29,6 +54,11 @@ public class ProjectConfig {
         this.projectKey = c.getProjectKey();
         this.slackChannel = c.getSlackChannel();
         this.qgFailOnly = c.isQgFailOnly();
+        this.statusChangeOnly = c.isStatusChangeOnly();
+        this.messageTemplate = c.getMessageTemplate();
+        this.conditionTemplate = c.getConditionTemplate();
+        this.digest = c.isDigest();
+        this.conditions = c.getConditions();
     }
 
     static ProjectConfig create(Settings settings, String configurationId) {
@@ -36,7 +66,15 @@ public class ProjectConfig {
         String projectKey = settings.getString(configurationPrefix + SlackNotifierProp.PROJECT.property());
         String slackChannel = settings.getString(configurationPrefix + SlackNotifierProp.CHANNEL.property());
         boolean qgFailOnly = settings.getBoolean(configurationPrefix + SlackNotifierProp.QG_FAIL_ONLY.property());
-        return new ProjectConfig(projectKey, slackChannel, qgFailOnly);
+        boolean statusChangeOnly = settings.getBoolean(configurationPrefix + SlackNotifierProp.STATUS_CHANGE_ONLY.property());
+        String messageTemplate = settings.getString(configurationPrefix + SlackNotifierProp.PROJECT_MESSAGE_TEMPLATE.property());
+        String conditionTemplate = settings.getString(configurationPrefix + SlackNotifierProp.PROJECT_CONDITION_TEMPLATE.property());
+        boolean digest = settings.getBoolean(configurationPrefix + SlackNotifierProp.DIGEST.property());
+        RoutingConditions conditions = RoutingConditions.parse(
+                settings.getString(configurationPrefix + SlackNotifierProp.QG_STATUS.property()),
+                settings.getString(configurationPrefix + SlackNotifierProp.FAILING_METRICS.property()),
+                settings.getString(configurationPrefix + SlackNotifierProp.SCANNER_PROPERTIES.property()));
+        return new ProjectConfig(projectKey, slackChannel, qgFailOnly, statusChangeOnly, messageTemplate, conditionTemplate, digest, conditions);
     }
 
     public String getProjectKey() {
@@ -51,19 +89,56 @@ public class ProjectConfig {
         return qgFailOnly;
     }
 
+    public boolean isStatusChangeOnly() {
+        return statusChangeOnly;
+    }
+
+    /**
+     * @return the template of the notification text, null to use the global one
+     */
+    public String getMessageTemplate() {
+        return messageTemplate;
+    }
+
+    /**
+     * @return the template of the condition field titles, null to use the global one
+     */
+    public String getConditionTemplate() {
+        return conditionTemplate;
+    }
+
+    /**
+     * @return true if analyses are summarised in a periodic digest instead of notified one by one
+     */
+    public boolean isDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the conditions on the analysis, besides the project key, under which this config is used
+     */
+    public RoutingConditions getConditions() {
+        return conditions;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ProjectConfig that = (ProjectConfig) o;
         return qgFailOnly == that.qgFailOnly &&
+                statusChangeOnly == that.statusChangeOnly &&
+                digest == that.digest &&
                 Objects.equals(projectKey, that.projectKey) &&
-                Objects.equals(slackChannel, that.slackChannel);
+                Objects.equals(slackChannel, that.slackChannel) &&
+                Objects.equals(messageTemplate, that.messageTemplate) &&
+                Objects.equals(conditionTemplate, that.conditionTemplate) &&
+                Objects.equals(conditions, that.conditions);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(projectKey, slackChannel, qgFailOnly);
+        return Objects.hash(projectKey, slackChannel, qgFailOnly, statusChangeOnly, messageTemplate, conditionTemplate, digest, conditions);
     }
 
     @Override
@@ -72,6 +147,21 @@ public class ProjectConfig {
         sb.append("projectKey='").append(projectKey).append('\'');
         sb.append(", slackChannel='").append(slackChannel).append('\'');
         sb.append(", qgFailOnly=").append(qgFailOnly);
+        if (statusChangeOnly) {
+            sb.append(", statusChangeOnly=true");
+        }
+        if (digest) {
+            sb.append(", digest=true");
+        }
+        if (!conditions.isEmpty()) {
+            sb.append(", conditions=").append(conditions);
+        }
+        if (messageTemplate != null) {
+            sb.append(", messageTemplate='").append(messageTemplate).append('\'');
+        }
+        if (conditionTemplate != null) {
+            sb.append(", conditionTemplate='").append(conditionTemplate).append('\'');
+        }
         sb.append('}');
         return sb.toString();
     }
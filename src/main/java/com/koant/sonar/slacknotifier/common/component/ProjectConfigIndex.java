@@ -0,0 +1,330 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Routing table of the project configs, compiled once per set of configs.
+ * <p>
+ * Each config is a rule: a project key, exact, with '*' and '?' wildcards or a regular expression prefixed with
+ * {@value #REGEX_PREFIX}, and optional {@link RoutingConditions} on the analysis. Rules are tried from the most specific
+ * key to the least specific: exact keys, keys with a single trailing '*' from the longest prefix to the shortest, then
+ * other globs and regular expressions. The order rules are listed in only breaks ties between equally specific keys: a
+ * regular expression listed first is still tried after an exact key listed later. The first rule whose key and
+ * conditions all match the analysis is used.
+ * </p>
+ * <p>
+ * Each dimension is compiled into a decision table of bit sets with one bit per rule, in the order rules are tried: the
+ * rules accepting each quality gate status, the rules requiring each failed metric, and the rules rejected by each value
+ * of a scanner property. The rules matching the project key come from a hash map of exact keys and a prefix trie holding
+ * the trailing '*' keys, found in time proportional to the length of the key, and from the globs and regular
+ * expressions, hung in the trie under their literal prefix. A key is only tested against the patterns whose literal
+ * prefix it starts with, but regular expressions and globs starting with a wildcard have an empty prefix: every key is
+ * tested against all of them, so that part of the cost grows with the number of such patterns.
+ * </p>
+ * <p>
+ * The rules matching each project key are cached, as are the rules rejected by each property value. Each cache holds
+ * up to {@value #MAX_CACHED_KEYS} keys and is cleared when full, after which keys are matched against the patterns again.
+ * A lookup of a cached key walks the few rules matching the key with one bit test per dimension.
+ * </p>
+ */
+public class ProjectConfigIndex {
+
+    private static final Logger LOG = Loggers.get(ProjectConfigIndex.class);
+
+    static final String REGEX_PREFIX = "regex:";
+    static final int MAX_CACHED_KEYS = 10_000;
+
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int PATTERN = 2;
+    private static final int NO_QUALITY_GATE = QualityGate.Status.values().length;
+
+    private final ProjectConfig[] rules;
+    private final Map<String, BitSet> exact = new HashMap<>();
+    private final Node trie = new Node();
+    private final BitSet[] byStatus = new BitSet[NO_QUALITY_GATE + 1];
+    private final BitSet withoutMetricCondition = new BitSet();
+    private final Map<String, BitSet> byFailingMetric = new HashMap<>();
+    private final List<PropertyDimension> propertyDimensions;
+    private final Map<String, BitSet> keyMatches = new ConcurrentHashMap<>();
+
+    public ProjectConfigIndex(Collection<ProjectConfig> projectConfigs) {
+        List<Rule> ordered = new ArrayList<>(projectConfigs.size());
+        for (ProjectConfig projectConfig : projectConfigs) {
+            ordered.add(new Rule(projectConfig, ordered.size()));
+        }
+        ordered.sort(Comparator.comparingInt((Rule r) -> r.kind)
+                .thenComparingInt(r -> r.kind == PREFIX ? -r.prefix.length() : 0)
+                .thenComparingInt(r -> r.listed));
+
+        rules = new ProjectConfig[ordered.size()];
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = new BitSet(rules.length);
+        }
+        Map<String, PropertyDimension> properties = new LinkedHashMap<>();
+        for (int bit = 0; bit < ordered.size(); bit++) {
+            Rule rule = ordered.get(bit);
+            rules[bit] = rule.config;
+            compileKey(rule, bit);
+            RoutingConditions conditions = rule.config.getConditions();
+            for (QualityGate.Status status : QualityGate.Status.values()) {
+                if (conditions.acceptsStatus(status)) {
+                    byStatus[status.ordinal()].set(bit);
+                }
+            }
+            if (conditions.acceptsStatus(null)) {
+                byStatus[NO_QUALITY_GATE].set(bit);
+            }
+            if (conditions.getFailingMetrics().isEmpty()) {
+                withoutMetricCondition.set(bit);
+            }
+            for (String metric : conditions.getFailingMetrics()) {
+                byFailingMetric.computeIfAbsent(metric, m -> new BitSet()).set(bit);
+            }
+            for (Map.Entry<String, String> property : conditions.getScannerProperties().entrySet()) {
+                properties.computeIfAbsent(property.getKey(), PropertyDimension::new).add(property.getValue(), bit);
+            }
+        }
+        propertyDimensions = new ArrayList<>(properties.values());
+    }
+
+    private void compileKey(Rule rule, int bit) {
+        switch (rule.kind) {
+            case EXACT:
+                exact.computeIfAbsent(rule.config.getProjectKey(), k -> new BitSet()).set(bit);
+                break;
+            case PREFIX:
+                trie.insert(rule.prefix).prefixRules.set(bit);
+                break;
+            default:
+                trie.insert(rule.prefix).patterns.add(new KeyPattern(rule.pattern, bit));
+                break;
+        }
+    }
+
+    /**
+     * @return the config of the first rule on the project key alone, as for an analysis without quality gate and
+     * scanner properties
+     */
+    public Optional<ProjectConfig> lookup(String projectKey) {
+        return lookup(projectKey, null, Collections.emptyMap());
+    }
+
+    /**
+     * @param qualityGate       null if the project has no quality gate
+     * @param scannerProperties properties of the scanner context of the analysis
+     * @return the config of the first rule matching the analysis
+     */
+    public Optional<ProjectConfig> lookup(String projectKey, QualityGate qualityGate, Map<String, String> scannerProperties) {
+        BitSet keyRules = keyMatches(projectKey);
+        BitSet statusRules = byStatus[qualityGate == null ? NO_QUALITY_GATE : qualityGate.getStatus().ordinal()];
+        for (int bit = keyRules.nextSetBit(0); bit >= 0; bit = keyRules.nextSetBit(bit + 1)) {
+            if (statusRules.get(bit) && matchesFailingMetrics(bit, qualityGate) && matchesScannerProperties(bit, scannerProperties)) {
+                return Optional.of(rules[bit]);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean matchesFailingMetrics(int bit, QualityGate qualityGate) {
+        if (withoutMetricCondition.get(bit)) {
+            return true;
+        }
+        if (qualityGate != null) {
+            for (QualityGate.Condition condition : qualityGate.getConditions()) {
+                BitSet rulesOfMetric = byFailingMetric.get(condition.getMetricKey());
+                if (rulesOfMetric != null && rulesOfMetric.get(bit) && condition.getStatus() == QualityGate.EvaluationStatus.ERROR) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesScannerProperties(int bit, Map<String, String> scannerProperties) {
+        for (PropertyDimension dimension : propertyDimensions) {
+            if (dimension.rules.get(bit) && dimension.rejected(scannerProperties.get(dimension.key)).get(bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the key of at least one rule matches the project key, whatever the conditions of the rules
+     */
+    public boolean matchesKey(String projectKey) {
+        return !keyMatches(projectKey).isEmpty();
+    }
+
+    /**
+     * @return the rules whose key matches the project key. Shared with the cache, must not be modified.
+     */
+    private BitSet keyMatches(String projectKey) {
+        BitSet cached = keyMatches.get(projectKey);
+        if (cached != null) {
+            return cached;
+        }
+        BitSet matches = new BitSet(rules.length);
+        BitSet exactRules = exact.get(projectKey);
+        if (exactRules != null) {
+            matches.or(exactRules);
+        }
+        Node node = trie;
+        for (int i = 0; node != null; i++) {
+            node.match(projectKey, matches);
+            node = i < projectKey.length() && node.children != null ? node.children.get(projectKey.charAt(i)) : null;
+        }
+        if (keyMatches.size() >= MAX_CACHED_KEYS) {
+            keyMatches.clear();
+        }
+        keyMatches.put(projectKey, matches);
+        return matches;
+    }
+
+    private static final class Rule {
+        private final ProjectConfig config;
+        private final int listed;
+        private final int kind;
+        private final String prefix;
+        private final Pattern pattern;
+
+        Rule(ProjectConfig config, int listed) {
+            this.config = config;
+            this.listed = listed;
+            String key = config.getProjectKey();
+            String trailing = key.isEmpty() ? key : key.substring(0, key.length() - 1);
+            if (key.startsWith(REGEX_PREFIX)) {
+                kind = PATTERN;
+                prefix = "";
+                pattern = compileRegex(key.substring(REGEX_PREFIX.length()));
+            } else if (!Globs.isGlob(key)) {
+                kind = EXACT;
+                prefix = key;
+                pattern = null;
+            } else if (key.endsWith("*") && !Globs.isGlob(trailing)) {
+                kind = PREFIX;
+                prefix = trailing;
+                pattern = null;
+            } else {
+                kind = PATTERN;
+                prefix = Globs.literalPrefix(key);
+                pattern = Globs.compile(key);
+            }
+        }
+
+        /**
+         * An invalid expression matches no project, rather than failing every lookup
+         */
+        private static Pattern compileRegex(String regex) {
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Ignoring invalid project key regular expression [{}]: {}", regex, e.getDescription());
+                return null;
+            }
+        }
+    }
+
+    private static final class KeyPattern {
+        private final Pattern pattern;
+        private final int bit;
+
+        KeyPattern(Pattern pattern, int bit) {
+            this.pattern = pattern;
+            this.bit = bit;
+        }
+    }
+
+    /**
+     * The rules with a condition on one scanner property, and the rules each value of the property rejects,
+     * cached per value as the same few branch names come up again and again
+     */
+    private static final class PropertyDimension {
+        private final String key;
+        private final BitSet rules = new BitSet();
+        private final Map<String, BitSet> rulesByGlob = new LinkedHashMap<>();
+        private final Map<String, Pattern> globs = new HashMap<>();
+        private final Map<String, BitSet> rejectedByValue = new ConcurrentHashMap<>();
+
+        PropertyDimension(String key) {
+            this.key = key;
+        }
+
+        void add(String glob, int bit) {
+            rules.set(bit);
+            rulesByGlob.computeIfAbsent(glob, g -> new BitSet()).set(bit);
+            globs.computeIfAbsent(glob, Globs::compile);
+        }
+
+        /**
+         * @param value null if the analysis does not have the property, which rejects all rules of this dimension
+         * @return the rules whose condition the value does not match. Shared with the cache, must not be modified.
+         */
+        BitSet rejected(String value) {
+            if (value == null) {
+                return rules;
+            }
+            BitSet cached = rejectedByValue.get(value);
+            if (cached != null) {
+                return cached;
+            }
+            BitSet rejected = (BitSet) rules.clone();
+            for (Map.Entry<String, BitSet> glob : rulesByGlob.entrySet()) {
+                if (globs.get(glob.getKey()).matcher(value).matches()) {
+                    rejected.andNot(glob.getValue());
+                }
+            }
+            if (rejectedByValue.size() >= MAX_CACHED_KEYS) {
+                rejectedByValue.clear();
+            }
+            rejectedByValue.put(value, rejected);
+            return rejected;
+        }
+    }
+
+    private static class Node {
+        private Map<Character, Node> children;
+        private final BitSet prefixRules = new BitSet();
+        private final List<KeyPattern> patterns = new ArrayList<>(0);
+
+        Node insert(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                if (node.children == null) {
+                    node.children = new HashMap<>(4);
+                }
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+            }
+            return node;
+        }
+
+        /**
+         * Adds the rules of this node matching a key that starts with its prefix
+         */
+        void match(String key, BitSet matches) {
+            matches.or(prefixRules);
+            for (KeyPattern keyPattern : patterns) {
+                if (keyPattern.pattern != null && keyPattern.pattern.matcher(key).matches()) {
+                    matches.set(keyPattern.bit);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import com.koant.sonar.slacknotifier.common.SlackNotifierProp;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable view of the project specific configurations, together with a fingerprint of the settings it was built from.
+ * <p>
+ * Checking whether the snapshot is still current only reads the raw setting values and hashes them, using property keys
+ * prepared when the snapshot was built. The project configs and their index are rebuilt only when the fingerprint changes.
+ * </p>
+ * <p>
+ * Project keys found to have no config are remembered, so that the many unconfigured projects of an instance can be
+ * rejected with a single set lookup. The set belongs to the snapshot, so it is discarded with it when the settings change.
+ * </p>
+ */
+public class ProjectConfigSnapshot {
+
+    private static final Logger LOG = Loggers.get(ProjectConfigSnapshot.class);
+
+    static final ProjectConfigSnapshot EMPTY = new ProjectConfigSnapshot(null, new String[0], 0L, Collections.emptyList());
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    static final int MAX_UNCONFIGURED_KEYS = 10_000;
+
+    private final String rawConfigIds;
+    private final String[] fieldPropertyKeys;
+    private final long fingerprint;
+    private final List<ProjectConfig> rules;
+    private final Map<String, ProjectConfig> projectConfigs;
+    private final ProjectConfigIndex index;
+    private final Set<String> unconfigured = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param rules the configs in the order they are listed, see {@link ProjectConfigIndex}
+     */
+    private ProjectConfigSnapshot(String rawConfigIds, String[] fieldPropertyKeys, long fingerprint, List<ProjectConfig> rules) {
+        this.rawConfigIds = rawConfigIds;
+        this.fieldPropertyKeys = fieldPropertyKeys;
+        this.fingerprint = fingerprint;
+        this.rules = Collections.unmodifiableList(rules);
+        Map<String, ProjectConfig> byProjectKey = new HashMap<>();
+        for (ProjectConfig rule : rules) {
+            byProjectKey.putIfAbsent(rule.getProjectKey(), rule);
+        }
+        this.projectConfigs = Collections.unmodifiableMap(byProjectKey);
+        this.index = new ProjectConfigIndex(rules);
+    }
+
+    public static ProjectConfigSnapshot build(Settings settings) {
+        String rawConfigIds = settings.getString(SlackNotifierProp.CONFIG.property());
+        String[] projectConfigIndexes = settings.getStringArray(SlackNotifierProp.CONFIG.property());
+        LOG.info("SlackNotifierProp.CONFIG=[{}]", projectConfigIndexes);
+        List<String> fieldPropertyKeys = new ArrayList<>();
+        List<ProjectConfig> rules = new ArrayList<>();
+        for (String projectConfigIndex : projectConfigIndexes) {
+            String prefix = SlackNotifierProp.CONFIG.property() + "." + projectConfigIndex + ".";
+            String projectKeyProperty = prefix + SlackNotifierProp.PROJECT.property();
+            String projectKey = settings.getString(projectKeyProperty);
+            if (projectKey == null) {
+                throw MessageException.of("Slack notifier configuration is corrupted. At least one project specific parameter has no project key. " +
+                        "Contact your administrator to update this configuration in the global administration section of SonarQube.");
+            }
+            fieldPropertyKeys.add(projectKeyProperty);
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.CHANNEL.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.QG_FAIL_ONLY.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.STATUS_CHANGE_ONLY.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.PROJECT_MESSAGE_TEMPLATE.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.PROJECT_CONDITION_TEMPLATE.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.DIGEST.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.QG_STATUS.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.FAILING_METRICS.property());
+            fieldPropertyKeys.add(prefix + SlackNotifierProp.SCANNER_PROPERTIES.property());
+            ProjectConfig value = ProjectConfig.create(settings, projectConfigIndex);
+            LOG.info("Found project configuration [{}]", value);
+            rules.add(value);
+        }
+        String[] keys = fieldPropertyKeys.toArray(new String[fieldPropertyKeys.size()]);
+        return new ProjectConfigSnapshot(rawConfigIds, keys, fingerprint(settings, keys), rules);
+    }
+
+    /**
+     * @return true if the list of config ids has not changed, which is the case unless configs were added or removed
+     */
+    public boolean hasSameConfigIds(Settings settings) {
+        return Objects.equals(rawConfigIds, settings.getString(SlackNotifierProp.CONFIG.property()));
+    }
+
+    /**
+     * @return true if none of the settings this snapshot was built from have changed
+     */
+    public boolean isCurrent(Settings settings) {
+        return hasSameConfigIds(settings) && fingerprint == fingerprint(settings, fieldPropertyKeys);
+    }
+
+    /**
+     * @return all the configs in the order they are listed, including the ones sharing a project key
+     */
+    public List<ProjectConfig> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the configs by project key, the first listed one if several configs have the same key
+     */
+    public Map<String, ProjectConfig> getProjectConfigs() {
+        return projectConfigs;
+    }
+
+    public Optional<ProjectConfig> lookup(String projectKey) {
+        return lookup(projectKey, null, Collections.emptyMap());
+    }
+
+    /**
+     * @return the config of the first rule matching the analysis, see {@link ProjectConfigIndex}
+     */
+    public Optional<ProjectConfig> lookup(String projectKey, QualityGate qualityGate, Map<String, String> scannerProperties) {
+        if (projectConfigs.isEmpty() || unconfigured.contains(projectKey)) {
+            return Optional.empty();
+        }
+        // Only remembered when no rule has a matching key, as the conditions of the rules differ from analysis to analysis
+        if (!index.matchesKey(projectKey)) {
+            if (unconfigured.size() >= MAX_UNCONFIGURED_KEYS) {
+                unconfigured.clear();
+            }
+            unconfigured.add(projectKey);
+            return Optional.empty();
+        }
+        return index.lookup(projectKey, qualityGate, scannerProperties);
+    }
+
+    /**
+     * @return true if an earlier lookup found no config for the project
+     */
+    public boolean isKnownUnconfigured(String projectKey) {
+        return projectConfigs.isEmpty() || unconfigured.contains(projectKey);
+    }
+
+    /**
+     * 64 bit FNV-1a hash over the values of the given properties
+     */
+    private static long fingerprint(Settings settings, String[] propertyKeys) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String key : propertyKeys) {
+            String value = settings.getString(key);
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+                }
+            }
+            // Separator, so that moving characters between values changes the hash
+            hash = (hash ^ (value == null ? 0x1_0000 : 0x1_0001)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return projectConfigs.values().toString();
+    }
+}
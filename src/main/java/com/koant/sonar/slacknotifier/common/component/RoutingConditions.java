@@ -0,0 +1,169 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Conditions of a project config on an analysis, besides its project key: the quality gate status, the metrics of the
+ * failed quality gate conditions, and scanner context properties such as the branch.
+ * A config without conditions is used for every analysis of its projects.
+ */
+public final class RoutingConditions {
+
+    private static final Logger LOG = Loggers.get(RoutingConditions.class);
+
+    /**
+     * Status value matching analyses without a quality gate
+     */
+    public static final String NO_QUALITY_GATE = "NONE";
+
+    public static final RoutingConditions NONE = new RoutingConditions(false, Collections.emptySet(), false,
+            Collections.emptySet(), Collections.emptyMap());
+
+    private final boolean statusCondition;
+    private final Set<QualityGate.Status> statuses;
+    private final boolean withoutQualityGate;
+    private final Set<String> failingMetrics;
+    private final Map<String, String> scannerProperties;
+
+    private RoutingConditions(boolean statusCondition, Set<QualityGate.Status> statuses, boolean withoutQualityGate,
+                              Set<String> failingMetrics, Map<String, String> scannerProperties) {
+        this.statusCondition = statusCondition;
+        this.statuses = statuses;
+        this.withoutQualityGate = withoutQualityGate;
+        this.failingMetrics = failingMetrics;
+        this.scannerProperties = scannerProperties;
+    }
+
+    /**
+     * @param statuses          comma separated quality gate statuses, OK, WARN, ERROR or NONE for analyses without a quality gate
+     * @param failingMetrics    comma separated metric keys, one of which must have a failed condition
+     * @param scannerProperties comma separated scanner context properties as key=glob, all of which must match.
+     *                          A key alone requires the property to be set, whatever its value.
+     */
+    public static RoutingConditions parse(String statuses, String failingMetrics, String scannerProperties) {
+        boolean statusCondition = false;
+        boolean withoutQualityGate = false;
+        Set<QualityGate.Status> statusSet = EnumSet.noneOf(QualityGate.Status.class);
+        for (String status : split(statuses)) {
+            statusCondition = true;
+            String value = status.toUpperCase(Locale.ENGLISH);
+            if (NO_QUALITY_GATE.equals(value)) {
+                withoutQualityGate = true;
+                continue;
+            }
+            try {
+                statusSet.add(QualityGate.Status.valueOf(value));
+            } catch (IllegalArgumentException e) {
+                // An unknown status never matches, rather than dropping the condition and matching every status
+                LOG.warn("Ignoring unknown quality gate status [{}] in routing conditions", status);
+            }
+        }
+        Set<String> metrics = new LinkedHashSet<>(split(failingMetrics));
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String property : split(scannerProperties)) {
+            int equals = property.indexOf('=');
+            if (equals < 0) {
+                properties.put(property, "*");
+            } else {
+                properties.put(property.substring(0, equals).trim(), property.substring(equals + 1).trim());
+            }
+        }
+        if (!statusCondition && metrics.isEmpty() && properties.isEmpty()) {
+            return NONE;
+        }
+        return new RoutingConditions(statusCondition, Collections.unmodifiableSet(statusSet), withoutQualityGate,
+                Collections.unmodifiableSet(metrics), Collections.unmodifiableMap(properties));
+    }
+
+    private static Set<String> split(String values) {
+        if (values == null) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (String value : values.split(",")) {
+            if (!value.trim().isEmpty()) {
+                result.add(value.trim());
+            }
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    /**
+     * @return true if the config only applies to some quality gate statuses
+     */
+    public boolean hasStatusCondition() {
+        return statusCondition;
+    }
+
+    public boolean acceptsStatus(QualityGate.Status status) {
+        return !statusCondition || (status == null ? withoutQualityGate : statuses.contains(status));
+    }
+
+    /**
+     * @return the metrics one of which must have a failed condition, empty if there is no such condition
+     */
+    public Set<String> getFailingMetrics() {
+        return failingMetrics;
+    }
+
+    /**
+     * @return the globs the scanner context properties must match, by property key
+     */
+    public Map<String, String> getScannerProperties() {
+        return scannerProperties;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RoutingConditions that = (RoutingConditions) o;
+        return statusCondition == that.statusCondition &&
+                withoutQualityGate == that.withoutQualityGate &&
+                statuses.equals(that.statuses) &&
+                failingMetrics.equals(that.failingMetrics) &&
+                scannerProperties.equals(that.scannerProperties);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(statusCondition, statuses, withoutQualityGate, failingMetrics, scannerProperties);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RoutingConditions{");
+        String separator = "";
+        if (statusCondition) {
+            sb.append("statuses=").append(statuses);
+            if (withoutQualityGate) {
+                sb.append("+").append(NO_QUALITY_GATE);
+            }
+            separator = ", ";
+        }
+        if (!failingMetrics.isEmpty()) {
+            sb.append(separator).append("failingMetrics=").append(failingMetrics);
+            separator = ", ";
+        }
+        if (!scannerProperties.isEmpty()) {
+            sb.append(separator).append("scannerProperties=").append(scannerProperties);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of one webhook, tripped by the failure rate of its most recent calls.
+ * <ul>
+ * <li>CLOSED: calls are allowed, and their outcomes are recorded in a sliding window. When the window holds enough calls
+ * and the share of failures reaches the threshold, the circuit opens.</li>
+ * <li>OPEN: calls are refused until the open duration has passed; then a single probe call is allowed.</li>
+ * <li>HALF_OPEN: the probe is in flight. Its success closes the circuit, its failure opens it again.</li>
+ * </ul>
+ * Only 5xx responses and transport errors count as failures, any other response shows the webhook is up.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = Loggers.get(CircuitBreaker.class);
+
+    static final int MINIMUM_CALLS = 5;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified of every state change, under the lock of the breaker
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void stateChanged(String name, State from, State to);
+    }
+
+    private final String name;
+    private final boolean[] window;
+    private final int failureRatePercent;
+    private final long openMillis;
+    private final LongSupplier clockMillis;
+    private final StateListener listener;
+
+    private State state = State.CLOSED;
+    private int calls;
+    private int next;
+    private int failures;
+    private long openUntil;
+    private boolean probeReserved;
+
+    /**
+     * @param name               name of the breaker in logs, must not reveal the webhook token
+     * @param windowSize         number of recent calls the failure rate is computed over, 0 to never open
+     * @param failureRatePercent share of failed calls in the window that opens the circuit
+     * @param openMillis         how long the circuit stays open before a probe is allowed
+     */
+    public CircuitBreaker(String name, int windowSize, int failureRatePercent, long openMillis,
+                          LongSupplier clockMillis, StateListener listener) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.failureRatePercent = failureRatePercent;
+        this.openMillis = openMillis;
+        this.clockMillis = clockMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * @return true if a call may be made now, in which case its outcome must be reported with
+     * {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (isProbeDue()) {
+                    transition(State.HALF_OPEN);
+                    return true;
+                }
+                return false;
+            default:
+                // A probe is already in flight
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            probeReserved = false;
+            reset();
+            transition(State.CLOSED);
+        } else {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            probeReserved = false;
+            open();
+        } else {
+            record(true);
+            if (state == State.CLOSED && calls >= Math.min(MINIMUM_CALLS, window.length)
+                    && failures * 100 >= failureRatePercent * calls) {
+                open();
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the circuit is open and its open duration has passed, so the next call will be let through as a probe
+     */
+    public synchronized boolean isProbeDue() {
+        return state == State.OPEN && clockMillis.getAsLong() - openUntil >= 0;
+    }
+
+    /**
+     * Reserves the probe for a notification that is queued rather than attempted right away, so no other one is sent
+     * as the probe meanwhile. The reservation is released once the outcome of a probe is reported.
+     *
+     * @return true if the probe is due and was not reserved yet
+     */
+    public synchronized boolean reserveProbe() {
+        if (probeReserved || !isProbeDue()) {
+            return false;
+        }
+        probeReserved = true;
+        return true;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(boolean failure) {
+        if (window.length == 0) {
+            return;
+        }
+        if (calls == window.length) {
+            if (window[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % window.length;
+    }
+
+    private void open() {
+        openUntil = clockMillis.getAsLong() + openMillis;
+        if (state == State.CLOSED) {
+            LOG.warn("Circuit of Slack webhook [{}] opened after {} failures in {} calls, notifications are parked for {} ms",
+                    name, failures, calls, openMillis);
+        } else {
+            LOG.warn("Probe of Slack webhook [{}] failed, circuit stays open for {} ms", name, openMillis);
+        }
+        transition(State.OPEN);
+    }
+
+    private void reset() {
+        calls = 0;
+        next = 0;
+        failures = 0;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        if (from == to) {
+            return;
+        }
+        state = to;
+        if (to == State.CLOSED) {
+            LOG.info("Circuit of Slack webhook [{}] closed", name);
+        }
+        listener.stateChanged(name, from, to);
+    }
+}
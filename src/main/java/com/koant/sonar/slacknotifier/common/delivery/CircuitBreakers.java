@@ -0,0 +1,65 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * One circuit breaker per webhook URL, so an outage of one webhook does not hold back the others.
+ */
+public class CircuitBreakers {
+
+    private final int windowSize;
+    private final int failureRatePercent;
+    private final long openMillis;
+    private final LongSupplier clockMillis;
+    private final CircuitBreaker.StateListener listener;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakers(int windowSize, int failureRatePercent, long openMillis, CircuitBreaker.StateListener listener) {
+        this(windowSize, failureRatePercent, openMillis, System::currentTimeMillis, listener);
+    }
+
+    CircuitBreakers(int windowSize, int failureRatePercent, long openMillis, LongSupplier clockMillis,
+                    CircuitBreaker.StateListener listener) {
+        this.windowSize = windowSize;
+        this.failureRatePercent = failureRatePercent;
+        this.openMillis = openMillis;
+        this.clockMillis = clockMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * @return breakers that never open
+     */
+    public static CircuitBreakers disabled() {
+        return new CircuitBreakers(0, 100, 0, (name, from, to) -> {
+        });
+    }
+
+    public CircuitBreaker forHook(String hook) {
+        return breakers.computeIfAbsent(hook, h -> new CircuitBreaker(label(h), windowSize, failureRatePercent, openMillis,
+                clockMillis, listener));
+    }
+
+    /**
+     * @return the number of webhooks whose circuit is not closed
+     */
+    public int openCount() {
+        return (int) breakers.values().stream().filter(b -> b.getState() != CircuitBreaker.State.CLOSED).count();
+    }
+
+    /**
+     * Name of a webhook in logs: its host and the end of its path, leaving out the secret token
+     */
+    static String label(String hook) {
+        if (hook == null) {
+            return "null";
+        }
+        int schemeEnd = hook.indexOf("://");
+        String rest = schemeEnd < 0 ? hook : hook.substring(schemeEnd + 3);
+        int slash = rest.indexOf('/');
+        String host = slash < 0 ? rest : rest.substring(0, slash);
+        return slash < 0 || rest.length() - slash <= 4 ? host : host + "/..." + rest.substring(rest.length() - 4);
+    }
+}
@@ -0,0 +1,35 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+/**
+ * Callbacks from {@link RetryingDeliverer} about the attempts and the outcome of each delivery.
+ * All methods are called on the delivery worker thread.
+ */
+public interface DeliveryListener {
+
+    /**
+     * @param result       the response of the webhook, null if the attempt failed with an exception
+     * @param elapsedNanos duration of the webhook round trip
+     */
+    default void attempted(Notification notification, DeliveryResult result, long elapsedNanos) {
+    }
+
+    /**
+     * Slack accepted the notification
+     */
+    default void delivered(Notification notification) {
+    }
+
+    /**
+     * The notification was given up
+     *
+     * @param lastResult the last response of the webhook, null if the last attempt failed with an exception
+     */
+    default void failed(Notification notification, DeliveryResult lastResult) {
+    }
+
+    /**
+     * The notification was not attempted, because the circuit of its webhook is open
+     */
+    default void parked(Notification notification) {
+    }
+}
@@ -0,0 +1,437 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-process queue of notifications, drained by a fixed number of delivery worker threads.
+ * <p>
+ * Offering a notification never blocks: when the queue is full the notification is dropped and logged,
+ * so a slow or unreachable Slack never stalls the Compute Engine worker that produced it.
+ * </p>
+ * <p>
+ * Notifications are delivered by deadline rather than in arrival order. The deadline of a notification is the time it
+ * was offered plus one aging period per priority level below {@link Priority#HIGH}, so a failed quality gate goes
+ * before the passed ones already waiting, while a passed quality gate that has waited two aging periods goes before
+ * any failed one offered after it. Notifications with the same deadline are delivered in arrival order.
+ * </p>
+ * <p>
+ * When the backlog reaches the load shedding threshold, {@link Priority#LOW} notifications are shed as the
+ * {@link LoadShedding} policy says, and a full queue makes room for a notification of higher priority by shedding the
+ * low priority notification that would have been delivered last. Shed notifications are reported to the
+ * {@link ShedListener}.
+ * </p>
+ */
+public class DeliveryQueue {
+
+    private static final Logger LOG = Loggers.get(DeliveryQueue.class);
+    private static final long STOP_TIMEOUT_MS = 5000L;
+    private static final long DEFAULT_DRAIN_TIMEOUT_MS = 10_000L;
+    private static final long DEFAULT_AGING_MS = 60_000L;
+
+    /**
+     * What happens to {@link Priority#LOW} notifications offered while the backlog is at or above the threshold
+     */
+    public enum LoadShedding {
+        /**
+         * They are queued like the others
+         */
+        NONE,
+        /**
+         * They are dropped
+         */
+        DROP,
+        /**
+         * They are merged into the last low priority notification waiting for the same webhook and channel, if the
+         * merged message fits the Slack limits
+         */
+        MERGE;
+
+        /**
+         * @return the policy of the setting value, {@link #NONE} if it is empty or unknown
+         */
+        public static LoadShedding parse(String value) {
+            if (value != null) {
+                for (LoadShedding policy : values()) {
+                    if (policy.name().equalsIgnoreCase(value.trim())) {
+                        return policy;
+                    }
+                }
+            }
+            return NONE;
+        }
+    }
+
+    /**
+     * Told about the notifications shed, called while offering
+     */
+    public interface ShedListener {
+        /**
+         * The notification will not be delivered
+         */
+        void dropped(Notification notification);
+
+        /**
+         * The notification will be delivered as part of a merged message
+         */
+        void merged(Notification notification);
+    }
+
+    private static final ShedListener IGNORE_SHED = new ShedListener() {
+        @Override
+        public void dropped(Notification notification) {
+            // Not reported
+        }
+
+        @Override
+        public void merged(Notification notification) {
+            // Not reported
+        }
+    };
+
+    private final int capacity;
+    private final long agingNanos;
+    private final LoadShedding shedding;
+    private final int shedThreshold;
+    private final ShedListener shedListener;
+    private final LongSupplier clock;
+    private final Consumer<Notification> deliverer;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    /**
+     * Last low priority entry waiting for each webhook and channel, that the next ones are merged into
+     */
+    private final Map<String, Entry> mergeTargets = new HashMap<>();
+    private long sequence;
+    private int delivering;
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    public DeliveryQueue(int capacity, int workerCount, Consumer<Notification> deliverer) {
+        this(capacity, workerCount, deliverer, DEFAULT_AGING_MS, LoadShedding.NONE, capacity, IGNORE_SHED);
+    }
+
+    /**
+     * @param agingMillis   waiting time that raises a notification by one priority level
+     * @param shedThreshold number of waiting notifications from which low priority notifications are shed
+     */
+    public DeliveryQueue(int capacity, int workerCount, Consumer<Notification> deliverer, long agingMillis,
+                         LoadShedding shedding, int shedThreshold, ShedListener shedListener) {
+        this(capacity, workerCount, deliverer, agingMillis, shedding, shedThreshold, shedListener, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of the current time in nanoseconds
+     */
+    DeliveryQueue(int capacity, int workerCount, Consumer<Notification> deliverer, long agingMillis,
+                  LoadShedding shedding, int shedThreshold, ShedListener shedListener, LongSupplier clock) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive, was " + capacity);
+        }
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Worker count must be positive, was " + workerCount);
+        }
+        this.capacity = capacity;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+        this.shedding = shedding;
+        this.shedThreshold = shedThreshold;
+        this.shedListener = shedListener;
+        this.clock = clock;
+        this.deliverer = deliverer;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::drain, "slack-notifier-delivery-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        LOG.info("Delivery queue started with capacity [{}] and [{}] workers, load shedding [{}] from [{}] notifications",
+                capacity, workerCount, shedding, shedThreshold);
+    }
+
+    /**
+     * Enqueues the notification for asynchronous delivery.
+     *
+     * @param notification
+     * @return false if the queue is full or stopped and the notification was dropped. True if it was queued, or shed
+     * and reported to the {@link ShedListener}.
+     */
+    public boolean offer(Notification notification) {
+        if (!accepting) {
+            LOG.warn("Delivery queue is stopped, dropping [{}]", notification);
+            return false;
+        }
+        Notification shed = null;
+        boolean merged = false;
+        lock.lock();
+        try {
+            if (shedding != LoadShedding.NONE && notification.getPriority() == Priority.LOW && entries.size() >= shedThreshold) {
+                if (shedding == LoadShedding.DROP) {
+                    shed = notification;
+                } else if (mergeIntoWaiting(notification)) {
+                    shed = notification;
+                    merged = true;
+                }
+            }
+            if (shed == null) {
+                if (entries.size() >= capacity) {
+                    shed = shedding == LoadShedding.NONE ? null : evictLowerThan(notification.getPriority());
+                    if (shed == null) {
+                        LOG.error("Delivery queue is full ({} pending), dropping [{}]", entries.size(), notification);
+                        return false;
+                    }
+                }
+                add(notification);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (shed != null) {
+            reportShed(shed, merged);
+        }
+        return true;
+    }
+
+    private void add(Notification notification) {
+        long deadline = clock.getAsLong() + notification.getPriority().ordinal() * agingNanos;
+        Entry entry = new Entry(deadline, sequence++, Collections.singletonList(notification));
+        entries.add(entry);
+        if (notification.getPriority() == Priority.LOW) {
+            mergeTargets.put(mergeKey(notification), entry);
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * @return true if the notification was merged into a waiting one, which keeps its place in the queue
+     */
+    private boolean mergeIntoWaiting(Notification notification) {
+        String key = mergeKey(notification);
+        Entry target = mergeTargets.get(key);
+        // Batched notifications are already merged, and are not split up again
+        if (target == null || PayloadMerger.isMerged(notification) || PayloadMerger.isMerged(target.parts.get(0))) {
+            return false;
+        }
+        List<Notification> parts = new ArrayList<>(target.parts);
+        parts.add(notification);
+        List<Notification> merged = PayloadMerger.merge(parts);
+        if (merged.size() > 1) {
+            // The next low priority notifications are merged into this one instead
+            return false;
+        }
+        entries.remove(target);
+        Entry replacement = new Entry(target.deadline, target.sequence, parts, merged.get(0));
+        entries.add(replacement);
+        mergeTargets.put(key, replacement);
+        return true;
+    }
+
+    /**
+     * @return the low priority notification removed to make room for one of the given priority, null if there is none
+     */
+    private Notification evictLowerThan(Priority priority) {
+        if (priority == Priority.LOW) {
+            return null;
+        }
+        Iterator<Entry> last = entries.descendingIterator();
+        while (last.hasNext()) {
+            Entry entry = last.next();
+            if (entry.notification.getPriority() == Priority.LOW) {
+                last.remove();
+                mergeTargets.remove(mergeKey(entry.notification), entry);
+                return entry.notification;
+            }
+        }
+        return null;
+    }
+
+    private void reportShed(Notification notification, boolean merged) {
+        try {
+            if (merged) {
+                LOG.info("Delivery backlog is high, merged [{}] into a waiting notification", notification);
+                shedListener.merged(notification);
+            } else {
+                LOG.warn("Delivery backlog is high, shedding [{}]", notification);
+                shedListener.dropped(notification);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to report shed notification [" + notification + "]", e);
+        }
+    }
+
+    private static String mergeKey(Notification notification) {
+        return notification.getHook() + " " + notification.getPayload().getChannel();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the queue, giving the workers up to 10 seconds to deliver the notifications already queued.
+     *
+     * @see #stop(long)
+     */
+    public void stop() {
+        stop(DEFAULT_DRAIN_TIMEOUT_MS);
+    }
+
+    /**
+     * Stops accepting notifications and waits for the workers to deliver the ones already queued, such as the
+     * digests and batches flushed on shutdown, then stops the workers. Notifications still waiting when the grace
+     * period is over are logged and discarded.
+     *
+     * @param graceMillis longest time to wait for the queued notifications to be delivered
+     */
+    public void stop(long graceMillis) {
+        accepting = false;
+        awaitIdle(graceMillis);
+        running = false;
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            try {
+                worker.join(STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        lock.lock();
+        try {
+            if (!entries.isEmpty()) {
+                LOG.warn("Delivery queue stopped with [{}] undelivered notifications", entries.size());
+                entries.clear();
+                mergeTargets.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitIdle(long graceMillis) {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+            while ((!entries.isEmpty() || delivering > 0) && remaining > 0) {
+                remaining = idle.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            Notification notification;
+            try {
+                notification = poll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (notification != null) {
+                try {
+                    deliver(notification);
+                } finally {
+                    delivered();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the notification with the earliest deadline, null if none arrived within a second
+     */
+    private Notification poll() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (entries.isEmpty()) {
+                notEmpty.await(1, TimeUnit.SECONDS);
+                if (entries.isEmpty()) {
+                    return null;
+                }
+            }
+            Entry first = entries.pollFirst();
+            if (first.notification.getPriority() == Priority.LOW) {
+                mergeTargets.remove(mergeKey(first.notification), first);
+            }
+            delivering++;
+            return first.notification;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void delivered() {
+        lock.lock();
+        try {
+            delivering--;
+            if (entries.isEmpty() && delivering == 0) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(Notification notification) {
+        try {
+            deliverer.accept(notification);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to deliver [" + notification + "]", e);
+        }
+    }
+
+    /**
+     * A waiting notification. A merged notification keeps its parts, so that it can be merged again from them.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final long deadline;
+        private final long sequence;
+        private final List<Notification> parts;
+        private final Notification notification;
+
+        Entry(long deadline, long sequence, List<Notification> parts) {
+            this(deadline, sequence, parts, parts.get(0));
+        }
+
+        Entry(long deadline, long sequence, List<Notification> parts, Notification notification) {
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.parts = parts;
+            this.notification = notification;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            // Deadlines are compared by difference, as nano times may overflow
+            long byDeadline = deadline - other.deadline;
+            if (byDeadline != 0) {
+                return byDeadline < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.WebhookResponse;
+
+/**
+ * Outcome of a single webhook POST.
+ */
+public class DeliveryResult {
+
+    /**
+     * Marks that the response did not tell how long to wait before retrying.
+     */
+    public static final long NO_RETRY_AFTER = -1L;
+
+    private static final int OK = 200;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int code;
+    private final String body;
+    private final long retryAfterMillis;
+
+    public DeliveryResult(int code, String body, long retryAfterMillis) {
+        this.code = code;
+        this.body = body;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * jslack does not expose response headers, so a Retry-After sent by Slack is not available here.
+     */
+    public static DeliveryResult of(WebhookResponse response) {
+        Integer code = response.getCode();
+        return new DeliveryResult(code == null ? 0 : code, response.getBody(), NO_RETRY_AFTER);
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public boolean isSuccess() {
+        return code == OK;
+    }
+
+    public boolean isRateLimited() {
+        return code == TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Rate limiting and server side errors are transient, anything else (e.g. 404 for a revoked hook,
+     * 400 for an invalid payload) fails the same way on every attempt.
+     */
+    public boolean isRetryable() {
+        return isRateLimited() || code >= 500;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DeliveryResult{");
+        sb.append("code=").append(code);
+        sb.append(", body='").append(body).append('\'');
+        if (retryAfterMillis != NO_RETRY_AFTER) {
+            sb.append(", retryAfterMillis=").append(retryAfterMillis);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
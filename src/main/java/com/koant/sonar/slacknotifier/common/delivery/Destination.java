@@ -0,0 +1,102 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Where a notification is posted: an incoming webhook, and the channel to post to through it. Without a channel,
+ * Slack posts to the default channel of the webhook.
+ */
+public final class Destination {
+
+    private static final Logger LOG = Loggers.get(Destination.class);
+
+    private final String hook;
+    private final String channel;
+
+    public Destination(String hook, String channel) {
+        this.hook = hook;
+        this.channel = channel;
+    }
+
+    /**
+     * Parses the channel setting of a project config: a comma separated list of channels, posted to through the
+     * default webhook, and webhook URLs, posted to their default channel.
+     * Channels are skipped if there is no default webhook.
+     *
+     * @return the destinations, without duplicates, in the order they are listed
+     */
+    public static List<Destination> parse(String channels, String defaultHook) {
+        if (channels == null) {
+            return Collections.emptyList();
+        }
+        List<Destination> destinations = new ArrayList<>();
+        for (String entry : channels.split(",")) {
+            String value = entry.trim();
+            Destination destination;
+            if (value.isEmpty()) {
+                continue;
+            } else if (value.startsWith("https://") || value.startsWith("http://")) {
+                destination = new Destination(value, null);
+            } else if (defaultHook == null || defaultHook.trim().isEmpty()) {
+                LOG.warn("No Slack webhook configured, cannot post to channel [{}]", value);
+                continue;
+            } else {
+                destination = new Destination(defaultHook, value);
+            }
+            if (!destinations.contains(destination)) {
+                destinations.add(destination);
+            }
+        }
+        return destinations;
+    }
+
+    public String getHook() {
+        return hook;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return a copy of the payload addressed to this destination, sharing its rendered text and attachments
+     */
+    public Payload address(Payload payload) {
+        return Payload.builder()
+                .channel(channel)
+                .username(payload.getUsername())
+                .text(payload.getText())
+                .iconUrl(payload.getIconUrl())
+                .iconEmoji(payload.getIconEmoji())
+                .attachments(payload.getAttachments())
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Destination that = (Destination) o;
+        return Objects.equals(hook, that.hook) && Objects.equals(channel, that.channel);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hook, channel);
+    }
+
+    /**
+     * Webhook URLs contain a secret token, so only the channel is shown
+     */
+    @Override
+    public String toString() {
+        return channel == null ? "webhook default channel" : channel;
+    }
+}
@@ -0,0 +1,25 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.Slack;
+import com.github.seratch.jslack.api.webhook.Payload;
+
+import java.io.IOException;
+
+/**
+ * Sends through a jslack client, which uses its own default HTTP client.
+ * jslack does not expose response headers, so a Retry-After of Slack is not reported.
+ */
+public class JslackWebhookSender implements WebhookSender {
+
+    private final Slack slackClient;
+
+    public JslackWebhookSender(Slack slackClient) {
+        this.slackClient = slackClient;
+    }
+
+    @Override
+    public DeliveryResult send(String hook, Payload payload) throws IOException {
+        // See https://github.com/seratch/jslack
+        return DeliveryResult.of(slackClient.send(hook, payload));
+    }
+}
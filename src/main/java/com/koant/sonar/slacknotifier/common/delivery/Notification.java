@@ -0,0 +1,71 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A rendered Slack message waiting to be posted to an incoming webhook.
+ */
+public class Notification {
+    private final String projectKey;
+    private final String hook;
+    private final Payload payload;
+    private final List<Long> outboxIds;
+    private final Priority priority;
+
+    public Notification(String projectKey, String hook, Payload payload) {
+        this(projectKey, hook, payload, Collections.emptyList());
+    }
+
+    public Notification(String projectKey, String hook, Payload payload, Priority priority) {
+        this(projectKey, hook, payload, Collections.emptyList(), priority);
+    }
+
+    /**
+     * @param outboxIds ids of the outbox journal entries this notification settles once delivered.
+     *                  A merged notification carries the ids of all its parts.
+     */
+    public Notification(String projectKey, String hook, Payload payload, List<Long> outboxIds) {
+        this(projectKey, hook, payload, outboxIds, Priority.NORMAL);
+    }
+
+    public Notification(String projectKey, String hook, Payload payload, List<Long> outboxIds, Priority priority) {
+        this.projectKey = projectKey;
+        this.hook = hook;
+        this.payload = payload;
+        this.outboxIds = Collections.unmodifiableList(outboxIds);
+        this.priority = priority;
+    }
+
+    public String getProjectKey() {
+        return projectKey;
+    }
+
+    public String getHook() {
+        return hook;
+    }
+
+    public Payload getPayload() {
+        return payload;
+    }
+
+    public List<Long> getOutboxIds() {
+        return outboxIds;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Notification{");
+        sb.append("projectKey='").append(projectKey).append('\'');
+        sb.append(", channel='").append(payload == null ? null : payload.getChannel()).append('\'');
+        sb.append(", priority=").append(priority);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects notifications bound to the same webhook and channel for the duration of a batching window,
+ * then hands them downstream merged into as few messages as fit within the Slack limits.
+ * <p>
+ * The window of a channel opens when its first notification arrives, so a burst of analyses produces one message
+ * per channel per window instead of one message per analysis.
+ * </p>
+ */
+public class NotificationBatcher {
+
+    private static final Logger LOG = Loggers.get(NotificationBatcher.class);
+
+    private final Consumer<Notification> downstream;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, List<Notification>> batches = new HashMap<>();
+
+    public NotificationBatcher(Consumer<Notification> downstream) {
+        this.downstream = downstream;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slack-notifier-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param notification
+     * @param windowMillis how long to wait for more notifications to the same channel, if this one opens a new batch
+     */
+    public void add(Notification notification, long windowMillis) {
+        String key = batchKey(notification);
+        synchronized (batches) {
+            List<Notification> batch = batches.get(key);
+            if (batch != null) {
+                batch.add(notification);
+                return;
+            }
+            batch = new ArrayList<>();
+            batch.add(notification);
+            batches.put(key, batch);
+        }
+        try {
+            scheduler.schedule(() -> flush(key), windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Stopped while adding, do not hold the notification back
+            flush(key);
+        }
+    }
+
+    /**
+     * Stops the scheduler and hands all open batches downstream immediately.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+        List<String> keys;
+        synchronized (batches) {
+            keys = new ArrayList<>(batches.keySet());
+        }
+        keys.forEach(this::flush);
+    }
+
+    private void flush(String key) {
+        List<Notification> batch;
+        synchronized (batches) {
+            batch = batches.remove(key);
+        }
+        if (batch == null) {
+            return;
+        }
+        LOG.info("Sending [{}] batched notifications to [{}]", batch.size(), key);
+        PayloadMerger.merge(batch).forEach(downstream);
+    }
+
+    private static String batchKey(Notification notification) {
+        return notification.getHook() + " " + notification.getPayload().getChannel();
+    }
+}
@@ -0,0 +1,142 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import okhttp3.*;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Default transport: posts payloads with OkHttp, keeping a pool of keep-alive connections per webhook host so that
+ * consecutive messages reuse the TCP connection and TLS session.
+ * <p>
+ * Every call is bounded by a connect timeout, a read timeout and a total deadline, after which the call is cancelled,
+ * so an unresponsive Slack endpoint cannot hold a delivery worker indefinitely.
+ * </p>
+ */
+public class OkHttpWebhookSender implements WebhookSender, Closeable {
+
+    private static final Logger LOG = Loggers.get(OkHttpWebhookSender.class);
+
+    private static final int MAX_IDLE_CONNECTIONS_PER_HOST = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private final OkHttpClient baseClient;
+    private final long deadlineMillis;
+    private final Map<String, OkHttpClient> clientsByHost = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService deadlines;
+    private final PayloadEncoder encoder = new PayloadEncoder();
+    private final LongConsumer payloadSizes;
+
+    public OkHttpWebhookSender(long connectTimeoutMillis, long readTimeoutMillis, long deadlineMillis) {
+        this(connectTimeoutMillis, readTimeoutMillis, deadlineMillis, bytes -> { });
+    }
+
+    /**
+     * @param payloadSizes receives the number of bytes of every payload sent
+     */
+    public OkHttpWebhookSender(long connectTimeoutMillis, long readTimeoutMillis, long deadlineMillis, LongConsumer payloadSizes) {
+        this.baseClient = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .socketFactory(new NoDelaySocketFactory())
+                // Retries are decided by RetryingDeliverer
+                .retryOnConnectionFailure(false)
+                .build();
+        this.deadlineMillis = deadlineMillis;
+        this.payloadSizes = payloadSizes;
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slack-notifier-http-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public DeliveryResult send(String hook, Payload payload) throws IOException {
+        HttpUrl url = HttpUrl.parse(hook);
+        if (url == null) {
+            throw new IOException("Invalid Slack webhook URL");
+        }
+        return execute(new Request.Builder()
+                .url(url)
+                .post(new PayloadRequestBody(encoder, payload, payloadSizes))
+                .build());
+    }
+
+    /**
+     * Posts JSON to a Slack Web API method, with the same connection pooling, timeouts and deadline as webhook posts
+     */
+    DeliveryResult post(HttpUrl url, String token, String json) throws IOException {
+        payloadSizes.accept(json.getBytes(StandardCharsets.UTF_8).length);
+        return execute(new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + token)
+                .post(RequestBody.create(PayloadRequestBody.JSON, json))
+                .build());
+    }
+
+    private DeliveryResult execute(Request request) throws IOException {
+        Call call = clientFor(request.url()).newCall(request);
+        ScheduledFuture<?> deadline = deadlines.schedule(call::cancel, deadlineMillis, TimeUnit.MILLISECONDS);
+        try (Response response = call.execute()) {
+            return new DeliveryResult(response.code(), response.body().string(), retryAfterMillis(response));
+        } catch (IOException e) {
+            if (call.isCanceled()) {
+                throw new InterruptedIOException("Slack did not respond within the deadline of " + deadlineMillis + " ms");
+            }
+            throw e;
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    /**
+     * Connections are pooled per host, the pools share the dispatcher and timeouts of the base client
+     */
+    private OkHttpClient clientFor(HttpUrl url) {
+        String host = url.scheme() + "://" + url.host() + ":" + url.port();
+        return clientsByHost.computeIfAbsent(host, h -> {
+            LOG.info("Creating connection pool for Slack webhook host [{}]", h);
+            return baseClient.newBuilder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS_PER_HOST, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .build();
+        });
+    }
+
+    int connectionCount() {
+        return clientsByHost.values().stream().mapToInt(c -> c.connectionPool().connectionCount()).sum();
+    }
+
+    /**
+     * Retry-After is given in seconds by Slack
+     */
+    private static long retryAfterMillis(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return DeliveryResult.NO_RETRY_AFTER;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            LOG.debug("Ignoring unsupported Retry-After [{}]", retryAfter);
+            return DeliveryResult.NO_RETRY_AFTER;
+        }
+    }
+
+    @Override
+    public void close() {
+        deadlines.shutdownNow();
+        clientsByHost.values().forEach(c -> c.connectionPool().evictAll());
+        clientsByHost.clear();
+        baseClient.dispatcher().executorService().shutdown();
+    }
+}
@@ -0,0 +1,104 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Holds the notifications of webhooks whose circuit is open, instead of attempting them.
+ * <p>
+ * A background thread regularly checks the circuits of the webhooks with parked notifications. When the open duration
+ * of a circuit has passed, one notification is released as the probe, and no other one until the outcome of that probe
+ * is known; once the circuit is closed again, all of them are released.
+ * </p>
+ */
+public class ParkingLot {
+
+    private static final Logger LOG = Loggers.get(ParkingLot.class);
+
+    private final CircuitBreakers breakers;
+    private final Consumer<Notification> release;
+    private final int capacity;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this
+    private final Map<String, Deque<Notification>> parkedByHook = new HashMap<>();
+    private int size;
+
+    /**
+     * @param release         receives the released notifications, e.g. to queue them for delivery again
+     * @param capacity        maximum number of notifications parked at the same time
+     * @param checkIntervalMs how often the circuits of the parked notifications are checked
+     */
+    public ParkingLot(CircuitBreakers breakers, Consumer<Notification> release, int capacity, long checkIntervalMs) {
+        this.breakers = breakers;
+        this.release = release;
+        this.capacity = capacity;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slack-notifier-parking");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::releaseReady, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return false if the parking lot is full and the notification was not parked
+     */
+    public synchronized boolean park(Notification notification) {
+        if (size >= capacity) {
+            LOG.error("Parking lot is full ({} parked), dropping [{}]", size, notification);
+            return false;
+        }
+        parkedByHook.computeIfAbsent(notification.getHook(), h -> new ArrayDeque<>()).add(notification);
+        size++;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void releaseReady() {
+        Deque<Notification> released = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Deque<Notification>>> it = parkedByHook.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Deque<Notification>> entry = it.next();
+                CircuitBreaker breaker = breakers.forHook(entry.getKey());
+                Deque<Notification> parked = entry.getValue();
+                if (breaker.getState() == CircuitBreaker.State.CLOSED) {
+                    released.addAll(parked);
+                    parked.clear();
+                } else if (breaker.reserveProbe()) {
+                    released.add(parked.poll());
+                }
+                if (parked.isEmpty()) {
+                    it.remove();
+                }
+            }
+            size -= released.size();
+        }
+        if (!released.isEmpty()) {
+            LOG.info("Releasing {} parked notifications", released.size());
+        }
+        try {
+            released.forEach(release);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to release parked notifications", e);
+        }
+    }
+}
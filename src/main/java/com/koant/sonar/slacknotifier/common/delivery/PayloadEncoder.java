@@ -0,0 +1,288 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes payloads as UTF-8 JSON, byte for byte as the snake case Gson of jslack does, without reflection.
+ * <p>
+ * The members that are the same for every notification of a project config are encoded once and cached: the channel,
+ * username and icons of a message, and the color of an attachment, one per quality gate status. Only the text and
+ * fields of each message are encoded when it is sent. The fragments are keyed by the values they encode, so they never
+ * go stale when the project configs change; the cache is cleared when it is full, like the other per-key caches.
+ * </p>
+ */
+public class PayloadEncoder {
+
+    static final int MAX_CACHED_FRAGMENTS = 1_000;
+
+    private static final char LINE_SEPARATOR = (char) 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+    private static final String[] REPLACEMENT_CHARS = new String[128];
+    private static final byte[] TEXT = utf8("\"text\":");
+    private static final byte[] ATTACHMENTS = utf8("\"attachments\":[");
+    private static final byte[] FIELDS = utf8("\"fields\":[");
+    private static final byte[] MRKDWN_IN = utf8("\"mrkdwn_in\":[");
+    private static final byte[] TS = utf8("\"ts\":");
+    private static final byte[] SHORT = utf8(",\"short\":true}");
+    private static final byte[] NOT_SHORT = utf8(",\"short\":false}");
+
+    static {
+        // Escapes of Gson with HTML escaping, which jslack leaves enabled
+        for (int c = 0; c < 0x20; c++) {
+            REPLACEMENT_CHARS[c] = String.format("\\u%04x", c);
+        }
+        REPLACEMENT_CHARS['"'] = "\\\"";
+        REPLACEMENT_CHARS['\\'] = "\\\\";
+        REPLACEMENT_CHARS['\t'] = "\\t";
+        REPLACEMENT_CHARS['\b'] = "\\b";
+        REPLACEMENT_CHARS['\n'] = "\\n";
+        REPLACEMENT_CHARS['\r'] = "\\r";
+        REPLACEMENT_CHARS['\f'] = "\\f";
+        REPLACEMENT_CHARS['<'] = "\\u003c";
+        REPLACEMENT_CHARS['>'] = "\\u003e";
+        REPLACEMENT_CHARS['&'] = "\\u0026";
+        REPLACEMENT_CHARS['='] = "\\u003d";
+        REPLACEMENT_CHARS['\''] = "\\u0027";
+    }
+
+    private final Map<String, byte[]> headers = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> colors = new ConcurrentHashMap<>();
+
+    public void encode(Payload payload, BufferedSink sink) throws IOException {
+        sink.writeByte('{');
+        boolean first = true;
+        if (payload.getText() != null) {
+            sink.write(TEXT);
+            string(payload.getText(), sink);
+            first = false;
+        }
+        byte[] header = header(payload);
+        if (header.length > 0) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(header);
+            first = false;
+        }
+        List<Attachment> attachments = payload.getAttachments();
+        if (attachments != null) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(ATTACHMENTS);
+            for (int i = 0; i < attachments.size(); i++) {
+                if (i > 0) {
+                    sink.writeByte(',');
+                }
+                attachment(attachments.get(i), sink);
+            }
+            sink.writeByte(']');
+        }
+        sink.writeByte('}');
+    }
+
+    /**
+     * @return the members of the message after its text, without leading comma
+     */
+    private byte[] header(Payload payload) {
+        String key = payload.getChannel() + '\n' + payload.getUsername() + '\n' + payload.getIconUrl() + '\n' + payload.getIconEmoji();
+        byte[] header = headers.get(key);
+        if (header == null) {
+            StringBuilder members = new StringBuilder();
+            member(members, "channel", payload.getChannel());
+            member(members, "username", payload.getUsername());
+            member(members, "icon_url", payload.getIconUrl());
+            member(members, "icon_emoji", payload.getIconEmoji());
+            header = utf8(members.toString());
+            cache(headers, key, header);
+        }
+        return header;
+    }
+
+    private byte[] color(String color) {
+        byte[] member = colors.get(color);
+        if (member == null) {
+            StringBuilder members = new StringBuilder();
+            member(members, "color", color);
+            member = utf8(members.toString());
+            cache(colors, color, member);
+        }
+        return member;
+    }
+
+    private static void cache(Map<String, byte[]> fragments, String key, byte[] fragment) {
+        if (fragments.size() >= MAX_CACHED_FRAGMENTS) {
+            fragments.clear();
+        }
+        fragments.put(key, fragment);
+    }
+
+    private void attachment(Attachment attachment, BufferedSink sink) throws IOException {
+        sink.writeByte('{');
+        boolean first = member("fallback", attachment.getFallback(), true, sink);
+        if (attachment.getColor() != null) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(color(attachment.getColor()));
+            first = false;
+        }
+        first = member("pretext", attachment.getPretext(), first, sink);
+        first = member("author_name", attachment.getAuthorName(), first, sink);
+        first = member("author_link", attachment.getAuthorLink(), first, sink);
+        first = member("author_icon", attachment.getAuthorIcon(), first, sink);
+        first = member("title", attachment.getTitle(), first, sink);
+        first = member("title_link", attachment.getTitleLink(), first, sink);
+        first = member("text", attachment.getText(), first, sink);
+        List<Field> fields = attachment.getFields();
+        if (fields != null) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(FIELDS);
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) {
+                    sink.writeByte(',');
+                }
+                field(fields.get(i), sink);
+            }
+            sink.writeByte(']');
+            first = false;
+        }
+        first = member("image_url", attachment.getImageUrl(), first, sink);
+        first = member("thumb_url", attachment.getThumbUrl(), first, sink);
+        first = member("footer", attachment.getFooter(), first, sink);
+        first = member("footer_icon", attachment.getFooterIcon(), first, sink);
+        if (attachment.getTs() != null) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(TS).writeUtf8(attachment.getTs().toString());
+            first = false;
+        }
+        List<String> mrkdwnIn = attachment.getMrkdwnIn();
+        if (mrkdwnIn != null) {
+            if (!first) {
+                sink.writeByte(',');
+            }
+            sink.write(MRKDWN_IN);
+            for (int i = 0; i < mrkdwnIn.size(); i++) {
+                if (i > 0) {
+                    sink.writeByte(',');
+                }
+                nullableString(mrkdwnIn.get(i), sink);
+            }
+            sink.writeByte(']');
+        }
+        sink.writeByte('}');
+    }
+
+    private static void field(Field field, BufferedSink sink) throws IOException {
+        sink.writeByte('{');
+        boolean first = member("title", field.getTitle(), true, sink);
+        first = member("value", field.getValue(), first, sink);
+        byte[] shortMember = field.isValueShortEnough() ? SHORT : NOT_SHORT;
+        // The fragment starts with the comma following the title or value
+        sink.write(shortMember, first ? 1 : 0, first ? shortMember.length - 1 : shortMember.length);
+    }
+
+    /**
+     * Writes the member if its value is not null, as Gson leaves out null members
+     *
+     * @return false if a member was written before or by this call
+     */
+    private static boolean member(String name, String value, boolean first, BufferedSink sink) throws IOException {
+        if (value == null) {
+            return first;
+        }
+        if (!first) {
+            sink.writeByte(',');
+        }
+        sink.writeByte('"').writeUtf8(name).writeByte('"').writeByte(':');
+        string(value, sink);
+        return false;
+    }
+
+    private static void member(StringBuilder members, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        if (members.length() > 0) {
+            members.append(',');
+        }
+        members.append('"').append(name).append("\":");
+        string(value, members);
+    }
+
+    private static void nullableString(String value, BufferedSink sink) throws IOException {
+        if (value == null) {
+            sink.writeUtf8("null");
+        } else {
+            string(value, sink);
+        }
+    }
+
+    /**
+     * Writes the value as a JSON string, copying the runs of characters that need no escaping as they are
+     */
+    private static void string(String value, BufferedSink sink) throws IOException {
+        sink.writeByte('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            String replacement = replacement(value.charAt(i));
+            if (replacement == null) {
+                continue;
+            }
+            if (last < i) {
+                sink.writeUtf8(value, last, i);
+            }
+            sink.writeUtf8(replacement);
+            last = i + 1;
+        }
+        if (last < length) {
+            sink.writeUtf8(value, last, length);
+        }
+        sink.writeByte('"');
+    }
+
+    private static void string(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = replacement(c);
+            if (replacement == null) {
+                out.append(c);
+            } else {
+                out.append(replacement);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String replacement(char c) {
+        if (c < 128) {
+            return REPLACEMENT_CHARS[c];
+        }
+        if (c == LINE_SEPARATOR) {
+            return "\\u2028";
+        }
+        if (c == PARAGRAPH_SEPARATOR) {
+            return "\\u2029";
+        }
+        return null;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
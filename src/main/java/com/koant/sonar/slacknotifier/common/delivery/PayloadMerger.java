@@ -0,0 +1,114 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Merges several notifications bound to the same webhook and channel into Slack messages
+ * with one attachment per analysed project.
+ * <p>
+ * Notifications are merged into as few messages as fit within {@link SlackLimits}. A merged message has the highest
+ * priority of its parts.
+ * </p>
+ */
+public class PayloadMerger {
+
+    private PayloadMerger() {
+        // Static utility
+    }
+
+    /**
+     * Project keys cannot contain commas, so a notification whose key lists several projects is a merged one
+     *
+     * @return true if the notification is the merge of notifications of several projects
+     */
+    public static boolean isMerged(Notification notification) {
+        return notification.getProjectKey().indexOf(',') >= 0;
+    }
+
+    public static List<Notification> merge(List<Notification> notifications) {
+        if (notifications.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to merge");
+        }
+        if (notifications.size() == 1) {
+            return Collections.singletonList(notifications.get(0));
+        }
+
+        List<Notification> merged = new ArrayList<>();
+        List<Notification> group = new ArrayList<>();
+        List<Attachment> attachments = new ArrayList<>();
+        // The text of the merged message is short, reserve room for it as if it were empty
+        Payload first = notifications.get(0).getPayload();
+        int messageLength = SlackLimits.payloadLength(first.getChannel(), first.getUsername(), "")
+                + SlackLimits.encodedLength(notifications.size() + " projects analyzed.");
+        int length = messageLength;
+        for (Notification notification : notifications) {
+            Attachment attachment = toAttachment(notification.getPayload());
+            int attachmentLength = SlackLimits.attachmentLength(attachment);
+            if (!group.isEmpty() && (attachments.size() == SlackLimits.MAX_ATTACHMENTS
+                    || length + attachmentLength > SlackLimits.MAX_PAYLOAD_BYTES)) {
+                merged.add(merge(group, attachments));
+                group = new ArrayList<>();
+                attachments = new ArrayList<>();
+                length = messageLength;
+            }
+            group.add(notification);
+            attachments.add(attachment);
+            length += attachmentLength;
+        }
+        merged.add(merge(group, attachments));
+        return merged;
+    }
+
+    private static Notification merge(List<Notification> notifications, List<Attachment> attachments) {
+        Notification first = notifications.get(0);
+        if (notifications.size() == 1) {
+            return first;
+        }
+        Payload merged = Payload.builder()
+                .channel(first.getPayload().getChannel())
+                .username(first.getPayload().getUsername())
+                .text(notifications.size() + " projects analyzed.")
+                .attachments(attachments)
+                .build();
+        String projectKeys = notifications.stream()
+                .map(Notification::getProjectKey)
+                .collect(Collectors.joining(","));
+        List<Long> outboxIds = new ArrayList<>();
+        Priority priority = Priority.LOW;
+        for (Notification notification : notifications) {
+            outboxIds.addAll(notification.getOutboxIds());
+            priority = priority.max(notification.getPriority());
+        }
+        return new Notification(projectKeys, first.getHook(), merged, outboxIds, priority);
+    }
+
+    /**
+     * The project message becomes the attachment text, and the quality gate conditions of the project
+     * (rendered by ProjectAnalysisPayloadBuilder into a single attachment) become its fields, followed by the fields
+     * of its other attachments, such as its measures.
+     */
+    private static Attachment toAttachment(Payload payload) {
+        Attachment.AttachmentBuilder builder = Attachment.builder()
+                .fallback(payload.getText())
+                .text(payload.getText());
+        List<Attachment> attachments = payload.getAttachments();
+        if (attachments != null && !attachments.isEmpty()) {
+            builder.color(attachments.get(0).getColor());
+            List<Field> fields = new ArrayList<>();
+            for (Attachment attachment : attachments) {
+                if (attachment.getFields() != null) {
+                    fields.addAll(attachment.getFields());
+                }
+            }
+            builder.fields(fields);
+        }
+        return builder.build();
+    }
+}
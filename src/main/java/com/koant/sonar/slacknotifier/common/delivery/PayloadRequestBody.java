@@ -0,0 +1,69 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Sink;
+
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Request body that serializes a payload straight into the connection as it is written, instead of building the
+ * JSON as a String and copying it into a byte array first. The body length is not known up front, so it is sent
+ * chunked; the number of bytes written is reported once the payload is complete.
+ *
+ * @see PayloadEncoder
+ */
+public class PayloadRequestBody extends RequestBody {
+
+    static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final PayloadEncoder encoder;
+    private final Payload payload;
+    private final LongConsumer sizeListener;
+
+    public PayloadRequestBody(PayloadEncoder encoder, Payload payload, LongConsumer sizeListener) {
+        this.encoder = encoder;
+        this.payload = payload;
+        this.sizeListener = sizeListener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1L;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink counting = new CountingSink(sink);
+        BufferedSink buffered = Okio.buffer(counting);
+        encoder.encode(payload, buffered);
+        // Pushes the remaining bytes into the connection sink without closing it
+        buffered.emit();
+        sizeListener.accept(counting.bytesWritten);
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        private long bytesWritten;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+        }
+    }
+}
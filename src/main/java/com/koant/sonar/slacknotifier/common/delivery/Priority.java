@@ -0,0 +1,27 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+/**
+ * Delivery priority of a notification. The delivery queue sends notifications of higher priority first, and may shed
+ * {@link #LOW} ones when its backlog grows.
+ */
+public enum Priority {
+    /**
+     * Failed quality gates
+     */
+    HIGH,
+    /**
+     * Quality gates with warnings, analyses without quality gate and digests
+     */
+    NORMAL,
+    /**
+     * Passed quality gates
+     */
+    LOW;
+
+    /**
+     * @return the higher of the two priorities
+     */
+    public Priority max(Priority other) {
+        return other.ordinal() < ordinal() ? other : this;
+    }
+}
@@ -0,0 +1,57 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the n:th retry waits a random time between 0 and
+ * min(maxDelay, baseDelay * 2^(n-1)), so retries from parallel workers do not hit Slack in lockstep.
+ * A Retry-After given by Slack wins over the computed backoff, but is capped at the maximum delay too, so that a large
+ * or bogus header does not hold a delivery worker, and every worker paused on the webhook, for an unbounded time.
+ */
+public class RetryPolicy {
+
+    /**
+     * Slack's incoming webhooks allow about one message per second, wait at least that long after a 429
+     * if the response did not say how long to wait.
+     */
+    static final long DEFAULT_RATE_LIMITED_DELAY_MS = 1000L;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required, was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param failedAttempts number of attempts made so far, at least 1
+     * @param result         the result of the last attempt, null if it failed with an exception
+     * @return milliseconds to wait before the next attempt
+     */
+    public long delayMillis(int failedAttempts, DeliveryResult result) {
+        if (result != null && result.getRetryAfterMillis() != DeliveryResult.NO_RETRY_AFTER) {
+            return Math.min(result.getRetryAfterMillis(), maxDelayMillis);
+        }
+        long backoff = backoffMillis(failedAttempts);
+        if (result != null && result.isRateLimited()) {
+            return Math.max(backoff, DEFAULT_RATE_LIMITED_DELAY_MS);
+        }
+        return backoff;
+    }
+
+    long backoffMillis(int failedAttempts) {
+        int shift = Math.min(failedAttempts - 1, 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
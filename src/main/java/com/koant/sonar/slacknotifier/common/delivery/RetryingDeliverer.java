@@ -0,0 +1,111 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Delivers a notification through a {@link WebhookSender}, taking a token from the rate limiter of the webhook
+ * before every attempt and retrying transient failures according to a {@link RetryPolicy}.
+ * Before every attempt the circuit breaker of the webhook is consulted; while it is open, the notification is handed
+ * to {@link DeliveryListener#parked(Notification)} instead of being attempted.
+ */
+public class RetryingDeliverer implements Consumer<Notification> {
+
+    private static final Logger LOG = Loggers.get(RetryingDeliverer.class);
+
+    private final WebhookSender sender;
+    private final RetryPolicy retryPolicy;
+    private final WebhookRateLimiters rateLimiters;
+    private final CircuitBreakers circuitBreakers;
+    private final DeliveryListener listener;
+
+    public RetryingDeliverer(WebhookSender sender, RetryPolicy retryPolicy, WebhookRateLimiters rateLimiters) {
+        this(sender, retryPolicy, rateLimiters, new DeliveryListener() {
+        });
+    }
+
+    public RetryingDeliverer(WebhookSender sender, RetryPolicy retryPolicy, WebhookRateLimiters rateLimiters,
+                             DeliveryListener listener) {
+        this(sender, retryPolicy, rateLimiters, CircuitBreakers.disabled(), listener);
+    }
+
+    public RetryingDeliverer(WebhookSender sender, RetryPolicy retryPolicy, WebhookRateLimiters rateLimiters,
+                             CircuitBreakers circuitBreakers, DeliveryListener listener) {
+        this.sender = sender;
+        this.retryPolicy = retryPolicy;
+        this.rateLimiters = rateLimiters;
+        this.circuitBreakers = circuitBreakers;
+        this.listener = listener;
+    }
+
+    @Override
+    public void accept(Notification notification) {
+        try {
+            deliver(notification);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while delivering [{}], notification is lost", notification);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if Slack accepted the notification
+     * @throws InterruptedException
+     */
+    public boolean deliver(Notification notification) throws InterruptedException {
+        TokenBucket bucket = rateLimiters.forHook(notification.getHook());
+        CircuitBreaker breaker = circuitBreakers.forHook(notification.getHook());
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                LOG.debug("Circuit of Slack webhook [{}] is open, parking [{}]", breaker.getName(), notification);
+                listener.parked(notification);
+                return false;
+            }
+            bucket.acquire();
+            DeliveryResult result = null;
+            long start = System.nanoTime();
+            try {
+                result = sender.send(notification);
+                listener.attempted(notification, result, System.nanoTime() - start);
+                if (result.getCode() >= 500) {
+                    breaker.onFailure();
+                } else {
+                    breaker.onSuccess();
+                }
+                if (result.isSuccess()) {
+                    listener.delivered(notification);
+                    return true;
+                }
+                if (!result.isRetryable()) {
+                    LOG.error("Failed to post to slack, response is [{}], not retrying [{}]", result, notification);
+                    listener.failed(notification, result);
+                    return false;
+                }
+            } catch (RuntimeException e) {
+                // Leaves no probe in flight forever
+                breaker.onFailure();
+                throw e;
+            } catch (IOException e) {
+                breaker.onFailure();
+                listener.attempted(notification, null, System.nanoTime() - start);
+                LOG.warn("Failed to send slack message [{}] on attempt {}: {}", notification, attempt, e.getMessage());
+            }
+            if (attempt >= retryPolicy.getMaxAttempts()) {
+                LOG.error("Giving up on [{}] after {} attempts, last response [{}]", notification, attempt, result);
+                listener.failed(notification, result);
+                return false;
+            }
+            long delay = retryPolicy.delayMillis(attempt, result);
+            if (result != null && result.isRateLimited()) {
+                // Hold back the other workers posting to the same hook too
+                bucket.pause(delay);
+            }
+            LOG.info("Retrying [{}] in {} ms, response was [{}]", notification, delay, result);
+            TimeUnit.MILLISECONDS.sleep(delay);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+
+import java.util.List;
+
+/**
+ * Size limits of a Slack message, and upper bounds of the size of its JSON encoding.
+ * <p>
+ * The bounds are computed from the strings of the message without encoding it, so that a builder can keep a running
+ * total as it adds fields and split or collapse content before the message is sent, rather than after Slack rejected it.
+ * Every character is counted at its worst case JSON encoding, HTML-safe escapes included, so a message within
+ * {@link #MAX_PAYLOAD_BYTES} by these bounds is within it once encoded.
+ * </p>
+ */
+public final class SlackLimits {
+
+    /**
+     * Slack rejects messages with more attachments
+     */
+    public static final int MAX_ATTACHMENTS = 100;
+    /**
+     * Budget of the JSON encoding of one message, well below the sizes at which Slack truncates or rejects messages
+     */
+    public static final int MAX_PAYLOAD_BYTES = 16_000;
+    /**
+     * Budget of the encoding of a message text, so that the text leaves room for attachments
+     */
+    public static final int MAX_TEXT_BYTES = 4_000;
+    /**
+     * Budget of the encoding of a field title or value, so that a single field always fits in a message
+     */
+    public static final int MAX_FIELD_STRING_BYTES = 1_500;
+
+    private static final String ELLIPSIS = "…";
+
+    /**
+     * Keys, punctuation and the "short" flag of a field, and the comma separating it from the next one
+     */
+    private static final int FIELD_OVERHEAD = 48;
+    /**
+     * Keys and punctuation of an attachment with a color, fields, text and fallback
+     */
+    private static final int ATTACHMENT_OVERHEAD = 80;
+    /**
+     * Keys and punctuation of a message with a channel, username, text and attachments
+     */
+    private static final int PAYLOAD_OVERHEAD = 80;
+
+    private SlackLimits() {
+        // Static utility
+    }
+
+    /**
+     * @return upper bound of the bytes of the string encoded as a JSON string, quotes included
+     */
+    public static int encodedLength(String value) {
+        if (value == null) {
+            return 4;
+        }
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            length += encodedLength(value.charAt(i));
+        }
+        return length;
+    }
+
+    private static int encodedLength(char c) {
+        if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'' || c == 0x2028 || c == 0x2029) {
+            // Escaped as a unicode escape sequence by the HTML-safe encoding
+            return 6;
+        }
+        if (c == '"' || c == '\\') {
+            return 2;
+        }
+        if (c < 0x80) {
+            return 1;
+        }
+        // At most 3 UTF-8 bytes, a surrogate pair takes 4 bytes for 2 chars
+        return c < 0x800 ? 2 : 3;
+    }
+
+    /**
+     * @return the value, cut short with an ellipsis if its encoding is longer than maxBytes
+     */
+    public static String truncate(String value, int maxBytes) {
+        if (value == null || encodedLength(value) <= maxBytes) {
+            return value;
+        }
+        int budget = maxBytes - encodedLength(ELLIPSIS);
+        int length = 2;
+        int end = 0;
+        while (end < value.length() && length + encodedLength(value.charAt(end)) <= budget) {
+            length += encodedLength(value.charAt(end));
+            end++;
+        }
+        if (end > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end) + ELLIPSIS;
+    }
+
+    public static int fieldLength(Field field) {
+        return FIELD_OVERHEAD + encodedLength(field.getTitle()) + encodedLength(field.getValue());
+    }
+
+    /**
+     * @return upper bound of an attachment without its fields
+     */
+    public static int attachmentLength(String color, String text, String fallback) {
+        return ATTACHMENT_OVERHEAD + encodedLength(color) + encodedLength(text) + encodedLength(fallback);
+    }
+
+    public static int attachmentLength(Attachment attachment) {
+        int length = attachmentLength(attachment.getColor(), attachment.getText(), attachment.getFallback())
+                + encodedLength(attachment.getTitle());
+        List<Field> fields = attachment.getFields();
+        if (fields != null) {
+            for (Field field : fields) {
+                length += fieldLength(field);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return upper bound of a message without its attachments
+     */
+    public static int payloadLength(String channel, String username, String text) {
+        return PAYLOAD_OVERHEAD + encodedLength(channel) + encodedLength(username) + encodedLength(text);
+    }
+
+    public static int payloadLength(Payload payload) {
+        int length = payloadLength(payload.getChannel(), payload.getUsername(), payload.getText())
+                + encodedLength(payload.getIconUrl()) + encodedLength(payload.getIconEmoji());
+        List<Attachment> attachments = payload.getAttachments();
+        if (attachments != null) {
+            for (Attachment attachment : attachments) {
+                length += attachmentLength(attachment);
+            }
+        }
+        return length;
+    }
+}
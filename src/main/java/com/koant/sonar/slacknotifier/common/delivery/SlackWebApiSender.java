@@ -0,0 +1,230 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.koant.sonar.slacknotifier.common.cache.ExpiringLruCache;
+import okhttp3.HttpUrl;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts notifications addressed to the Slack Web API with {@code chat.postMessage}, and remembers the timestamp of the
+ * message posted for each project and channel. Later notifications of the project update that message with
+ * {@code chat.update}, or are posted as replies in its thread, so that a busy project keeps a single message in the
+ * channel. Notifications to any other hook are handed to the webhook sender.
+ * <p>
+ * The message timestamps are kept in a bounded cache and expire a while after the message was posted, after which the
+ * next notification is posted as a new message. A message deleted in Slack is forgotten and posted again.
+ * Notifications of a project sent concurrently before its first message is remembered are each posted as a new message.
+ * </p>
+ */
+public class SlackWebApiSender implements WebhookSender {
+
+    private static final Logger LOG = Loggers.get(SlackWebApiSender.class);
+
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int BAD_GATEWAY = 502;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    /**
+     * Errors telling that the remembered message cannot be updated or replied to anymore
+     */
+    private static final Set<String> MESSAGE_GONE_ERRORS = new HashSet<>(Arrays.asList(
+            "message_not_found", "thread_not_found", "cant_update_message", "edit_window_closed"));
+    /**
+     * Errors reported with a 200 response that succeed when retried later
+     */
+    private static final Set<String> TRANSIENT_ERRORS = new HashSet<>(Arrays.asList(
+            "internal_error", "fatal_error", "service_unavailable", "request_timeout", "ratelimited"));
+
+    /**
+     * What a notification of a project whose message is remembered does
+     */
+    public enum Mode {
+        /**
+         * Replaces the content of the message
+         */
+        UPDATE,
+        /**
+         * Replies in the thread of the message
+         */
+        THREAD;
+
+        /**
+         * @return the mode of the setting value, {@link #UPDATE} if it is empty or unknown
+         */
+        public static Mode parse(String value) {
+            return value != null && THREAD.name().equalsIgnoreCase(value.trim()) ? THREAD : UPDATE;
+        }
+    }
+
+    private final WebhookSender webhooks;
+    private final OkHttpWebhookSender transport;
+    private final String apiUrl;
+    private final HttpUrl postMessageUrl;
+    private final HttpUrl updateUrl;
+    private final String token;
+    private final Mode mode;
+    private final ExpiringLruCache<String, PostedMessage> messages;
+    private final Gson gson = GsonFactory.createSnakeCase();
+
+    /**
+     * @param webhooks   sender of the notifications to incoming webhooks
+     * @param transport  connections to the Web API
+     * @param apiUrl     base URL of the Web API methods, e.g. {@code https://slack.com/api/}
+     * @param token      bot token, with the chat:write scope
+     * @param maxMessages number of project messages remembered, the least recently notified ones are forgotten first
+     * @param messageTtlMillis time after which a message is not updated or replied to anymore
+     */
+    public SlackWebApiSender(WebhookSender webhooks, OkHttpWebhookSender transport, String apiUrl, String token, Mode mode,
+                             int maxMessages, long messageTtlMillis) {
+        this.webhooks = webhooks;
+        this.transport = transport;
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl : apiUrl + "/";
+        HttpUrl base = HttpUrl.parse(this.apiUrl);
+        if (base == null) {
+            throw new IllegalArgumentException("Invalid Slack Web API URL: " + apiUrl);
+        }
+        this.postMessageUrl = base.resolve("chat.postMessage");
+        this.updateUrl = base.resolve("chat.update");
+        this.token = token;
+        this.mode = mode;
+        this.messages = new ExpiringLruCache<>(maxMessages, messageTtlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hook of the destinations posted to through the Web API
+     */
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Posts without remembering the message, as there is no project to remember it for
+     */
+    @Override
+    public DeliveryResult send(String hook, Payload payload) throws IOException {
+        if (!apiUrl.equals(hook)) {
+            return webhooks.send(hook, payload);
+        }
+        return call(postMessageUrl, message(payload, payload.getChannel())).result;
+    }
+
+    @Override
+    public DeliveryResult send(Notification notification) throws IOException {
+        if (!apiUrl.equals(notification.getHook())) {
+            return webhooks.send(notification.getHook(), notification.getPayload());
+        }
+        Payload payload = notification.getPayload();
+        String key = notification.getProjectKey() + '\n' + payload.getChannel();
+        PostedMessage posted = messages.get(key);
+        if (posted != null) {
+            JsonObject message = message(payload, posted.channelId);
+            if (mode == Mode.UPDATE) {
+                message.addProperty("ts", posted.ts);
+            } else {
+                message.addProperty("thread_ts", posted.ts);
+            }
+            ApiResponse response = call(mode == Mode.UPDATE ? updateUrl : postMessageUrl, message);
+            if (!MESSAGE_GONE_ERRORS.contains(response.error)) {
+                return response.result;
+            }
+            LOG.info("Slack message of [{}] in [{}] is gone ({}), posting a new one",
+                    notification.getProjectKey(), payload.getChannel(), response.error);
+            messages.remove(key);
+        }
+        ApiResponse response = call(postMessageUrl, message(payload, payload.getChannel()));
+        if (response.result.isSuccess() && response.ts != null) {
+            // Updates need the channel id, the payload may name the channel instead
+            messages.put(key, new PostedMessage(response.channel == null ? payload.getChannel() : response.channel, response.ts));
+        }
+        return response.result;
+    }
+
+    /**
+     * @return number of project messages remembered
+     */
+    int rememberedMessages() {
+        return messages.size();
+    }
+
+    private JsonObject message(Payload payload, String channel) {
+        JsonObject message = gson.toJsonTree(payload).getAsJsonObject();
+        message.addProperty("channel", channel);
+        return message;
+    }
+
+    private ApiResponse call(HttpUrl url, JsonObject message) throws IOException {
+        DeliveryResult http = transport.post(url, token, gson.toJson(message));
+        if (http.getCode() != OK) {
+            return new ApiResponse(http, null, null, null);
+        }
+        JsonElement parsed;
+        try {
+            parsed = new JsonParser().parse(http.getBody());
+        } catch (JsonParseException e) {
+            parsed = null;
+        }
+        if (parsed == null || !parsed.isJsonObject()) {
+            // Not an answer of the Web API, e.g. an error page of a proxy
+            return new ApiResponse(new DeliveryResult(BAD_GATEWAY, http.getBody(), DeliveryResult.NO_RETRY_AFTER), null, null, null);
+        }
+        JsonObject body = parsed.getAsJsonObject();
+        if (body.has("ok") && body.get("ok").getAsBoolean()) {
+            return new ApiResponse(http, null, string(body, "channel"), string(body, "ts"));
+        }
+        String error = string(body, "error");
+        // The Web API answers 200 with ok false: map the error to the status the retry policy expects
+        int code = TRANSIENT_ERRORS.contains(error) ? SERVICE_UNAVAILABLE : BAD_REQUEST;
+        LOG.debug("Slack Web API method [{}] failed: {}", url.encodedPath(), error);
+        return new ApiResponse(new DeliveryResult(code, http.getBody(), http.getRetryAfterMillis()), error, null, null);
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    /**
+     * Message remembered for a project and channel: the id of the channel and the timestamp identifying the message in it
+     */
+    private static final class PostedMessage {
+        private final String channelId;
+        private final String ts;
+
+        private PostedMessage(String channelId, String ts) {
+            this.channelId = channelId;
+            this.ts = ts;
+        }
+    }
+
+    private static final class ApiResponse {
+        private final DeliveryResult result;
+        private final String error;
+        private final String channel;
+        private final String ts;
+
+        private ApiResponse(DeliveryResult result, String error, String channel, String ts) {
+            this.result = result;
+            this.error = error;
+            this.channel = channel;
+            this.ts = ts;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens are handed out in reservation order: a caller finding the bucket empty
+ * reserves the next token and sleeps until it is due, so waiting callers are served first come, first served.
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+    private final long nanosPerPermit;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid rate [" + permitsPerSecond + "/s] or capacity [" + capacity + "]");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.nanosPerPermit = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Blocks until a token is available.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Hands out no tokens for the given time, e.g. after Slack answered 429 with a Retry-After.
+     */
+    public synchronized void pause(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+    }
+
+    /**
+     * @return nanoseconds the caller has to wait for the token it reserved
+     */
+    synchronized long reserve(long nowNanos) {
+        long start = nowNanos - pausedUntilNanos < 0 ? pausedUntilNanos : nowNanos;
+        if (start - lastRefillNanos > 0) {
+            tokens = Math.min(capacity, tokens + (start - lastRefillNanos) / (double) nanosPerPermit);
+            lastRefillNanos = start;
+        }
+        tokens -= 1;
+        if (tokens >= 0) {
+            return start - nowNanos;
+        }
+        // Negative tokens are reservations of future refills
+        return start - nowNanos + (long) (-tokens * nanosPerPermit);
+    }
+}
@@ -0,0 +1,24 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One token bucket per webhook URL, since Slack rate limits each incoming webhook separately.
+ */
+public class WebhookRateLimiters {
+
+    private final double permitsPerSecond;
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerSecond messages per second allowed per webhook. Bursts up to the same number of messages are allowed.
+     */
+    public WebhookRateLimiters(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public TokenBucket forHook(String hook) {
+        return buckets.computeIfAbsent(hook, h -> new TokenBucket(permitsPerSecond, Math.max(1, Math.ceil(permitsPerSecond))));
+    }
+}
@@ -0,0 +1,22 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+
+import java.io.IOException;
+
+/**
+ * Posts a payload to a Slack incoming webhook.
+ */
+@FunctionalInterface
+public interface WebhookSender {
+
+    DeliveryResult send(String hook, Payload payload) throws IOException;
+
+    /**
+     * Posts the payload of a notification to its hook. Senders that keep state per project, such as
+     * {@link SlackWebApiSender}, also use its project key.
+     */
+    default DeliveryResult send(Notification notification) throws IOException {
+        return send(notification.getHook(), notification.getPayload());
+    }
+}
@@ -0,0 +1,55 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point in time view of a {@link LatencyHistogram}, in milliseconds. Exposed through JMX as composite data.
+ */
+public class LatencySnapshot {
+    private final long count;
+    private final double meanMillis;
+    private final double p50Millis;
+    private final double p95Millis;
+    private final double p99Millis;
+    private final double maxMillis;
+
+    @ConstructorProperties({"count", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"})
+    public LatencySnapshot(long count, double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+        this.count = count;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.p99Millis = p99Millis;
+        this.maxMillis = maxMillis;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP95Millis() {
+        return p95Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1fms, p50=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms",
+                count, meanMillis, p50Millis, p95Millis, p99Millis, maxMillis);
+    }
+}
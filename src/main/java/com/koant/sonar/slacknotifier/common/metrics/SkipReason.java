@@ -0,0 +1,14 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+/**
+ * Why no notification was sent for an analysis
+ */
+public enum SkipReason {
+    PLUGIN_DISABLED,
+    NO_PROJECT_CONFIG,
+    BLANK_CHANNEL,
+    NO_DESTINATION,
+    QUALITY_GATE_OK,
+    STATUS_UNCHANGED,
+    DUPLICATE
+}
@@ -0,0 +1,237 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Metrics of the notification pipeline, published as a JMX MBean so they can be scraped from the Compute Engine JVM.
+ */
+public class SlackNotifierMetrics implements SlackNotifierMetricsMXBean {
+
+    private static final Logger LOG = Loggers.get(SlackNotifierMetrics.class);
+
+    public static final String OBJECT_NAME = "com.koant.sonar.slacknotifier:type=SlackNotifierMetrics";
+
+    private volatile LatencyHistogram payloadBuild = new LatencyHistogram();
+    private volatile LatencyHistogram configLookup = new LatencyHistogram();
+    private volatile LatencyHistogram webhook = new LatencyHistogram();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder payloadBytes = new LongAdder();
+    private final LongAccumulator largestPayload = new LongAccumulator(Math::max, 0L);
+    private final Map<SkipReason, LongAdder> skipped = new EnumMap<>(SkipReason.class);
+    private volatile IntSupplier backlog = () -> 0;
+    private volatile IntSupplier parked = () -> 0;
+    private volatile IntSupplier openCircuits = () -> 0;
+    private final LongAdder circuitsOpened = new LongAdder();
+    private final LongAdder digested = new LongAdder();
+    private final LongAdder shedDropped = new LongAdder();
+    private final LongAdder shedMerged = new LongAdder();
+
+    public SlackNotifierMetrics() {
+        for (SkipReason reason : SkipReason.values()) {
+            skipped.put(reason, new LongAdder());
+        }
+    }
+
+    public void recordPayloadBuild(long elapsedNanos) {
+        payloadBuild.record(elapsedNanos);
+    }
+
+    public void recordConfigLookup(long elapsedNanos) {
+        configLookup.record(elapsedNanos);
+    }
+
+    public void recordWebhookRoundTrip(long elapsedNanos) {
+        webhook.record(elapsedNanos);
+    }
+
+    public void recordPayloadSize(long bytes) {
+        payloadBytes.add(bytes);
+        largestPayload.accumulate(bytes);
+    }
+
+    public void delivered() {
+        delivered.increment();
+    }
+
+    public void failed() {
+        failed.increment();
+    }
+
+    public void dropped() {
+        dropped.increment();
+    }
+
+    public void skipped(SkipReason reason) {
+        skipped.get(reason).increment();
+    }
+
+    public void backlog(IntSupplier backlog) {
+        this.backlog = backlog;
+    }
+
+    public void parked(IntSupplier parked) {
+        this.parked = parked;
+    }
+
+    public void openCircuits(IntSupplier openCircuits) {
+        this.openCircuits = openCircuits;
+    }
+
+    public void circuitOpened() {
+        circuitsOpened.increment();
+    }
+
+    public void digested() {
+        digested.increment();
+    }
+
+    public void shedDropped() {
+        shedDropped.increment();
+    }
+
+    public void shedMerged() {
+        shedMerged.increment();
+    }
+
+    /**
+     * Registers this instance in the platform MBean server, replacing a previous registration
+     * (e.g. of a component instance that was not stopped).
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOG.warn("Failed to register metrics MBean [{}]: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOG.warn("Failed to unregister metrics MBean [{}]: {}", OBJECT_NAME, e.getMessage());
+        }
+    }
+
+    @Override
+    public LatencySnapshot getPayloadBuildLatency() {
+        return payloadBuild.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getConfigLookupLatency() {
+        return configLookup.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getWebhookLatency() {
+        return webhook.snapshot();
+    }
+
+    @Override
+    public long getPayloadBytesSent() {
+        return payloadBytes.sum();
+    }
+
+    @Override
+    public long getLargestPayloadBytes() {
+        return largestPayload.get();
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    @Override
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public Map<String, Long> getSkippedCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        skipped.forEach((reason, count) -> counts.put(reason.name(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public int getBacklog() {
+        return backlog.getAsInt();
+    }
+
+    @Override
+    public int getParked() {
+        return parked.getAsInt();
+    }
+
+    @Override
+    public int getOpenCircuits() {
+        return openCircuits.getAsInt();
+    }
+
+    @Override
+    public long getCircuitOpenedCount() {
+        return circuitsOpened.sum();
+    }
+
+    @Override
+    public long getDigestedCount() {
+        return digested.sum();
+    }
+
+    @Override
+    public long getShedDroppedCount() {
+        return shedDropped.sum();
+    }
+
+    @Override
+    public long getShedMergedCount() {
+        return shedMerged.sum();
+    }
+
+    @Override
+    public void reset() {
+        payloadBuild = new LatencyHistogram();
+        configLookup = new LatencyHistogram();
+        webhook = new LatencyHistogram();
+        delivered.reset();
+        failed.reset();
+        dropped.reset();
+        payloadBytes.reset();
+        largestPayload.reset();
+        skipped.values().forEach(LongAdder::reset);
+        circuitsOpened.reset();
+        digested.reset();
+        shedDropped.reset();
+        shedMerged.reset();
+    }
+}
@@ -0,0 +1,73 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link SlackNotifierMetrics}, registered as {@value SlackNotifierMetrics#OBJECT_NAME}
+ */
+public interface SlackNotifierMetricsMXBean {
+
+    LatencySnapshot getPayloadBuildLatency();
+
+    LatencySnapshot getConfigLookupLatency();
+
+    LatencySnapshot getWebhookLatency();
+
+    /**
+     * @return bytes of JSON posted to Slack, retries included
+     */
+    long getPayloadBytesSent();
+
+    long getLargestPayloadBytes();
+
+    long getDeliveredCount();
+
+    long getFailedCount();
+
+    long getDroppedCount();
+
+    /**
+     * @return number of analyses skipped, by {@link SkipReason} name
+     */
+    Map<String, Long> getSkippedCounts();
+
+    /**
+     * @return number of notifications waiting for delivery
+     */
+    int getBacklog();
+
+    /**
+     * @return number of notifications held back because the circuit of their webhook is open
+     */
+    int getParked();
+
+    /**
+     * @return number of webhooks whose circuit is open or half-open
+     */
+    int getOpenCircuits();
+
+    /**
+     * @return number of times a circuit opened, including failed probes
+     */
+    long getCircuitOpenedCount();
+
+    /**
+     * @return number of analyses added to digests instead of being notified one by one
+     */
+    long getDigestedCount();
+
+    /**
+     * @return number of passed quality gate notifications dropped by load shedding
+     */
+    long getShedDroppedCount();
+
+    /**
+     * @return number of passed quality gate notifications merged into others by load shedding
+     */
+    long getShedMergedCount();
+
+    /**
+     * Resets the histograms and counters
+     */
+    void reset();
+}
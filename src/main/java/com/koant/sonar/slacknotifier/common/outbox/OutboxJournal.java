@@ -0,0 +1,506 @@
+package com.koant.sonar.slacknotifier.common.outbox;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import com.koant.sonar.slacknotifier.common.delivery.Notification;
+import com.koant.sonar.slacknotifier.common.delivery.Priority;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only outbox of notifications that have not been delivered yet.
+ * <p>
+ * Every notification is appended as a record to the current segment file before it is queued for delivery,
+ * and a delivered record is appended once Slack accepted it. On startup the segments are replayed and
+ * the notifications without a delivered record are handed back for delivery.
+ * </p>
+ * <p>
+ * Appends wait until their record has been forced to disk. A single committer thread forces the segment for all records
+ * written since its previous force (group commit), so concurrent appends share one fsync.
+ * A segment is rolled when it grows past the maximum size. Mostly delivered segments are compacted by copying their few
+ * undelivered records into the current segment. Segments are deleted oldest first, once they and all the segments
+ * before them have no undelivered records: a segment may hold the delivered records of notifications appended in an
+ * older segment, which must not outlive them.
+ * </p>
+ * <p>
+ * Webhook URLs embed a secret token, so records do not hold the hook of their notification but a SHA-256 reference to
+ * it, resolved against the hooks of the current settings on replay. Where the file system supports it, the directory
+ * and segments are only readable by the owner of the process, as the messages themselves may be confidential.
+ * </p>
+ * <pre>
+ * record = length:int crc32:int type:byte id:long body:byte[length - 9]
+ * </pre>
+ */
+public class OutboxJournal implements Closeable {
+
+    private static final Logger LOG = Loggers.get(OutboxJournal.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 8L * 1024 * 1024;
+    static final String SEGMENT_PREFIX = "outbox-";
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte APPENDED = 1;
+    private static final byte DELIVERED = 2;
+    private static final int HEADER_BYTES = 8;
+    private static final int TYPE_AND_ID_BYTES = 9;
+    private static final String HOOK_REFERENCE_PREFIX = "sha256:";
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final Gson gson = GsonFactory.createSnakeCase();
+    private final FileAttribute<?>[] fileAttributes;
+    private final FileAttribute<?>[] directoryAttributes;
+    private final Map<Long, StoredNotification> replayed;
+    private final Thread committer;
+
+    // Everything below is guarded by lock
+    private final Object lock = new Object();
+    private final Map<Long, Long> segmentById = new HashMap<>();
+    /**
+     * Segments on disk, oldest first
+     */
+    private final SortedMap<Long, Integer> appendedBySegment = new TreeMap<>();
+    private final Map<Long, Integer> liveBySegment = new HashMap<>();
+    private FileChannel channel;
+    private long segment;
+    private long nextId;
+    private long writtenRecords;
+    private long committedRecords;
+    private long failedRecords;
+    private boolean closed;
+
+    private OutboxJournal(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        boolean posix = directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+        this.fileAttributes = posix
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        this.directoryAttributes = posix
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))}
+                : new FileAttribute<?>[0];
+        Files.createDirectories(directory, directoryAttributes);
+        this.replayed = replay();
+        openSegment(segment + 1);
+        this.committer = new Thread(this::commitLoop, "slack-notifier-outbox-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public static OutboxJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    public static OutboxJournal open(Path directory, long maxSegmentBytes) throws IOException {
+        return new OutboxJournal(directory, maxSegmentBytes);
+    }
+
+    /**
+     * Notifications to hooks that are no longer configured are marked delivered and left out, as they cannot be sent.
+     *
+     * @param hooks the hooks of the current settings, that the hook references of the records are resolved against
+     * @return the notifications that were not delivered before the journal was last closed, in append order
+     */
+    public List<Notification> undelivered(Collection<String> hooks) {
+        Map<String, String> hooksByReference = new HashMap<>();
+        for (String hook : hooks) {
+            hooksByReference.put(hookReference(hook), hook);
+        }
+        List<Notification> undelivered = new ArrayList<>(replayed.size());
+        List<Long> unresolved = new ArrayList<>();
+        for (Map.Entry<Long, StoredNotification> record : replayed.entrySet()) {
+            StoredNotification stored = record.getValue();
+            String hook = hooksByReference.get(stored.hookRef);
+            if (hook == null) {
+                unresolved.add(record.getKey());
+            } else {
+                undelivered.add(stored.toNotification(record.getKey(), hook));
+            }
+        }
+        if (!unresolved.isEmpty()) {
+            LOG.warn("Dropping [{}] undelivered notifications from outbox [{}], their webhook is no longer configured",
+                    unresolved.size(), directory);
+            try {
+                markDelivered(unresolved);
+            } catch (IOException e) {
+                LOG.error("Failed to mark notifications to unconfigured webhooks delivered", e);
+            }
+        }
+        return undelivered;
+    }
+
+    /**
+     * @return the reference to the hook kept in the records instead of the hook
+     */
+    static String hookReference(String hook) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform implements SHA-256
+            throw new IllegalStateException(e);
+        }
+        StringBuilder reference = new StringBuilder(HOOK_REFERENCE_PREFIX);
+        for (byte b : sha256.digest(hook.getBytes(StandardCharsets.UTF_8))) {
+            reference.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return reference.toString();
+    }
+
+    /**
+     * Durably records the notification. Blocks until the record has been forced to disk.
+     *
+     * @return the notification tagged with its outbox id
+     * @throws IOException if the record could not be written or forced
+     */
+    public Notification append(Notification notification) throws IOException {
+        byte[] body = gson.toJson(new StoredNotification(notification)).getBytes(StandardCharsets.UTF_8);
+        synchronized (lock) {
+            assertOpen();
+            long id = nextId++;
+            write(APPENDED, id, body);
+            track(id, segment);
+            long sequence = writtenRecords;
+            awaitCommit(sequence);
+            rollIfFull();
+            return new Notification(notification.getProjectKey(), notification.getHook(), notification.getPayload(),
+                    Collections.singletonList(id), notification.getPriority());
+        }
+    }
+
+    /**
+     * Records that the notifications were delivered. Does not wait for the records to reach the disk:
+     * a delivered record lost in a crash only causes the notification to be sent again.
+     *
+     * @throws IOException
+     */
+    public void markDelivered(Collection<Long> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            assertOpen();
+            for (Long id : ids) {
+                Long appendedIn = untrack(id);
+                if (appendedIn != null) {
+                    write(DELIVERED, id, new byte[0]);
+                }
+            }
+            deleteSettled();
+            lock.notifyAll();
+            rollIfFull();
+        }
+    }
+
+    /**
+     * @return number of appended notifications not yet marked delivered
+     */
+    public int size() {
+        synchronized (lock) {
+            return segmentById.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+            channel.force(false);
+            channel.close();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void assertOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Outbox journal in [" + directory + "] is closed");
+        }
+    }
+
+    private void write(byte type, long id, byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + TYPE_AND_ID_BYTES + body.length);
+        record.putInt(TYPE_AND_ID_BYTES + body.length);
+        record.putInt(0);
+        record.put(type);
+        record.putLong(id);
+        record.put(body);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, TYPE_AND_ID_BYTES + body.length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        writtenRecords++;
+    }
+
+    private void awaitCommit(long sequence) throws IOException {
+        lock.notifyAll();
+        boolean interrupted = false;
+        while (committedRecords < sequence && !closed) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failedRecords >= sequence) {
+            throw new IOException("Failed to force outbox journal segment [" + segmentFile(segment) + "] to disk");
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            FileChannel toForce;
+            long target;
+            synchronized (lock) {
+                while (!closed && committedRecords == writtenRecords) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                toForce = channel;
+                target = writtenRecords;
+            }
+            boolean failed = false;
+            try {
+                toForce.force(false);
+            } catch (ClosedChannelException e) {
+                // Rolled or closed meanwhile, which forces the segment before closing it
+            } catch (IOException e) {
+                LOG.error("Failed to force outbox journal to disk", e);
+                failed = true;
+            }
+            synchronized (lock) {
+                if (failed) {
+                    failedRecords = Math.max(failedRecords, target);
+                }
+                committedRecords = Math.max(committedRecords, target);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void rollIfFull() throws IOException {
+        if (channel.size() < maxSegmentBytes) {
+            return;
+        }
+        channel.force(false);
+        committedRecords = writtenRecords;
+        channel.close();
+        openSegment(segment + 1);
+        compact();
+    }
+
+    private void openSegment(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentFile(number), EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE),
+                fileAttributes);
+        appendedBySegment.put(number, 0);
+    }
+
+    /**
+     * Copies the undelivered records of mostly delivered segments into the current segment and deletes them.
+     */
+    private void compact() throws IOException {
+        for (Long old : new ArrayList<>(appendedBySegment.keySet())) {
+            if (old == segment) {
+                continue;
+            }
+            Integer appended = appendedBySegment.get(old);
+            int live = liveCount(old);
+            // Deleted meanwhile, or only kept for the delivered records it holds
+            if (appended == null || live == 0 || live * 2 > appended) {
+                continue;
+            }
+            for (Record record : read(segmentFile(old))) {
+                if (record.type == APPENDED && Long.valueOf(old).equals(segmentById.get(record.id))) {
+                    write(APPENDED, record.id, record.body);
+                    untrack(record.id);
+                    track(record.id, segment);
+                }
+            }
+            channel.force(false);
+            committedRecords = writtenRecords;
+            LOG.info("Compacted outbox segment [{}] with [{}] undelivered notifications", segmentFile(old), live);
+        }
+        deleteSettled();
+    }
+
+    /**
+     * Deletes the segments without undelivered records, from the oldest up to the first one still holding some.
+     * Delivered records are written after the record they settle, so a deleted segment never holds the delivered
+     * record of a notification in a segment still on disk.
+     */
+    private void deleteSettled() throws IOException {
+        Iterator<Long> oldestFirst = appendedBySegment.keySet().iterator();
+        while (oldestFirst.hasNext()) {
+            long number = oldestFirst.next();
+            if (number == segment || liveCount(number) > 0) {
+                return;
+            }
+            Files.deleteIfExists(segmentFile(number));
+            oldestFirst.remove();
+            liveBySegment.remove(number);
+        }
+    }
+
+    private void track(long id, long number) {
+        segmentById.put(id, number);
+        appendedBySegment.merge(number, 1, Integer::sum);
+        liveBySegment.merge(number, 1, Integer::sum);
+    }
+
+    private Long untrack(long id) {
+        Long number = segmentById.remove(id);
+        if (number != null) {
+            liveBySegment.merge(number, -1, Integer::sum);
+        }
+        return number;
+    }
+
+    private int liveCount(long number) {
+        return liveBySegment.getOrDefault(number, 0);
+    }
+
+    private Map<Long, StoredNotification> replay() throws IOException {
+        List<Long> segments = listSegments();
+        Map<Long, StoredNotification> pending = new LinkedHashMap<>();
+        long maxId = 0;
+        for (Long number : segments) {
+            appendedBySegment.put(number, 0);
+            for (Record record : read(segmentFile(number))) {
+                maxId = Math.max(maxId, record.id);
+                if (record.type == APPENDED) {
+                    StoredNotification stored = gson.fromJson(new String(record.body, StandardCharsets.UTF_8), StoredNotification.class);
+                    // A record copied by an interrupted compaction appears twice, the later copy wins
+                    pending.put(record.id, stored);
+                    untrack(record.id);
+                    track(record.id, number);
+                } else {
+                    pending.remove(record.id);
+                    untrack(record.id);
+                }
+            }
+        }
+        nextId = maxId + 1;
+        // Segments are numbered from 1, so none is current yet and the last one is deleted too if settled
+        deleteSettled();
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        if (!pending.isEmpty()) {
+            LOG.info("Replayed [{}] undelivered notifications from outbox [{}]", pending.size(), directory);
+        }
+        return pending;
+    }
+
+    /**
+     * Reads the valid records of a segment. Reading stops at the first torn or corrupted record,
+     * which can only be the tail of a segment that was being written when the process died.
+     */
+    private static List<Record> read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        List<Record> records = new ArrayList<>();
+        while (buffer.remaining() >= HEADER_BYTES + TYPE_AND_ID_BYTES) {
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length < TYPE_AND_ID_BYTES || length > buffer.remaining()) {
+                LOG.warn("Ignoring torn record at the end of outbox segment [{}]", file);
+                break;
+            }
+            CRC32 actual = new CRC32();
+            actual.update(buffer.array(), buffer.position(), length);
+            if ((int) actual.getValue() != crc) {
+                LOG.warn("Ignoring corrupted record at the end of outbox segment [{}]", file);
+                break;
+            }
+            byte type = buffer.get();
+            long id = buffer.getLong();
+            byte[] body = new byte[length - TYPE_AND_ID_BYTES];
+            buffer.get(body);
+            records.add(new Record(type, id, body));
+        }
+        return records;
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                    .map(n -> Long.parseLong(n.substring(SEGMENT_PREFIX.length(), n.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static class Record {
+        private final byte type;
+        private final long id;
+        private final byte[] body;
+
+        Record(byte type, long id, byte[] body) {
+            this.type = type;
+            this.id = id;
+            this.body = body;
+        }
+    }
+
+    /**
+     * The journaled form of a notification
+     */
+    private static class StoredNotification {
+        private String projectKey;
+        private String hookRef;
+        private Payload payload;
+        private Priority priority;
+
+        StoredNotification(Notification notification) {
+            this.projectKey = notification.getProjectKey();
+            this.hookRef = hookReference(notification.getHook());
+            this.payload = notification.getPayload();
+            this.priority = notification.getPriority();
+        }
+
+        Notification toNotification(long id, String hook) {
+            return new Notification(projectKey, hook, payload, Collections.singletonList(id), priority);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.koant.sonar.slacknotifier.common.status;
+
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Last quality gate status of every project, in an open-addressing hash table of 8 byte slots.
+ * <p>
+ * A slot packs a 61 bit hash of the project key with the status in the 3 low bits, so a project costs 16 bytes
+ * at the maximum load factor of one half, and a lookup probes a few adjacent slots. Project keys are not stored:
+ * two keys with the same 61 bit hash would share a status, which is negligible for any realistic number of projects.
+ * </p>
+ * <p>
+ * The table is memory-mapped from a file, so updates survive a restart of the process without any explicit write.
+ * When it grows past its load factor, a table twice as large is written to a temporary file and moved over the
+ * old one. Without a file the table is kept on the heap.
+ * </p>
+ * <pre>
+ * file = magic:int version:int capacity:int size:int slot:long[capacity]
+ * </pre>
+ */
+public class QualityGateStatusStore implements Closeable {
+
+    private static final Logger LOG = Loggers.get(QualityGateStatusStore.class);
+
+    static final int INITIAL_CAPACITY = 1024;
+    private static final int MAGIC = 0x434b5353;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 12;
+    private static final long STATUS_MASK = 0x7L;
+    private static final QualityGate.Status[] STATUSES = QualityGate.Status.values();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+
+    private QualityGateStatusStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the table stored in the file, creating it if it does not exist or is not a valid table
+     */
+    public static QualityGateStatusStore open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        QualityGateStatusStore store = new QualityGateStatusStore(file);
+        if (Files.exists(file) && store.load()) {
+            LOG.info("Loaded quality gate statuses of {} projects from [{}]", store.size, file);
+        } else {
+            store.table = store.create(file, INITIAL_CAPACITY);
+            store.capacity = INITIAL_CAPACITY;
+        }
+        return store;
+    }
+
+    /**
+     * @return a table kept on the heap, which is lost on restart
+     */
+    public static QualityGateStatusStore inMemory() {
+        QualityGateStatusStore store = new QualityGateStatusStore(null);
+        store.table = ByteBuffer.allocate(HEADER_BYTES + INITIAL_CAPACITY * 8);
+        store.capacity = INITIAL_CAPACITY;
+        writeHeader(store.table, INITIAL_CAPACITY);
+        return store;
+    }
+
+    public synchronized Optional<QualityGate.Status> get(String projectKey) {
+        long slot = table.getLong(slotOffset(find(keyBits(projectKey))));
+        return slot == 0 ? Optional.empty() : Optional.of(status(slot));
+    }
+
+    /**
+     * Records the status of the project
+     *
+     * @return the status recorded before, empty if none
+     */
+    public synchronized Optional<QualityGate.Status> put(String projectKey, QualityGate.Status status) throws IOException {
+        long keyBits = keyBits(projectKey);
+        int index = find(keyBits);
+        long previous = table.getLong(slotOffset(index));
+        if (previous == 0) {
+            if ((size + 1) * 2 > capacity) {
+                grow();
+                index = find(keyBits);
+            }
+            size++;
+            table.putInt(SIZE_OFFSET, size);
+        }
+        table.putLong(slotOffset(index), keyBits | (status.ordinal() + 1));
+        return previous == 0 ? Optional.empty() : Optional.of(status(previous));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    synchronized int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (table instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) table).force();
+        }
+    }
+
+    /**
+     * @return the index of the slot holding the key, or of the empty slot where it belongs
+     */
+    private int find(long keyBits) {
+        int mask = capacity - 1;
+        int index = (int) (keyBits >>> 3) & mask;
+        while (true) {
+            long slot = table.getLong(slotOffset(index));
+            if (slot == 0 || (slot & ~STATUS_MASK) == keyBits) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        ByteBuffer grown;
+        Path tmp = null;
+        if (file == null) {
+            grown = ByteBuffer.allocate(HEADER_BYTES + newCapacity * 8);
+            writeHeader(grown, newCapacity);
+        } else {
+            tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            grown = create(tmp, newCapacity);
+        }
+        int mask = newCapacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            long slot = table.getLong(slotOffset(i));
+            if (slot != 0) {
+                int index = (int) (slot >>> 3) & mask;
+                while (grown.getLong(slotOffset(index)) != 0) {
+                    index = (index + 1) & mask;
+                }
+                grown.putLong(slotOffset(index), slot);
+            }
+        }
+        grown.putInt(SIZE_OFFSET, size);
+        if (tmp != null) {
+            ((MappedByteBuffer) grown).force();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        table = grown;
+        capacity = newCapacity;
+    }
+
+    private boolean load() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            if (fileSize >= HEADER_BYTES) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                int storedCapacity = mapped.getInt(CAPACITY_OFFSET);
+                if (mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION && storedCapacity >= INITIAL_CAPACITY
+                        && Integer.bitCount(storedCapacity) == 1 && fileSize == HEADER_BYTES + storedCapacity * 8L) {
+                    table = mapped;
+                    capacity = storedCapacity;
+                    size = mapped.getInt(SIZE_OFFSET);
+                    return true;
+                }
+            }
+        }
+        LOG.warn("Quality gate status file [{}] is not valid, starting with no known statuses", file);
+        return false;
+    }
+
+    private MappedByteBuffer create(Path path, int slots) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Mapping beyond the end of the file extends it with zeroes, i.e. empty slots
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + slots * 8L);
+            writeHeader(mapped, slots);
+            return mapped;
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int slots) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY_OFFSET, slots);
+        buffer.putInt(SIZE_OFFSET, 0);
+    }
+
+    private static int slotOffset(int index) {
+        return HEADER_BYTES + index * 8;
+    }
+
+    private static QualityGate.Status status(long slot) {
+        return STATUSES[(int) (slot & STATUS_MASK) - 1];
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key, mixed so that its high bits are well distributed too, with the status bits cleared.
+     * Never 0, which marks an empty slot.
+     */
+    static long keyBits(String projectKey) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : projectKey.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        long keyBits = hash & ~STATUS_MASK;
+        return keyBits == 0 ? STATUS_MASK + 1 : keyBits;
+    }
+}
@@ -0,0 +1,100 @@
+package com.koant.sonar.slacknotifier.common.template;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A message template compiled into a render plan: the literal text between the placeholders, and for every
+ * placeholder the index of its variable. Rendering only appends strings, the template text is parsed once.
+ * <p>
+ * Placeholders are written <code>${name}</code>, <code>$$</code> renders a single <code>$</code>.
+ * A placeholder naming an unknown variable, or left unclosed, is rendered as written.
+ * </p>
+ */
+public final class MessageTemplate {
+
+    private static final Logger LOG = Loggers.get(MessageTemplate.class);
+
+    private final String text;
+    /**
+     * Literal segments, followed by the variable to render after them (or -1 after the last segment)
+     */
+    private final String[] literals;
+    private final int[] variables;
+
+    private MessageTemplate(String text, String[] literals, int[] variables) {
+        this.text = text;
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    /**
+     * @param variables names of the variables the template may refer to, in the order of the values given to render
+     */
+    public static MessageTemplate compile(String text, List<String> variables) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c != '$' || i + 1 >= text.length()) {
+                literal.append(c);
+                i++;
+            } else if (text.charAt(i + 1) == '$') {
+                literal.append('$');
+                i += 2;
+            } else if (text.charAt(i + 1) == '{') {
+                int end = text.indexOf('}', i + 2);
+                int variable = end < 0 ? -1 : variables.indexOf(text.substring(i + 2, end));
+                if (variable < 0) {
+                    LOG.warn("Unknown placeholder at position {} of message template [{}], known placeholders are {}", i, text, variables);
+                    end = end < 0 ? text.length() - 1 : end;
+                    literal.append(text, i, end + 1);
+                } else {
+                    literals.add(literal.toString());
+                    indexes.add(variable);
+                    literal.setLength(0);
+                }
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+        indexes.add(-1);
+        int[] variableIndexes = new int[indexes.size()];
+        for (int j = 0; j < variableIndexes.length; j++) {
+            variableIndexes[j] = indexes.get(j);
+        }
+        return new MessageTemplate(text, literals.toArray(new String[literals.size()]), variableIndexes);
+    }
+
+    /**
+     * @param values values of the variables the template was compiled with, null renders as empty
+     */
+    public String render(String... values) {
+        StringBuilder sb = new StringBuilder(text.length() + 64);
+        for (int i = 0; i < literals.length; i++) {
+            sb.append(literals[i]);
+            int variable = variables[i];
+            if (variable >= 0 && values[variable] != null) {
+                sb.append(values[variable]);
+            }
+        }
+        return sb.toString();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
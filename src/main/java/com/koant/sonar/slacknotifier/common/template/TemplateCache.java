@@ -0,0 +1,44 @@
+package com.koant.sonar.slacknotifier.common.template;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled templates by template text, for one set of variables. A template is compiled the first time its text is
+ * seen and reused until the setting holding it changes to another text.
+ */
+public class TemplateCache {
+
+    /**
+     * Only reached if templates are edited very often, the cache then starts over
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    private final List<String> variables;
+    private final Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+
+    public TemplateCache(List<String> variables) {
+        this.variables = Collections.unmodifiableList(variables);
+    }
+
+    public MessageTemplate get(String text) {
+        MessageTemplate template = templates.get(text);
+        if (template != null) {
+            return template;
+        }
+        if (templates.size() >= MAX_TEMPLATES) {
+            templates.clear();
+        }
+        return templates.computeIfAbsent(text, t -> MessageTemplate.compile(t, variables));
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    int size() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,175 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.delivery.Destination;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running summary of the analyses sent to one destination during a digest period.
+ * <p>
+ * Recording an analysis only overwrites the latest status of its project and bumps a few counters, so its cost does
+ * not depend on how many analyses were recorded before. Sorting is left to rendering, which happens once per period.
+ * </p>
+ */
+public class ChannelDigest {
+
+    private final Destination destination;
+    private final long startedAtMillis;
+    private final Map<String, ProjectStatus> projects = new HashMap<>();
+    private final Map<String, ConditionTally> conditions = new HashMap<>();
+    private int analyses;
+    private int failedAnalyses;
+    private boolean closed;
+
+    ChannelDigest(Destination destination, long startedAtMillis) {
+        this.destination = destination;
+        this.startedAtMillis = startedAtMillis;
+    }
+
+    /**
+     * @return false if the digest was already closed for rendering, in which case the analysis was not recorded
+     */
+    synchronized boolean record(PostProjectAnalysisTask.ProjectAnalysis analysis, String projectUrl) {
+        if (closed) {
+            return false;
+        }
+        analyses++;
+        QualityGate qualityGate = analysis.getQualityGate();
+        QualityGate.Status status = qualityGate == null ? null : qualityGate.getStatus();
+        if (status == QualityGate.Status.ERROR) {
+            failedAnalyses++;
+        }
+        projects.put(analysis.getProject().getKey(), new ProjectStatus(analysis.getProject().getName(), projectUrl, status));
+        if (qualityGate != null) {
+            for (QualityGate.Condition condition : qualityGate.getConditions()) {
+                QualityGate.EvaluationStatus evaluation = condition.getStatus();
+                if (evaluation == QualityGate.EvaluationStatus.ERROR || evaluation == QualityGate.EvaluationStatus.WARN) {
+                    conditions.computeIfAbsent(condition.getMetricKey(), ConditionTally::new).add(evaluation);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops recording, so that the digest can be rendered while new analyses go to the next one
+     */
+    synchronized void close() {
+        closed = true;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public long getStartedAtMillis() {
+        return startedAtMillis;
+    }
+
+    public synchronized int getAnalyses() {
+        return analyses;
+    }
+
+    /**
+     * @return number of analyses whose quality gate failed
+     */
+    public synchronized int getFailedAnalyses() {
+        return failedAnalyses;
+    }
+
+    public synchronized int getProjectCount() {
+        return projects.size();
+    }
+
+    /**
+     * @return the projects whose latest quality gate status is not OK, failed ones first, then by name
+     */
+    public synchronized List<ProjectStatus> getFailingProjects() {
+        List<ProjectStatus> failing = new ArrayList<>();
+        for (ProjectStatus project : projects.values()) {
+            if (project.getStatus() != null && project.getStatus() != QualityGate.Status.OK) {
+                failing.add(project);
+            }
+        }
+        failing.sort(Comparator.comparing((ProjectStatus p) -> p.getStatus() != QualityGate.Status.ERROR)
+                .thenComparing(ProjectStatus::getName, Comparator.nullsLast(Comparator.naturalOrder())));
+        return failing;
+    }
+
+    /**
+     * @return the metrics whose conditions failed most often, at most {@code limit}
+     */
+    public synchronized List<ConditionTally> getWorstConditions(int limit) {
+        List<ConditionTally> worst = new ArrayList<>(conditions.values());
+        worst.sort(Comparator.comparingInt(ConditionTally::getErrors).reversed()
+                .thenComparing(Comparator.comparingInt(ConditionTally::getWarnings).reversed())
+                .thenComparing(ConditionTally::getMetricKey));
+        return worst.size() > limit ? new ArrayList<>(worst.subList(0, limit)) : worst;
+    }
+
+    /**
+     * Latest quality gate status of a project, null if it has no quality gate
+     */
+    public static final class ProjectStatus {
+        private final String name;
+        private final String url;
+        private final QualityGate.Status status;
+
+        ProjectStatus(String name, String url, QualityGate.Status status) {
+            this.name = name;
+            this.url = url;
+            this.status = status;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public QualityGate.Status getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Number of failed and warning conditions on a metric
+     */
+    public static final class ConditionTally {
+        private final String metricKey;
+        private int errors;
+        private int warnings;
+
+        ConditionTally(String metricKey) {
+            this.metricKey = metricKey;
+        }
+
+        void add(QualityGate.EvaluationStatus status) {
+            if (status == QualityGate.EvaluationStatus.ERROR) {
+                errors++;
+            } else {
+                warnings++;
+            }
+        }
+
+        public String getMetricKey() {
+            return metricKey;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public int getWarnings() {
+            return warnings;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.delivery.Destination;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregates analyses into one {@link ChannelDigest} per destination, and hands the digests downstream once per period.
+ * <p>
+ * Periods are aligned on multiples of their length since the epoch, so hourly digests are sent on the hour and daily
+ * ones at midnight UTC. A digest is only started by the first analysis of a period, so nothing is sent for quiet periods.
+ * </p>
+ */
+public class DigestAggregator {
+
+    private static final Logger LOG = Loggers.get(DigestAggregator.class);
+
+    private final ConcurrentMap<Destination, ChannelDigest> digests = new ConcurrentHashMap<>();
+    private final Consumer<ChannelDigest> downstream;
+    private final long periodMillis;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler;
+
+    public DigestAggregator(Consumer<ChannelDigest> downstream, long periodMillis) {
+        this(downstream, periodMillis, System::currentTimeMillis, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slack-notifier-digest");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    /**
+     * @param scheduler null to only send digests on {@link #flush()}
+     */
+    DigestAggregator(Consumer<ChannelDigest> downstream, long periodMillis, LongSupplier clock, ScheduledExecutorService scheduler) {
+        this.downstream = downstream;
+        this.periodMillis = periodMillis;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        if (scheduler != null) {
+            long untilNextPeriod = periodMillis - Math.floorMod(clock.getAsLong(), periodMillis);
+            scheduler.scheduleAtFixedRate(this::flush, untilNextPeriod, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void add(Destination destination, PostProjectAnalysisTask.ProjectAnalysis analysis, String projectUrl) {
+        while (true) {
+            ChannelDigest digest = digests.computeIfAbsent(destination, d -> new ChannelDigest(d, clock.getAsLong()));
+            if (digest.record(analysis, projectUrl)) {
+                return;
+            }
+            // Closed by a concurrent flush, record into the digest of the next period
+            digests.remove(destination, digest);
+        }
+    }
+
+    /**
+     * Hands the digests of the current period downstream and starts a new period
+     */
+    public void flush() {
+        List<Destination> destinations = new ArrayList<>(digests.keySet());
+        for (Destination destination : destinations) {
+            ChannelDigest digest = digests.remove(destination);
+            if (digest == null) {
+                continue;
+            }
+            digest.close();
+            LOG.info("Sending digest of [{}] analyses to [{}]", digest.getAnalyses(), destination);
+            try {
+                downstream.accept(digest);
+            } catch (RuntimeException e) {
+                // Keep the scheduler running for the next period
+                LOG.error("Failed to send digest to [" + destination + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the scheduler and sends the digests of the current period immediately, so they are not lost
+     */
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush();
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    /**
+     * @return number of destinations with a digest in progress
+     */
+    int size() {
+        return digests.size();
+    }
+}
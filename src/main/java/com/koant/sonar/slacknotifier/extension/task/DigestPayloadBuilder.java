@@ -0,0 +1,143 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.i18n.I18n;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders a {@link ChannelDigest} as one Slack message: a summary line, the projects whose quality gate is
+ * currently not passing, and the metrics whose conditions failed most often.
+ */
+public class DigestPayloadBuilder {
+
+    static final int MAX_LISTED_PROJECTS = 20;
+    static final int MAX_LISTED_CONDITIONS = 5;
+
+    private final ChannelDigest digest;
+    private I18n i18n;
+    private Locale locale = Locale.ENGLISH;
+    private MetricNameCache metricNames;
+    private String slackUser;
+    private long periodMillis;
+
+    private DigestPayloadBuilder(ChannelDigest digest) {
+        this.digest = digest;
+    }
+
+    public static DigestPayloadBuilder of(ChannelDigest digest) {
+        return new DigestPayloadBuilder(digest);
+    }
+
+    public DigestPayloadBuilder i18n(I18n i18n) {
+        this.i18n = i18n;
+        return this;
+    }
+
+    /**
+     * Locale of metric names, English by default
+     */
+    public DigestPayloadBuilder locale(Locale locale) {
+        this.locale = locale;
+        return this;
+    }
+
+    public DigestPayloadBuilder metricNames(MetricNameCache metricNames) {
+        this.metricNames = metricNames;
+        return this;
+    }
+
+    public DigestPayloadBuilder username(String slackUser) {
+        this.slackUser = slackUser;
+        return this;
+    }
+
+    public DigestPayloadBuilder period(long periodMillis) {
+        this.periodMillis = periodMillis;
+        return this;
+    }
+
+    public Payload build() {
+        List<ChannelDigest.ProjectStatus> failing = digest.getFailingProjects();
+        String text = String.format(Locale.ENGLISH, "Quality gate digest of the last %s: %d %s of %d %s, %d failed. %s",
+                describePeriod(periodMillis),
+                digest.getAnalyses(), digest.getAnalyses() == 1 ? "analysis" : "analyses",
+                digest.getProjectCount(), digest.getProjectCount() == 1 ? "project" : "projects",
+                digest.getFailedAnalyses(),
+                failing.isEmpty() ? "All quality gates pass." : failing.size() + " not passing now:");
+
+        List<Attachment> attachments = new ArrayList<>();
+        if (!failing.isEmpty()) {
+            attachments.add(Attachment.builder()
+                    .text(projectLines(failing))
+                    .color(failing.get(0).getStatus() == QualityGate.Status.ERROR ? "danger" : "warning")
+                    .build());
+        }
+        List<ChannelDigest.ConditionTally> worst = digest.getWorstConditions(MAX_LISTED_CONDITIONS);
+        if (!worst.isEmpty()) {
+            List<Field> fields = new ArrayList<>(worst.size());
+            for (ChannelDigest.ConditionTally tally : worst) {
+                fields.add(Field.builder()
+                        .title(metricName(tally.getMetricKey()))
+                        .value(String.format(Locale.ENGLISH, "failed %d, warned %d", tally.getErrors(), tally.getWarnings()))
+                        .valueShortEnough(true)
+                        .build());
+            }
+            attachments.add(Attachment.builder()
+                    .title("Most failed conditions")
+                    .fields(fields)
+                    .build());
+        }
+
+        return Payload.builder()
+                .text(text)
+                .channel(digest.getDestination().getChannel())
+                .username(slackUser)
+                .attachments(attachments.isEmpty() ? null : attachments)
+                .build();
+    }
+
+    private static String projectLines(List<ChannelDigest.ProjectStatus> failing) {
+        StringBuilder sb = new StringBuilder();
+        int listed = Math.min(failing.size(), MAX_LISTED_PROJECTS);
+        for (int i = 0; i < listed; i++) {
+            ChannelDigest.ProjectStatus project = failing.get(i);
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append('<').append(project.getUrl()).append('|').append(project.getName()).append(">: ").append(project.getStatus());
+        }
+        if (failing.size() > listed) {
+            sb.append("\nand ").append(failing.size() - listed).append(" more");
+        }
+        return sb.toString();
+    }
+
+    private String metricName(String metricKey) {
+        if (metricNames == null) {
+            metricNames = new MetricNameCache();
+        }
+        return metricNames.name(i18n, locale, metricKey);
+    }
+
+    static String describePeriod(long periodMillis) {
+        long minutes = TimeUnit.MILLISECONDS.toMinutes(periodMillis);
+        if (minutes > 0 && minutes % TimeUnit.DAYS.toMinutes(1) == 0) {
+            return plural(minutes / TimeUnit.DAYS.toMinutes(1), "day");
+        }
+        if (minutes > 0 && minutes % 60 == 0) {
+            return plural(minutes / 60, "hour");
+        }
+        return plural(minutes, "minute");
+    }
+
+    private static String plural(long count, String unit) {
+        return count == 1 ? unit : count + " " + unit + "s";
+    }
+}
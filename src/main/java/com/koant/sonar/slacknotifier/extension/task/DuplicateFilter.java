@@ -0,0 +1,108 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.cache.ExpiringLruCache;
+import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Suppresses a notification whose content is the same as the one last sent for the project, when that one
+ * was sent less than the TTL ago.
+ * <p>
+ * The content is reduced to a 64 bit fingerprint of the project key, the destination channel, the quality gate status
+ * and the status and value of the conditions included in the message, so only a key and a long are kept per project.
+ * </p>
+ * <p>
+ * The content is remembered when the notification is queued, so that analyses repeated before it is delivered are
+ * suppressed too, and forgotten if the notification turns out not to be delivered.
+ * </p>
+ */
+public class DuplicateFilter {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ExpiringLruCache<String, Long> lastSent;
+
+    public DuplicateFilter(int maxEntries, long ttlSeconds) {
+        this(maxEntries, ttlSeconds, System::nanoTime);
+    }
+
+    DuplicateFilter(int maxEntries, long ttlSeconds, LongSupplier clock) {
+        this.lastSent = new ExpiringLruCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS, clock);
+    }
+
+    /**
+     * @return true if the same content was sent to the same channel within the TTL; otherwise the content
+     * is remembered as the last sent one and false is returned
+     */
+    public boolean isRepeat(PostProjectAnalysisTask.ProjectAnalysis analysis, ProjectConfig projectConfig) {
+        String key = analysis.getProject().getKey() + '\n' + projectConfig.getSlackChannel();
+        long fingerprint = fingerprint(analysis.getQualityGate(), projectConfig.isQgFailOnly());
+        synchronized (lastSent) {
+            Long previous = lastSent.get(key);
+            if (previous != null && previous == fingerprint) {
+                return true;
+            }
+            lastSent.put(key, fingerprint);
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the content last sent for the project to any channel, because a notification of the project could not
+     * be delivered. The next notification of the project is sent even if it has the same content.
+     */
+    public void forget(String projectKey) {
+        String prefix = projectKey + '\n';
+        lastSent.removeIf(key -> key.startsWith(prefix));
+    }
+
+    public long getTtlSeconds() {
+        return lastSent.getTtl(TimeUnit.SECONDS);
+    }
+
+    public int getMaxEntries() {
+        return lastSent.getMaxEntries();
+    }
+
+    int size() {
+        return lastSent.size();
+    }
+
+    /**
+     * 64 bit FNV-1a hash over the parts of the quality gate that end up in the message
+     */
+    static long fingerprint(QualityGate qualityGate, boolean qgFailOnly) {
+        long hash = FNV_OFFSET_BASIS;
+        if (qualityGate == null) {
+            return hash;
+        }
+        hash = hash(hash, qualityGate.getStatus().name());
+        for (QualityGate.Condition condition : qualityGate.getConditions()) {
+            if (qgFailOnly && (QualityGate.EvaluationStatus.OK.equals(condition.getStatus())
+                    || QualityGate.EvaluationStatus.NO_VALUE.equals(condition.getStatus()))) {
+                continue;
+            }
+            hash = hash(hash, condition.getMetricKey());
+            hash = hash(hash, condition.getStatus().name());
+            if (!QualityGate.EvaluationStatus.NO_VALUE.equals(condition.getStatus())) {
+                hash = hash(hash, condition.getValue());
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        // Separator, so that moving characters between values changes the hash
+        return (hash ^ (value == null ? 0x1_0000 : 0x1_0001)) * FNV_PRIME;
+    }
+}
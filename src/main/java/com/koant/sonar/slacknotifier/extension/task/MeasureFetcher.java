@@ -0,0 +1,264 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.koant.sonar.slacknotifier.common.cache.ExpiringLruCache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches measures of analyzed projects from the SonarQube web API, to show headline measures such as coverage or
+ * bugs that no quality gate condition covers.
+ * <p>
+ * All the metrics of an analysis are fetched with a single {@code api/measures/component} request, whose result is
+ * cached per analysis, so that every message and destination of the analysis shares it. Results are bounded by a time
+ * budget: a lookup that is slow or fails yields no measures rather than holding back the notification.
+ * </p>
+ */
+public class MeasureFetcher implements Closeable {
+
+    private static final Logger LOG = Loggers.get(MeasureFetcher.class);
+
+    private static final int NOT_FOUND = 404;
+    private static final int MAX_CACHED_ANALYSES = 1_000;
+    private static final long CACHE_TTL_MINUTES = 10;
+
+    private final OkHttpClient client;
+    private final String serverUrl;
+    private final HttpUrl endpoint;
+    private final String token;
+    private final List<String> metricKeys;
+    private final ExpiringLruCache<String, CompletableFuture<List<Measure>>> analyses =
+            new ExpiringLruCache<>(MAX_CACHED_ANALYSES, CACHE_TTL_MINUTES, TimeUnit.MINUTES);
+    private final ScheduledExecutorService budgets;
+
+    /**
+     * @param serverUrl  base URL of the SonarQube server, ending with a slash
+     * @param token      token of a user allowed to browse the projects, null to fetch anonymously
+     * @param metricKeys keys of the metrics to fetch, in the order they are shown
+     */
+    public MeasureFetcher(String serverUrl, String token, List<String> metricKeys, long connectTimeoutMillis, long readTimeoutMillis) {
+        HttpUrl base = HttpUrl.parse(serverUrl);
+        if (base == null) {
+            throw new IllegalArgumentException("Invalid SonarQube server URL: " + serverUrl);
+        }
+        this.serverUrl = serverUrl;
+        this.endpoint = base.resolve("api/measures/component");
+        this.token = token;
+        this.metricKeys = Collections.unmodifiableList(new ArrayList<>(metricKeys));
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.budgets = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "slack-notifier-measures");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return true if this fetcher was created for the given settings
+     */
+    boolean isConfiguredFor(String serverUrl, String token, List<String> metricKeys) {
+        return this.serverUrl.equals(serverUrl)
+                && Objects.equals(this.token, token)
+                && this.metricKeys.equals(metricKeys);
+    }
+
+    /**
+     * @param analysisId id of the Compute Engine task of the analysis
+     * @return the measures of the project, completed within the budget: empty if they could not be fetched in time
+     */
+    public CompletableFuture<List<Measure>> fetch(String projectKey, String analysisId, long budgetMillis) {
+        CompletableFuture<List<Measure>> lookup = lookup(projectKey, analysisId);
+        if (lookup.isDone()) {
+            return lookup.exceptionally(e -> Collections.emptyList());
+        }
+        CompletableFuture<List<Measure>> bounded = new CompletableFuture<>();
+        lookup.whenComplete((measures, e) -> bounded.complete(e == null ? measures : Collections.emptyList()));
+        try {
+            budgets.schedule(() -> {
+                if (bounded.complete(Collections.emptyList())) {
+                    LOG.info("Measures of project [{}] not fetched within [{}] ms, notifying without them", projectKey, budgetMillis);
+                }
+            }, budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed because the settings changed, the lookup is not waited for
+            LOG.info("Measure fetcher closed, notifying project [{}] without measures", projectKey);
+            bounded.complete(Collections.emptyList());
+        }
+        return bounded;
+    }
+
+    private CompletableFuture<List<Measure>> lookup(String projectKey, String analysisId) {
+        String key = projectKey + '@' + analysisId;
+        CompletableFuture<List<Measure>> lookup;
+        synchronized (analyses) {
+            lookup = analyses.get(key);
+            if (lookup != null) {
+                return lookup;
+            }
+            lookup = new CompletableFuture<>();
+            analyses.put(key, lookup);
+        }
+        Request.Builder request = new Request.Builder()
+                .url(endpoint.newBuilder()
+                        .addQueryParameter("componentKey", projectKey)
+                        .addQueryParameter("metricKeys", String.join(",", metricKeys))
+                        .addQueryParameter("additionalFields", "metrics")
+                        .build());
+        if (token != null) {
+            // SonarQube tokens are sent as the login of basic authentication, without password
+            request.header("Authorization", Credentials.basic(token, ""));
+        }
+        CompletableFuture<List<Measure>> result = lookup;
+        try {
+            enqueue(request.build(), projectKey, result);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return lookup;
+    }
+
+    private void enqueue(Request request, String projectKey, CompletableFuture<List<Measure>> result) {
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                LOG.warn("Failed to fetch measures of project [{}]: {}", projectKey, e.getMessage());
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try (Response r = response) {
+                    if (r.code() == NOT_FOUND) {
+                        result.complete(Collections.emptyList());
+                    } else if (!r.isSuccessful()) {
+                        LOG.warn("Failed to fetch measures of project [{}], SonarQube answered [{}]", projectKey, r.code());
+                        result.completeExceptionally(new IOException("HTTP " + r.code()));
+                    } else {
+                        result.complete(parse(r.body().string()));
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to read measures of project [{}]: {}", projectKey, e.getMessage());
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Measures without value, such as the ones only computed on the leak period, are left out
+     *
+     * @return the measures in the order of the metric keys
+     */
+    List<Measure> parse(String body) {
+        JsonElement parsed;
+        try {
+            parsed = new JsonParser().parse(body);
+        } catch (JsonParseException e) {
+            throw new IllegalStateException("Unexpected measures response", e);
+        }
+        if (!parsed.isJsonObject() || !parsed.getAsJsonObject().has("component")) {
+            throw new IllegalStateException("Unexpected measures response");
+        }
+        JsonObject root = parsed.getAsJsonObject();
+        Map<String, String> types = new HashMap<>();
+        for (JsonElement metric : array(root, "metrics")) {
+            types.put(string(metric.getAsJsonObject(), "key"), string(metric.getAsJsonObject(), "type"));
+        }
+        Map<String, String> values = new HashMap<>();
+        for (JsonElement measure : array(root.getAsJsonObject("component"), "measures")) {
+            String value = string(measure.getAsJsonObject(), "value");
+            if (value != null) {
+                values.put(string(measure.getAsJsonObject(), "metric"), value);
+            }
+        }
+        List<Measure> measures = new ArrayList<>(values.size());
+        for (String metricKey : metricKeys) {
+            String value = values.get(metricKey);
+            if (value != null) {
+                measures.add(new Measure(metricKey, value, types.get(metricKey)));
+            }
+        }
+        return measures;
+    }
+
+    private static JsonArray array(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element == null || !element.isJsonArray() ? new JsonArray() : element.getAsJsonArray();
+    }
+
+    private static String string(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    @Override
+    public void close() {
+        // Budgets already scheduled still run, so that pending notifications are sent
+        budgets.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * Value of a metric for a project, as given by the web API
+     */
+    public static final class Measure {
+        private final String metricKey;
+        private final String value;
+        private final String type;
+
+        public Measure(String metricKey, String value, String type) {
+            this.metricKey = metricKey;
+            this.value = value;
+            this.type = type;
+        }
+
+        public String getMetricKey() {
+            return metricKey;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the metric type, e.g. PERCENT, INT or RATING, null if unknown
+         */
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return metricKey + "=" + value;
+        }
+    }
+}
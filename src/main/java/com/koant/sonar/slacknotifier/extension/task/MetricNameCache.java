@@ -0,0 +1,39 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import org.sonar.api.i18n.I18n;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Display names of metrics by locale, shared by all payloads built by the plugin.
+ * <p>
+ * The names come from the message bundles of the installed plugins and language packs, which SonarQube only
+ * reloads by creating a new I18n instance. The cache is therefore emptied whenever it is asked for a name with
+ * a different I18n instance than the one it was filled from.
+ * </p>
+ */
+public class MetricNameCache {
+
+    private final Map<Locale, Map<String, String>> namesByLocale = new ConcurrentHashMap<>();
+    private volatile I18n source;
+
+    public String name(I18n i18n, Locale locale, String metricKey) {
+        if (i18n != source) {
+            synchronized (this) {
+                if (i18n != source) {
+                    namesByLocale.clear();
+                    source = i18n;
+                }
+            }
+        }
+        return namesByLocale
+                .computeIfAbsent(locale, l -> new ConcurrentHashMap<>())
+                .computeIfAbsent(metricKey, key -> i18n.message(locale, "metric." + key + ".name", key));
+    }
+
+    int size() {
+        return namesByLocale.values().stream().mapToInt(Map::size).sum();
+    }
+}
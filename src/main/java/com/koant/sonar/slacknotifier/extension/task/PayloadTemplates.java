@@ -0,0 +1,34 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.template.MessageTemplate;
+import com.koant.sonar.slacknotifier.common.template.TemplateCache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The templates of notification texts and of condition field titles, with the placeholders they may use.
+ * One instance is shared by all payloads built by the plugin, so each template is compiled only once.
+ */
+public class PayloadTemplates {
+
+    public static final List<String> MESSAGE_VARIABLES = Arrays.asList(
+            "project.name", "project.key", "project.url", "qualityGate.name", "qualityGate.status");
+    public static final List<String> CONDITION_VARIABLES = Arrays.asList(
+            "condition.metric", "condition.metricKey", "condition.status", "condition.value", "condition.warning", "condition.error");
+
+    public static final String DEFAULT_MESSAGE = "Project [${project.name}] analyzed. See ${project.url}. Quality gate status: ${qualityGate.status}";
+    static final String DEFAULT_MESSAGE_WITHOUT_QUALITY_GATE = "Project [${project.name}] analyzed. See ${project.url}.";
+    public static final String DEFAULT_CONDITION = "${condition.metric}: ${condition.status}";
+
+    private final TemplateCache messageTemplates = new TemplateCache(MESSAGE_VARIABLES);
+    private final TemplateCache conditionTemplates = new TemplateCache(CONDITION_VARIABLES);
+
+    public MessageTemplate message(String text) {
+        return messageTemplates.get(text);
+    }
+
+    public MessageTemplate condition(String text) {
+        return conditionTemplates.get(text);
+    }
+}
@@ -4,6 +4,8 @@ import com.github.seratch.jslack.api.model.Attachment;
 import com.github.seratch.jslack.api.model.Field;
 import com.github.seratch.jslack.api.webhook.Payload;
 import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import com.koant.sonar.slacknotifier.common.delivery.SlackLimits;
+import com.koant.sonar.slacknotifier.common.template.MessageTemplate;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
 import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.i18n.I18n;
@@ -12,7 +14,7 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import java.text.DecimalFormat;
-import java.text.NumberFormat;
+import java.text.DecimalFormatSymbols;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -27,8 +29,15 @@ public class ProjectAnalysisPayloadBuilder {
     private static final String SLACK_GOOD_COLOUR = "good";
     private static final String SLACK_WARNING_COLOUR = "warning";
     private static final String SLACK_DANGER_COLOUR = "danger";
+    private static final String MEASURES_TITLE = "Measures";
+    private static final String RATINGS = "ABCDE";
     private static final Map<QualityGate.Status, String> statusToColor = new EnumMap<>(QualityGate.Status.class);
 
+    /**
+     * DecimalFormat is not thread-safe, so every thread reuses its own instance per locale
+     */
+    private static final ThreadLocal<Map<Locale, DecimalFormat>> percentageFormats = ThreadLocal.withInitial(HashMap::new);
+
     static {
         statusToColor.put(QualityGate.Status.OK, SLACK_GOOD_COLOUR);
         statusToColor.put(QualityGate.Status.WARN, SLACK_WARNING_COLOUR);
@@ -40,14 +49,17 @@ public class ProjectAnalysisPayloadBuilder {
     private ProjectConfig projectConfig;
     private String slackUser;
     private String projectUrl;
-
-    private DecimalFormat percentageFormat;
+    private Locale locale = Locale.ENGLISH;
+    private MetricNameCache metricNames;
+    private PayloadTemplates templates;
+    private String messageTemplate;
+    private String conditionTemplate;
+    private MessageTemplate conditionTitle;
+    private boolean customConditionTitle;
+    private List<MeasureFetcher.Measure> measures = Collections.emptyList();
 
     private ProjectAnalysisPayloadBuilder(PostProjectAnalysisTask.ProjectAnalysis analysis) {
         this.analysis = analysis;
-        // Format percentages as 25.01 instead of 25.0066666666666667 etc.
-        this.percentageFormat = new DecimalFormat();
-        this.percentageFormat.setMaximumFractionDigits(2);
     }
 
     public static ProjectAnalysisPayloadBuilder of(PostProjectAnalysisTask.ProjectAnalysis analysis) {
@@ -64,6 +76,54 @@ public class ProjectAnalysisPayloadBuilder {
         return this;
     }
 
+    /**
+     * Locale of metric names and numbers, English by default
+     */
+    public ProjectAnalysisPayloadBuilder locale(Locale locale) {
+        this.locale = locale;
+        return this;
+    }
+
+    /**
+     * Cache to look up metric names in, a cache private to this builder is used if not set
+     */
+    public ProjectAnalysisPayloadBuilder metricNames(MetricNameCache metricNames) {
+        this.metricNames = metricNames;
+        return this;
+    }
+
+    /**
+     * Compiled templates to reuse, templates private to this builder are used if not set
+     */
+    public ProjectAnalysisPayloadBuilder templates(PayloadTemplates templates) {
+        this.templates = templates;
+        return this;
+    }
+
+    /**
+     * Template of the notification text, unless the project config has its own. The default text is used if null.
+     */
+    public ProjectAnalysisPayloadBuilder messageTemplate(String messageTemplate) {
+        this.messageTemplate = messageTemplate;
+        return this;
+    }
+
+    /**
+     * Template of the condition field titles, unless the project config has its own. The default title is used if null.
+     */
+    public ProjectAnalysisPayloadBuilder conditionTemplate(String conditionTemplate) {
+        this.conditionTemplate = conditionTemplate;
+        return this;
+    }
+
+    /**
+     * Measures of the project shown in an attachment of their own, none by default
+     */
+    public ProjectAnalysisPayloadBuilder measures(List<MeasureFetcher.Measure> measures) {
+        this.measures = measures;
+        return this;
+    }
+
     public ProjectAnalysisPayloadBuilder username(String slackUser) {
         this.slackUser = slackUser;
         return this;
@@ -74,25 +134,237 @@ public class ProjectAnalysisPayloadBuilder {
         return this;
     }
 
+    /**
+     * @return the notification as a single message with all the conditions, regardless of its size
+     * @see #buildMessages()
+     */
     public Payload build() {
+        prepare();
+        QualityGate qualityGate = analysis.getQualityGate();
+        String shortText = messageText(qualityGate);
+        List<Attachment> attachments = qualityGate == null ? new ArrayList<>() : buildConditionsAttachment(qualityGate, projectConfig.isQgFailOnly());
+        List<Field> measureFields = measureFields();
+        if (!measureFields.isEmpty()) {
+            attachments.add(measuresAttachment(measureFields));
+        }
+
+        return Payload.builder()
+                .channel(projectConfig.getSlackChannel())
+                .username(slackUser)
+                .text(shortText)
+                .attachments(attachments.isEmpty() ? null : attachments)
+                .build();
+    }
+
+    /**
+     * Builds the notification as messages that fit within {@link SlackLimits}, keeping a running total of their size
+     * as the condition fields are added.
+     * <p>
+     * If all the conditions do not fit in one message, the passing ones are collapsed into a summary field.
+     * If the others still do not fit, they are split over several messages, the first one carrying the notification text.
+     * Over-long texts and field strings are cut short. The measures only go with the first message.
+     * </p>
+     */
+    public List<Payload> buildMessages() {
+        prepare();
+        QualityGate qualityGate = analysis.getQualityGate();
+        String text = SlackLimits.truncate(messageText(qualityGate), SlackLimits.MAX_TEXT_BYTES);
+        List<Field> measureFields = measureFields();
+        if (qualityGate == null) {
+            return Collections.singletonList(message(text, null, null, measureFields));
+        }
+        prepareConditionTitle();
+        String color = statusToColor.get(qualityGate.getStatus());
+        boolean qgFailOnly = projectConfig.isQgFailOnly();
+
+        List<Field> all = new ArrayList<>();
+        List<Field> notPassing = new ArrayList<>();
+        int allLength = 0;
+        int ok = 0;
+        int noValue = 0;
+        for (QualityGate.Condition condition : qualityGate.getConditions()) {
+            boolean passing = !notOkNorNoValue(condition);
+            if (qgFailOnly && passing) {
+                continue;
+            }
+            Field field = truncate(translate(condition));
+            all.add(field);
+            allLength += SlackLimits.fieldLength(field);
+            if (!passing) {
+                notPassing.add(field);
+            } else if (QualityGate.EvaluationStatus.OK.equals(condition.getStatus())) {
+                ok++;
+            } else {
+                noValue++;
+            }
+        }
+        int measuresLength = measuresLength(measureFields);
+        if (messageLength(text, color) + measuresLength + allLength <= SlackLimits.MAX_PAYLOAD_BYTES) {
+            return Collections.singletonList(message(text, color, all, measureFields));
+        }
+        List<Field> collapsed = new ArrayList<>(notPassing);
+        if (ok + noValue > 0) {
+            collapsed.add(passedConditionsSummary(ok, noValue));
+        }
+        return split(text, color, collapsed, measureFields, measuresLength);
+    }
+
+    private List<Payload> split(String text, String color, List<Field> fields, List<Field> measureFields, int measuresLength) {
+        String continuedText = SlackLimits.truncate(
+                analysis.getProject().getName() + " quality gate conditions, continued", SlackLimits.MAX_TEXT_BYTES);
+        List<Payload> messages = new ArrayList<>();
+        String chunkText = text;
+        List<Field> chunkMeasures = measureFields;
+        int budget = SlackLimits.MAX_PAYLOAD_BYTES - messageLength(chunkText, color) - measuresLength;
+        List<Field> chunk = new ArrayList<>();
+        for (Field field : fields) {
+            int length = SlackLimits.fieldLength(field);
+            if (length > budget && !chunk.isEmpty()) {
+                messages.add(message(chunkText, color, chunk, chunkMeasures));
+                chunk = new ArrayList<>();
+                chunkText = continuedText;
+                chunkMeasures = Collections.emptyList();
+                budget = SlackLimits.MAX_PAYLOAD_BYTES - messageLength(chunkText, color);
+            }
+            chunk.add(field);
+            budget -= length;
+        }
+        messages.add(message(chunkText, color, chunk, chunkMeasures));
+        return messages;
+    }
+
+    /**
+     * @return length of the message without condition fields, measured like {@link SlackLimits#payloadLength(Payload)}
+     * measures the built message
+     */
+    private int messageLength(String text, String color) {
+        return SlackLimits.payloadLength(message(text, null, null, Collections.emptyList()))
+                + SlackLimits.attachmentLength(Attachment.builder().color(color).build());
+    }
+
+    private static int measuresLength(List<Field> measureFields) {
+        return measureFields.isEmpty() ? 0 : SlackLimits.attachmentLength(measuresAttachment(measureFields));
+    }
+
+    private Payload message(String text, String color, List<Field> fields, List<Field> measureFields) {
+        List<Attachment> attachments = new ArrayList<>(2);
+        if (fields != null) {
+            attachments.add(Attachment.builder()
+                    .fields(fields)
+                    .color(color)
+                    .build());
+        }
+        if (!measureFields.isEmpty()) {
+            attachments.add(measuresAttachment(measureFields));
+        }
+        return Payload.builder()
+                .channel(projectConfig.getSlackChannel())
+                .username(slackUser)
+                .text(text)
+                .attachments(attachments.isEmpty() ? null : attachments)
+                .build();
+    }
+
+    private static Attachment measuresAttachment(List<Field> measureFields) {
+        return Attachment.builder()
+                .text(MEASURES_TITLE)
+                .fields(measureFields)
+                .build();
+    }
+
+    private List<Field> measureFields() {
+        if (measures == null || measures.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Field> fields = new ArrayList<>(measures.size());
+        for (MeasureFetcher.Measure measure : measures) {
+            fields.add(truncate(Field.builder()
+                    .title(metricNames.name(i18n, locale, measure.getMetricKey()))
+                    .value(measureValue(measure))
+                    .valueShortEnough(true)
+                    .build()));
+        }
+        return fields;
+    }
+
+    /**
+     * Percentages are formatted like condition values, ratings shown as the letters SonarQube shows
+     */
+    private String measureValue(MeasureFetcher.Measure measure) {
+        if ("PERCENT".equals(measure.getType())) {
+            StringBuilder sb = new StringBuilder();
+            appendPercentageValue(measure.getValue(), sb);
+            return sb.append('%').toString();
+        }
+        if ("RATING".equals(measure.getType())) {
+            try {
+                int rating = (int) Double.parseDouble(measure.getValue());
+                if (rating >= 1 && rating <= RATINGS.length()) {
+                    return String.valueOf(RATINGS.charAt(rating - 1));
+                }
+            } catch (NumberFormatException e) {
+                LOG.debug("Rating [{}] of metric [{}] is not a number", measure.getValue(), measure.getMetricKey());
+            }
+        }
+        return measure.getValue();
+    }
+
+    private static Field truncate(Field field) {
+        field.setTitle(SlackLimits.truncate(field.getTitle(), SlackLimits.MAX_FIELD_STRING_BYTES));
+        field.setValue(SlackLimits.truncate(field.getValue(), SlackLimits.MAX_FIELD_STRING_BYTES));
+        return field;
+    }
+
+    private static Field passedConditionsSummary(int ok, int noValue) {
+        StringBuilder value = new StringBuilder();
+        if (ok > 0) {
+            value.append(ok).append(" OK");
+        }
+        if (noValue > 0) {
+            value.append(ok > 0 ? ", " : "").append(noValue).append(" without value");
+        }
+        return Field.builder()
+                .title("Other conditions")
+                .value(value.toString())
+                .valueShortEnough(true)
+                .build();
+    }
+
+    private void prepare() {
         assertNotNull(projectConfig, "projectConfig");
         assertNotNull(projectUrl, "projectUrl");
         assertNotNull(slackUser, "slackUser");
         assertNotNull(i18n, "i18n");
         assertNotNull(analysis, "analysis");
+        assertNotNull(locale, "locale");
+        if (metricNames == null) {
+            metricNames = new MetricNameCache();
+        }
+        if (templates == null) {
+            templates = new PayloadTemplates();
+        }
+    }
 
-        QualityGate qualityGate = analysis.getQualityGate();
-        String shortText = String.join("",
-                "Project [", analysis.getProject().getName(), "] analyzed. See ",
+    private String messageText(QualityGate qualityGate) {
+        String text = firstNonBlank(projectConfig.getMessageTemplate(), messageTemplate);
+        if (text == null) {
+            text = qualityGate == null ? PayloadTemplates.DEFAULT_MESSAGE_WITHOUT_QUALITY_GATE : PayloadTemplates.DEFAULT_MESSAGE;
+        }
+        return templates.message(text).render(
+                analysis.getProject().getName(),
+                analysis.getProject().getKey(),
                 projectUrl,
-                qualityGate == null ? "." : ". Quality gate status: " + qualityGate.getStatus());
+                qualityGate == null ? null : qualityGate.getName(),
+                qualityGate == null ? null : qualityGate.getStatus().name());
+    }
 
-        return Payload.builder()
-                .channel(projectConfig.getSlackChannel())
-                .username(slackUser)
-                .text(shortText)
-                .attachments(qualityGate == null ? null : buildConditionsAttachment(qualityGate, projectConfig.isQgFailOnly()))
-                .build();
+    private static String firstNonBlank(String... values) {
+        for (String value : values) {
+            if (value != null && !value.trim().isEmpty()) {
+                return value;
+            }
+        }
+        return null;
     }
 
     private void assertNotNull(Object object, String argumentName) {
@@ -101,7 +373,14 @@ public class ProjectAnalysisPayloadBuilder {
         }
     }
 
+    private void prepareConditionTitle() {
+        String customTitle = firstNonBlank(projectConfig.getConditionTemplate(), conditionTemplate);
+        customConditionTitle = customTitle != null;
+        conditionTitle = templates.condition(customConditionTitle ? customTitle : PayloadTemplates.DEFAULT_CONDITION);
+    }
+
     private List<Attachment> buildConditionsAttachment(QualityGate qualityGate, boolean qgFailOnly) {
+        prepareConditionTitle();
 
         List<Attachment> attachments = new ArrayList<>();
         attachments.add(Attachment.builder()
@@ -128,12 +407,11 @@ public class ProjectAnalysisPayloadBuilder {
      * @return
      */
     private Field translate(QualityGate.Condition condition) {
-        String i18nKey = "metric." + condition.getMetricKey() + ".name";
-        String conditionName = i18n.message(Locale.ENGLISH, i18nKey, condition.getMetricKey());
+        String conditionName = metricNames.name(i18n, locale, condition.getMetricKey());
 
         if (QualityGate.EvaluationStatus.NO_VALUE.equals(condition.getStatus())) {
             // No value for given metric
-            return Field.builder().title(conditionName)
+            return Field.builder().title(customConditionTitle ? conditionTitle(condition, conditionName, null) : conditionName)
                     .value(condition.getStatus().name())
                     .valueShortEnough(true)
                     .build();
@@ -141,6 +419,7 @@ public class ProjectAnalysisPayloadBuilder {
             StringBuilder sb = new StringBuilder();
             appendValue(condition, sb);
             appendValuePostfix(condition, sb);
+            String value = sb.toString();
             if (condition.getWarningThreshold() != null) {
                 sb.append(", warning if ");
                 appendValueOperatorPrefix(condition, sb);
@@ -153,7 +432,7 @@ public class ProjectAnalysisPayloadBuilder {
                 sb.append(condition.getErrorThreshold());
                 appendValuePostfix(condition, sb);
             }
-            return Field.builder().title(conditionName + ": " + condition.getStatus().name())
+            return Field.builder().title(conditionTitle(condition, conditionName, value))
                     .value(sb.toString())
                     .valueShortEnough(false)
                     .build();
@@ -161,6 +440,16 @@ public class ProjectAnalysisPayloadBuilder {
         }
     }
 
+    private String conditionTitle(QualityGate.Condition condition, String conditionName, String value) {
+        return conditionTitle.render(
+                conditionName,
+                condition.getMetricKey(),
+                condition.getStatus().name(),
+                value,
+                condition.getWarningThreshold(),
+                condition.getErrorThreshold());
+    }
+
     private void appendValue(QualityGate.Condition condition, StringBuilder sb) {
         if ("".equals(condition.getValue())) {
             sb.append("-");
@@ -176,13 +465,23 @@ public class ProjectAnalysisPayloadBuilder {
     private void appendPercentageValue(String s, StringBuilder sb) {
         try {
             Double d = Double.parseDouble(s);
-            sb.append(percentageFormat.format(d));
+            sb.append(percentageFormat(locale).format(d));
         }catch(NumberFormatException e){
             LOG.error("Failed to parse [{}] into a Double due to [{}]", s, e.getMessage());
             sb.append(s);
         }
     }
 
+    private static DecimalFormat percentageFormat(Locale locale) {
+        return percentageFormats.get().computeIfAbsent(locale, l -> {
+            // Format percentages as 25.01 instead of 25.0066666666666667 etc.
+            DecimalFormat format = new DecimalFormat();
+            format.setDecimalFormatSymbols(DecimalFormatSymbols.getInstance(l));
+            format.setMaximumFractionDigits(2);
+            return format;
+        });
+    }
+
     private void appendValueOperatorPrefix(QualityGate.Condition condition, StringBuilder sb) {
         switch (condition.getOperator()) {
             case EQUALS:
@@ -2,79 +2,644 @@ package com.koant.sonar.slacknotifier.extension.task;
 
 import com.github.seratch.jslack.Slack;
 import com.github.seratch.jslack.api.webhook.Payload;
-import com.github.seratch.jslack.api.webhook.WebhookResponse;
 import com.koant.sonar.slacknotifier.common.component.AbstractSlackNotifyingComponent;
 import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import com.koant.sonar.slacknotifier.common.delivery.CircuitBreaker;
+import com.koant.sonar.slacknotifier.common.delivery.CircuitBreakers;
+import com.koant.sonar.slacknotifier.common.delivery.DeliveryListener;
+import com.koant.sonar.slacknotifier.common.delivery.DeliveryQueue;
+import com.koant.sonar.slacknotifier.common.delivery.Destination;
+import com.koant.sonar.slacknotifier.common.delivery.DeliveryResult;
+import com.koant.sonar.slacknotifier.common.delivery.JslackWebhookSender;
+import com.koant.sonar.slacknotifier.common.delivery.Notification;
+import com.koant.sonar.slacknotifier.common.delivery.NotificationBatcher;
+import com.koant.sonar.slacknotifier.common.delivery.OkHttpWebhookSender;
+import com.koant.sonar.slacknotifier.common.delivery.ParkingLot;
+import com.koant.sonar.slacknotifier.common.delivery.Priority;
+import com.koant.sonar.slacknotifier.common.delivery.RetryPolicy;
+import com.koant.sonar.slacknotifier.common.delivery.RetryingDeliverer;
+import com.koant.sonar.slacknotifier.common.delivery.SlackWebApiSender;
+import com.koant.sonar.slacknotifier.common.delivery.WebhookRateLimiters;
+import com.koant.sonar.slacknotifier.common.delivery.WebhookSender;
+import com.koant.sonar.slacknotifier.common.metrics.SkipReason;
+import com.koant.sonar.slacknotifier.common.metrics.SlackNotifierMetrics;
+import com.koant.sonar.slacknotifier.common.outbox.OutboxJournal;
+import com.koant.sonar.slacknotifier.common.status.QualityGateStatusStore;
+import org.sonar.api.Startable;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.Settings;
 import org.sonar.api.i18n.I18n;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by 616286 on 3.6.2016.
  * Modified by poznachowski
  */
-public class SlackPostProjectAnalysisTask extends AbstractSlackNotifyingComponent implements PostProjectAnalysisTask {
+public class SlackPostProjectAnalysisTask extends AbstractSlackNotifyingComponent implements PostProjectAnalysisTask, Startable {
 
     private static final Logger LOG = Loggers.get(SlackPostProjectAnalysisTask.class);
+    private static final long RETRY_BASE_DELAY_MS = 500L;
+    private static final long RETRY_MAX_DELAY_MS = 30_000L;
+    private static final long PARKING_CHECK_INTERVAL_MS = 1_000L;
+    private static final String DIGEST_NOTIFICATION_KEY = "digest";
+    /**
+     * Suffix of the message keys of the parts of a split message, after the first
+     */
+    private static final Pattern MESSAGE_PART = Pattern.compile("/\\d+$");
 
     private final I18n i18n;
-    private final Slack slackClient;
+    private final WebhookSender configuredSender;
+    private final SlackNotifierMetrics metrics = new SlackNotifierMetrics();
+    private final MetricNameCache metricNames = new MetricNameCache();
+    private final PayloadTemplates templates = new PayloadTemplates();
+    private OkHttpWebhookSender defaultSender;
+    private SlackWebApiSender webApiSender;
+    private DeliveryQueue deliveryQueue;
+    private NotificationBatcher batcher;
+    private DigestAggregator digests;
+    private volatile ParkingLot parkingLot;
+    private volatile DuplicateFilter duplicateFilter;
+    private QualityGateStatusStore statusStore;
+    private volatile OutboxJournal outbox;
+    private MeasureFetcher measureFetcher;
+    /**
+     * Set once stopped, so that notifications completing their measure lookup afterwards are not sent
+     */
+    private volatile boolean stopped;
 
+    /**
+     * Uses the default OkHttp transport, configured from the ckss.http.* settings
+     */
     public SlackPostProjectAnalysisTask(Settings settings, I18n i18n) {
-        this(Slack.getInstance(), settings, i18n);
+        this((WebhookSender) null, settings, i18n);
     }
 
     public SlackPostProjectAnalysisTask(Slack slackClient, Settings settings, I18n i18n) {
+        this(new JslackWebhookSender(slackClient), settings, i18n);
+    }
+
+    public SlackPostProjectAnalysisTask(WebhookSender sender, Settings settings, I18n i18n) {
         super(settings);
-        this.slackClient = slackClient;
+        this.configuredSender = sender;
         this.i18n = i18n;
     }
 
+    @Override
+    public void start() {
+        stopped = false;
+        metrics.register();
+        deliveryQueue();
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        // Digests and open batches are flushed into the delivery queue, which delivers what it holds within a grace
+        // period when it stops, so stop them first
+        if (digests != null) {
+            digests.stop();
+            digests = null;
+        }
+        if (batcher != null) {
+            batcher.stop();
+            batcher = null;
+        }
+        if (parkingLot != null) {
+            parkingLot.stop();
+            parkingLot = null;
+        }
+        if (deliveryQueue != null) {
+            deliveryQueue.stop();
+            deliveryQueue = null;
+        }
+        if (outbox != null) {
+            try {
+                outbox.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close the outbox journal", e);
+            }
+            outbox = null;
+        }
+        if (statusStore != null) {
+            statusStore.close();
+            statusStore = null;
+        }
+        if (measureFetcher != null) {
+            measureFetcher.close();
+            measureFetcher = null;
+        }
+        if (defaultSender != null) {
+            defaultSender.close();
+            defaultSender = null;
+        }
+        webApiSender = null;
+        metrics.unregister();
+    }
+
+    SlackNotifierMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The queue is created lazily so that its capacity, worker count, retry and rate limit settings are read
+     * from the settings in effect when the first notification is sent.
+     * Notifications left undelivered in the outbox by the previous run are queued first.
+     */
+    private synchronized DeliveryQueue deliveryQueue() {
+        if (deliveryQueue == null) {
+            if (stopped) {
+                // Not started again behind the back of the container
+                throw new IllegalStateException("Slack notifier is stopped");
+            }
+            outbox = openOutbox();
+            CircuitBreakers circuitBreakers = new CircuitBreakers(getCircuitWindow(), getCircuitFailureRate(),
+                    TimeUnit.SECONDS.toMillis(getCircuitOpenSeconds()), (name, from, to) -> {
+                if (to == CircuitBreaker.State.OPEN) {
+                    metrics.circuitOpened();
+                }
+            });
+            parkingLot = new ParkingLot(circuitBreakers, this::enqueue, getDeliveryQueueCapacity(), PARKING_CHECK_INTERVAL_MS);
+            metrics.parked(parkingLot::size);
+            metrics.openCircuits(circuitBreakers::openCount);
+            RetryingDeliverer deliverer = new RetryingDeliverer(
+                    sender(),
+                    new RetryPolicy(getDeliveryRetryAttempts(), RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS),
+                    new WebhookRateLimiters(getDeliveryRate()),
+                    circuitBreakers,
+                    new TaskDeliveryListener());
+            deliveryQueue = new DeliveryQueue(getDeliveryQueueCapacity(), getDeliveryWorkerCount(), deliverer,
+                    TimeUnit.SECONDS.toMillis(getDeliveryAgingSeconds()), getDeliveryShedding(), getDeliverySheddingThreshold(),
+                    new TaskShedListener());
+            metrics.backlog(deliveryQueue::size);
+            if (outbox != null) {
+                outbox.undelivered(configuredHooks()).forEach(this::enqueue);
+            }
+        }
+        return deliveryQueue;
+    }
+
+    /**
+     * With a bot token, notifications to channels go through the Web API and the others through the webhook sender
+     */
+    private WebhookSender sender() {
+        WebhookSender webhooks = configuredSender != null ? configuredSender : okHttpSender();
+        Optional<String> token = getWebApiToken();
+        if (!token.isPresent()) {
+            return webhooks;
+        }
+        webApiSender = new SlackWebApiSender(webhooks, okHttpSender(), getWebApiUrl(), token.get(), getWebApiMode(),
+                getWebApiMaxMessages(), TimeUnit.HOURS.toMillis(getWebApiMessageTtlHours()));
+        LOG.info("Posting notifications to channels through the Slack Web API, in [{}] mode", webApiSender.getMode());
+        return webApiSender;
+    }
+
+    /**
+     * @return the hooks that notifications are posted to with the current settings, which the outbox resolves the
+     * hooks of its notifications against
+     */
+    private Set<String> configuredHooks() {
+        Set<String> hooks = new HashSet<>();
+        String webhook = getSlackIncomingWebhookUrl();
+        if (webhook != null) {
+            hooks.add(webhook);
+        }
+        SlackWebApiSender webApi = webApiSender;
+        if (webApi != null) {
+            hooks.add(webApi.getApiUrl());
+        }
+        String channelHook = webApi != null ? webApi.getApiUrl() : webhook;
+        for (ProjectConfig projectConfig : getProjectConfigs()) {
+            Destination.parse(projectConfig.getSlackChannel(), channelHook).forEach(d -> hooks.add(d.getHook()));
+        }
+        return hooks;
+    }
+
+    private OkHttpWebhookSender okHttpSender() {
+        if (defaultSender == null) {
+            defaultSender = new OkHttpWebhookSender(getHttpConnectTimeoutMillis(), getHttpReadTimeoutMillis(), getHttpDeadlineMillis(),
+                    metrics::recordPayloadSize);
+        }
+        return defaultSender;
+    }
+
+    /**
+     * @return the hook of the destinations given as channel names: the Web API if the sender posts through it,
+     * otherwise the webhook
+     */
+    private String channelHook() {
+        deliveryQueue();
+        SlackWebApiSender webApi = webApiSender;
+        return webApi != null ? webApi.getApiUrl() : getSlackIncomingWebhookUrl();
+    }
+
+    private OutboxJournal openOutbox() {
+        Optional<Path> directory = getOutboxDirectory();
+        if (!directory.isPresent()) {
+            LOG.info("Outbox disabled, undelivered notifications are lost on restart");
+            return null;
+        }
+        try {
+            return OutboxJournal.open(directory.get());
+        } catch (IOException e) {
+            LOG.error("Failed to open outbox journal in [" + directory.get() + "], undelivered notifications are lost on restart", e);
+            return null;
+        }
+    }
+
+    private Notification journal(Notification notification) {
+        OutboxJournal journal = outbox;
+        if (journal == null) {
+            return notification;
+        }
+        try {
+            return journal.append(notification);
+        } catch (IOException e) {
+            LOG.error("Failed to journal [" + notification + "], it is lost if not delivered before a restart", e);
+            return notification;
+        }
+    }
+
+    private boolean enqueue(Notification notification) {
+        if (!deliveryQueue().offer(notification)) {
+            metrics.dropped();
+            forgetSent(notification);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The notification will not be delivered, so the next identical notification of its projects is not suppressed
+     */
+    private void forgetSent(Notification notification) {
+        DuplicateFilter filter = duplicateFilter;
+        if (filter == null || DIGEST_NOTIFICATION_KEY.equals(notification.getProjectKey())) {
+            return;
+        }
+        // The key of a merged notification lists the keys of its parts
+        for (String messageKey : notification.getProjectKey().split(",")) {
+            filter.forget(messageKey);
+            Matcher part = MESSAGE_PART.matcher(messageKey);
+            if (part.find()) {
+                filter.forget(messageKey.substring(0, part.start()));
+            }
+        }
+    }
+
+    private void markDelivered(Notification notification) {
+        OutboxJournal journal = outbox;
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.markDelivered(notification.getOutboxIds());
+        } catch (IOException e) {
+            LOG.error("Failed to mark [" + notification + "] delivered, it will be sent again after a restart", e);
+        }
+    }
+
+    private class TaskDeliveryListener implements DeliveryListener {
+        @Override
+        public void attempted(Notification notification, DeliveryResult result, long elapsedNanos) {
+            metrics.recordWebhookRoundTrip(elapsedNanos);
+        }
+
+        @Override
+        public void delivered(Notification notification) {
+            metrics.delivered();
+            markDelivered(notification);
+        }
+
+        @Override
+        public void failed(Notification notification, DeliveryResult lastResult) {
+            // Given up for good, so settled rather than replayed and failed again after every restart
+            markDelivered(notification);
+            forgetSent(notification);
+            metrics.failed();
+        }
+
+        @Override
+        public void parked(Notification notification) {
+            ParkingLot lot = parkingLot;
+            if (lot == null || !lot.park(notification)) {
+                metrics.dropped();
+                forgetSent(notification);
+            }
+        }
+    }
+
+    private class TaskShedListener implements DeliveryQueue.ShedListener {
+        @Override
+        public void dropped(Notification notification) {
+            metrics.shedDropped();
+            // Shed on purpose, so not sent again after a restart
+            markDelivered(notification);
+            forgetSent(notification);
+        }
+
+        @Override
+        public void merged(Notification notification) {
+            metrics.shedMerged();
+        }
+    }
+
+    /**
+     * The statuses are kept under the data directory, or in memory if there is none
+     */
+    private synchronized QualityGateStatusStore statusStore() {
+        if (statusStore == null) {
+            Optional<Path> file = getDataDirectory().map(d -> d.resolve("status").resolve("quality-gates.tbl"));
+            if (file.isPresent()) {
+                try {
+                    statusStore = QualityGateStatusStore.open(file.get());
+                } catch (IOException e) {
+                    LOG.error("Failed to open quality gate status file [" + file.get() + "], statuses are lost on restart", e);
+                }
+            }
+            if (statusStore == null) {
+                statusStore = QualityGateStatusStore.inMemory();
+            }
+        }
+        return statusStore;
+    }
+
+    /**
+     * Records the quality gate status of the project
+     *
+     * @return true if it differs from the status recorded by the previous analysis, or if there was none
+     */
+    private boolean isStatusChange(String projectKey, QualityGate qualityGate) {
+        if (qualityGate == null) {
+            return false;
+        }
+        try {
+            Optional<QualityGate.Status> previous = statusStore().put(projectKey, qualityGate.getStatus());
+            return !previous.isPresent() || previous.get() != qualityGate.getStatus();
+        } catch (IOException e) {
+            LOG.error("Failed to record quality gate status of project [" + projectKey + "]", e);
+            return true;
+        }
+    }
+
+    /**
+     * @return the duplicate filter for the current TTL and capacity settings, empty if duplicates are not suppressed
+     */
+    private synchronized Optional<DuplicateFilter> duplicateFilter() {
+        int ttlSeconds = getDedupTtlSeconds();
+        if (ttlSeconds == 0) {
+            duplicateFilter = null;
+            return Optional.empty();
+        }
+        int maxEntries = getDedupMaxEntries();
+        if (duplicateFilter == null || duplicateFilter.getTtlSeconds() != ttlSeconds || duplicateFilter.getMaxEntries() != maxEntries) {
+            duplicateFilter = new DuplicateFilter(maxEntries, ttlSeconds);
+        }
+        return Optional.of(duplicateFilter);
+    }
+
+    private synchronized NotificationBatcher batcher() {
+        if (batcher == null) {
+            if (stopped) {
+                throw new IllegalStateException("Slack notifier is stopped");
+            }
+            batcher = new NotificationBatcher(this::enqueue);
+        }
+        return batcher;
+    }
+
+    /**
+     * @return the digest aggregator for the current period setting. When the period changes, the digests in progress
+     * are sent and new ones are started with the new period.
+     */
+    private synchronized DigestAggregator digests() {
+        long periodMillis = TimeUnit.MINUTES.toMillis(getDigestPeriodMinutes());
+        if (digests == null || digests.getPeriodMillis() != periodMillis) {
+            if (digests != null) {
+                digests.stop();
+            }
+            digests = new DigestAggregator(this::sendDigest, periodMillis);
+        }
+        return digests;
+    }
+
+    /**
+     * Sends the digests in progress without waiting for the end of the period
+     */
+    void sendDigests() {
+        digests().flush();
+    }
+
+    private void sendDigest(ChannelDigest digest) {
+        Payload payload = DigestPayloadBuilder.of(digest)
+                .i18n(i18n)
+                .locale(getOutputLocale())
+                .metricNames(metricNames)
+                .period(TimeUnit.MINUTES.toMillis(getDigestPeriodMinutes()))
+                .username(getSlackUser())
+                .build();
+        enqueue(journal(new Notification(DIGEST_NOTIFICATION_KEY, digest.getDestination().getHook(), payload)));
+    }
+
     @Override
     public void finished(ProjectAnalysis analysis) {
-        refreshSettings();
+        // Most analyses are of projects that are never notified, so they are rejected before any settings refresh,
+        // lookup or string building
         if (!isPluginEnabled()) {
-            LOG.info("Slack notifier plugin disabled, skipping. Settings are [{}]", logRelevantSettings());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Slack notifier plugin disabled, skipping. Settings are [{}]", logRelevantSettings());
+            }
+            metrics.skipped(SkipReason.PLUGIN_DISABLED);
             return;
         }
-        LOG.info("Analysis ScannerContext: [{}]", analysis.getScannerContext().getProperties());
         String projectKey = analysis.getProject().getKey();
+        if (isKnownUnconfigured(projectKey)) {
+            metrics.skipped(SkipReason.NO_PROJECT_CONFIG);
+            return;
+        }
+        refreshSettings();
 
-        Optional<ProjectConfig> projectConfigOptional = getProjectConfig(projectKey);
+        long lookupStart = System.nanoTime();
+        Optional<ProjectConfig> projectConfigOptional = getProjectConfig(projectKey, analysis.getQualityGate(),
+                analysis.getScannerContext().getProperties());
+        metrics.recordConfigLookup(System.nanoTime() - lookupStart);
         if (!projectConfigOptional.isPresent()) {
+            metrics.skipped(SkipReason.NO_PROJECT_CONFIG);
             return;
         }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Analysis ScannerContext: [{}]", analysis.getScannerContext().getProperties());
+        }
 
         ProjectConfig projectConfig = projectConfigOptional.get();
-        if (shouldSkipSendingNotification(projectConfig, analysis.getQualityGate())) {
+        if (projectConfig.isDigest()) {
+            addToDigests(analysis, projectConfig);
+            return;
+        }
+        // Recorded before the other checks, so that every status is seen
+        if (projectConfig.isStatusChangeOnly() && !isStatusChange(projectKey, analysis.getQualityGate())) {
+            LOG.info("Project [{}] set up to send notification on quality gate status change, but it did not change", projectKey);
+            metrics.skipped(SkipReason.STATUS_UNCHANGED);
+            return;
+        }
+        Optional<SkipReason> skipReason = skipReason(projectConfig, analysis.getQualityGate());
+        if (skipReason.isPresent()) {
+            metrics.skipped(skipReason.get());
+            return;
+        }
+        List<Destination> destinations = Destination.parse(projectConfig.getSlackChannel(), channelHook());
+        if (destinations.isEmpty()) {
+            LOG.info("Project [{}] has no destination to send notifications to", projectKey);
+            metrics.skipped(SkipReason.NO_DESTINATION);
+            return;
+        }
+        Optional<DuplicateFilter> dedup = duplicateFilter();
+        if (dedup.isPresent() && dedup.get().isRepeat(analysis, projectConfig)) {
+            LOG.info("Project [{}] notification is the same as the last one sent, skipping", projectKey);
+            metrics.skipped(SkipReason.DUPLICATE);
             return;
         }
 
-        LOG.info("Slack notification will be sent: " + analysis.toString());
+        Optional<MeasureFetcher> fetcher = measureFetcher();
+        if (!fetcher.isPresent()) {
+            notify(analysis, projectConfig, destinations, Collections.emptyList());
+            return;
+        }
+        // Sent from the thread completing the lookup, so that the analysis task does not wait for the measures
+        fetcher.get().fetch(projectKey, analysisId(analysis), getMeasuresBudgetMillis())
+                .thenAccept(measures -> notify(analysis, projectConfig, destinations, measures))
+                .exceptionally(e -> {
+                    LOG.error("Failed to queue Slack notification of project [" + projectKey + "]", e);
+                    return null;
+                });
+    }
 
-        Payload payload = ProjectAnalysisPayloadBuilder.of(analysis)
+    private void notify(ProjectAnalysis analysis, ProjectConfig projectConfig, List<Destination> destinations,
+                        List<MeasureFetcher.Measure> measures) {
+        String projectKey = analysis.getProject().getKey();
+        if (stopped) {
+            // The measures arrived after the shutdown
+            LOG.warn("Slack notifier stopped, notification of project [{}] is not sent", projectKey);
+            metrics.dropped();
+            return;
+        }
+        LOG.info("Slack notification will be queued: {}", analysis);
+
+        long buildStart = System.nanoTime();
+        List<Payload> messages = ProjectAnalysisPayloadBuilder.of(analysis)
                 .i18n(i18n)
+                .locale(getOutputLocale())
+                .metricNames(metricNames)
+                .templates(templates)
+                .messageTemplate(getMessageTemplate())
+                .conditionTemplate(getConditionTemplate())
                 .projectConfig(projectConfig)
                 .projectUrl(projectUrl(projectKey))
                 .username(getSlackUser())
-                .build();
+                .measures(measures)
+                .buildMessages();
+        metrics.recordPayloadBuild(System.nanoTime() - buildStart);
 
-        try {
-            // See https://github.com/seratch/jslack
-            WebhookResponse response = slackClient.send(getSlackIncomingWebhookUrl(), payload);
-            if (!Integer.valueOf(200).equals(response.getCode())) {
-                LOG.error("Failed to post to slack, response is [{}]", response);
+        deliveryQueue();
+        // One notification per destination, so that each is retried, journaled and reported on its own,
+        // and the delivery workers post to the destinations in parallel
+        int batchWindowSeconds = getBatchWindowSeconds();
+        Priority priority = priority(analysis.getQualityGate());
+        for (Destination destination : destinations) {
+            // Quality gates too large for one message are split over several, see ProjectAnalysisPayloadBuilder#buildMessages
+            for (int i = 0; i < messages.size(); i++) {
+                // Each part keeps its own Slack message when posting through the Web API
+                String messageKey = i == 0 ? projectKey : projectKey + "/" + (i + 1);
+                Notification notification = journal(new Notification(messageKey, destination.getHook(), destination.address(messages.get(i)), priority));
+                if (batchWindowSeconds > 0) {
+                    batcher().add(notification, TimeUnit.SECONDS.toMillis(batchWindowSeconds));
+                } else {
+                    enqueue(notification);
+                }
             }
-        } catch (IOException e) {
-            LOG.error("Failed to send slack message", e);
         }
     }
 
+    /**
+     * Failed quality gates are delivered first, and passed ones may be shed when the backlog is high
+     */
+    private static Priority priority(QualityGate qualityGate) {
+        if (qualityGate == null) {
+            return Priority.NORMAL;
+        }
+        switch (qualityGate.getStatus()) {
+            case ERROR:
+                return Priority.HIGH;
+            case OK:
+                return Priority.LOW;
+            default:
+                return Priority.NORMAL;
+        }
+    }
+
+    /**
+     * Every analysis is added to the digests, regardless of the quality gate and status change settings,
+     * so that they show the latest status of every project
+     */
+    private void addToDigests(ProjectAnalysis analysis, ProjectConfig projectConfig) {
+        String projectKey = analysis.getProject().getKey();
+        List<Destination> destinations = Destination.parse(projectConfig.getSlackChannel(), channelHook());
+        if (destinations.isEmpty()) {
+            LOG.info("Project [{}] has no destination to send digests to", projectKey);
+            metrics.skipped(SkipReason.NO_DESTINATION);
+            return;
+        }
+        DigestAggregator aggregator = digests();
+        for (Destination destination : destinations) {
+            aggregator.add(destination, analysis, projectUrl(projectKey));
+        }
+        metrics.digested();
+    }
+
+    /**
+     * @return the measure fetcher for the current metric keys, token and server URL settings, empty if no measures
+     * are added to the notifications
+     */
+    private synchronized Optional<MeasureFetcher> measureFetcher() {
+        List<String> metricKeys = getMeasureMetricKeys();
+        String serverUrl = getSonarServerUrl();
+        String token = getMeasuresToken().orElse(null);
+        if (measureFetcher != null && (metricKeys.isEmpty() || !measureFetcher.isConfiguredFor(serverUrl, token, metricKeys))) {
+            measureFetcher.close();
+            measureFetcher = null;
+        }
+        if (metricKeys.isEmpty()) {
+            return Optional.empty();
+        }
+        if (serverUrl == null) {
+            LOG.warn("Server base URL not set, notifications are sent without measures");
+            return Optional.empty();
+        }
+        if (measureFetcher == null) {
+            measureFetcher = new MeasureFetcher(serverUrl, token, metricKeys, getHttpConnectTimeoutMillis(), getHttpReadTimeoutMillis());
+        }
+        return Optional.of(measureFetcher);
+    }
+
+    /**
+     * @return the id of the analysis the measures are cached for
+     */
+    private static String analysisId(ProjectAnalysis analysis) {
+        return analysis.getCeTask() != null ? analysis.getCeTask().getId() : String.valueOf(analysis.getDate());
+    }
+
     private String projectUrl(String projectKey) {
         return getSonarServerUrl() + "dashboard?id=" + projectKey;
     }
@@ -0,0 +1,49 @@
+package com.koant.sonar.slacknotifier.common.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringLruCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ExpiringLruCache<String, Long> cache = new ExpiringLruCache<>(3, 10, TimeUnit.SECONDS, now::get);
+
+    @Test
+    public void shouldExpireEntriesAfterTtl() {
+        cache.put("a", 1L);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertThat(cache.get("a")).isEqualTo(1L);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedWhenFull() {
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        cache.put("c", 3L);
+        cache.get("a");
+        cache.put("d", 4L);
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo(1L);
+        assertThat(cache.get("d")).isEqualTo(4L);
+    }
+
+    @Test
+    public void shouldDropExpiredEntriesOnPut() {
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        cache.put("c", 3L);
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+}
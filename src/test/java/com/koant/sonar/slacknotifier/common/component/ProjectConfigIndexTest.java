@@ -0,0 +1,149 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester.newConditionBuilder;
+import static org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester.newQualityGateBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProjectConfigIndexTest {
+
+    private static final ProjectConfig EXACT = new ProjectConfig("com.koant:plugin", "#exact", false);
+    private static final ProjectConfig SHORT_PREFIX = new ProjectConfig("com.koant*", "#short", false);
+    private static final ProjectConfig LONG_PREFIX = new ProjectConfig("com.koant:plug*", "#long", false);
+    private static final ProjectConfig EVERYTHING = new ProjectConfig("*", "#all", false);
+
+    private final ProjectConfigIndex index = new ProjectConfigIndex(Arrays.asList(SHORT_PREFIX, EVERYTHING, EXACT, LONG_PREFIX));
+
+    @Test
+    public void exactKeyShouldWinOverWildcards() {
+        assertThat(index.lookup("com.koant:plugin")).contains(EXACT);
+    }
+
+    @Test
+    public void longestWildcardPrefixShouldWin() {
+        assertThat(index.lookup("com.koant:plugin-module")).contains(LONG_PREFIX);
+        assertThat(index.lookup("com.koant:plug")).contains(LONG_PREFIX);
+        assertThat(index.lookup("com.koant:other")).contains(SHORT_PREFIX);
+        assertThat(index.lookup("org.other")).contains(EVERYTHING);
+    }
+
+    @Test
+    public void shouldNotMatchWithoutWildcard() {
+        ProjectConfigIndex withoutCatchAll = new ProjectConfigIndex(Arrays.asList(EXACT, LONG_PREFIX));
+        assertThat(withoutCatchAll.lookup("com.koant:plugin2")).contains(LONG_PREFIX);
+        assertThat(withoutCatchAll.lookup("com.koant")).isEmpty();
+        assertThat(withoutCatchAll.lookup("")).isEmpty();
+    }
+
+    @Test
+    public void emptyIndexShouldMatchNothing() {
+        assertThat(new ProjectConfigIndex(Collections.emptyList()).lookup("com.koant:plugin")).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchGlobsAndRegularExpressionsAfterPrefixes() {
+        ProjectConfig glob = new ProjectConfig("com.*:service-?", "#glob", false);
+        ProjectConfig regex = new ProjectConfig("regex:org\\.(a|b):.*", "#regex", false);
+        ProjectConfigIndex patterns = new ProjectConfigIndex(Arrays.asList(glob, regex, SHORT_PREFIX));
+
+        assertThat(patterns.lookup("com.other:service-1")).contains(glob);
+        assertThat(patterns.lookup("com.koant:service-1")).contains(SHORT_PREFIX);
+        assertThat(patterns.lookup("com.other:service-10")).isEmpty();
+        assertThat(patterns.lookup("org.b:project")).contains(regex);
+        assertThat(patterns.lookup("org.c:project")).isEmpty();
+    }
+
+    @Test
+    public void shouldIgnoreInvalidRegularExpression() {
+        ProjectConfigIndex invalid = new ProjectConfigIndex(Arrays.asList(new ProjectConfig("regex:(", "#invalid", false), EVERYTHING));
+        assertThat(invalid.lookup("(")).contains(EVERYTHING);
+    }
+
+    @Test
+    public void shouldFallThroughRulesWhoseConditionsDoNotMatch() {
+        ProjectConfig releases = rule("com.koant:*", "#releases", null, null, "sonar.analysis.branch=release/*");
+        ProjectConfig coverage = rule("com.koant:*", "#coverage", "ERROR", "new_coverage", null);
+        ProjectConfig failures = rule("com.koant:*", "#failures", "ERROR,WARN", null, null);
+        ProjectConfigIndex routing = new ProjectConfigIndex(Arrays.asList(releases, coverage, failures, EVERYTHING));
+
+        Map<String, String> release = branch("release/1.0");
+        Map<String, String> master = branch("master");
+        assertThat(routing.lookup("com.koant:plugin", qualityGate(QualityGate.Status.OK, "new_bugs"), release)).contains(releases);
+        assertThat(routing.lookup("com.koant:plugin", qualityGate(QualityGate.Status.ERROR, "new_coverage"), master)).contains(coverage);
+        assertThat(routing.lookup("com.koant:plugin", qualityGate(QualityGate.Status.ERROR, "new_bugs"), master)).contains(failures);
+        assertThat(routing.lookup("com.koant:plugin", qualityGate(QualityGate.Status.OK, "new_bugs"), master)).contains(EVERYTHING);
+        assertThat(routing.lookup("com.koant:plugin", null, Collections.emptyMap())).contains(EVERYTHING);
+    }
+
+    @Test
+    public void shouldTryRulesWithTheSameKeyInListedOrder() {
+        ProjectConfig first = rule(EXACT.getProjectKey(), "#first", "ERROR", null, null);
+        ProjectConfig second = rule(EXACT.getProjectKey(), "#second", "ERROR", null, null);
+        ProjectConfigIndex routing = new ProjectConfigIndex(Arrays.asList(first, second, EXACT));
+
+        assertThat(routing.lookup(EXACT.getProjectKey(), qualityGate(QualityGate.Status.ERROR, "new_bugs"), Collections.emptyMap()))
+                .contains(first);
+        assertThat(routing.lookup(EXACT.getProjectKey(), qualityGate(QualityGate.Status.OK, "new_bugs"), Collections.emptyMap()))
+                .contains(EXACT);
+    }
+
+    @Test
+    public void shouldRequirePresenceOfPropertyGivenWithoutValue() {
+        ProjectConfig pullRequests = rule("*", "#pr", null, null, "sonar.analysis.pullRequest");
+        ProjectConfigIndex routing = new ProjectConfigIndex(Collections.singletonList(pullRequests));
+
+        Map<String, String> pullRequest = new HashMap<>();
+        pullRequest.put("sonar.analysis.pullRequest", "42");
+        assertThat(routing.lookup("any", null, pullRequest)).contains(pullRequests);
+        assertThat(routing.lookup("any", null, Collections.emptyMap())).isEmpty();
+        assertThat(routing.matchesKey("any")).isTrue();
+    }
+
+    @Test
+    public void shouldPickLastOfThousandsOfRules() {
+        List<ProjectConfig> rules = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            rules.add(rule("org.team" + i + ".*", "#team" + i, "ERROR", "metric" + i, "sonar.analysis.branch=b" + i));
+        }
+        ProjectConfigIndex routing = new ProjectConfigIndex(rules);
+
+        assertThat(routing.lookup("org.team4999.project", qualityGate(QualityGate.Status.ERROR, "metric4999"), branch("b4999")))
+                .contains(rules.get(4999));
+        assertThat(routing.lookup("org.team4999.project", qualityGate(QualityGate.Status.ERROR, "metric4999"), branch("b1"))).isEmpty();
+    }
+
+    private static ProjectConfig rule(String projectKey, String channel, String statuses, String failingMetrics, String scannerProperties) {
+        return new ProjectConfig(projectKey, channel, false, false, null, null, false,
+                RoutingConditions.parse(statuses, failingMetrics, scannerProperties));
+    }
+
+    private static Map<String, String> branch(String branch) {
+        return Collections.singletonMap("sonar.analysis.branch", branch);
+    }
+
+    /**
+     * @return a quality gate with the given status, whose condition on the metric failed
+     */
+    private static QualityGate qualityGate(QualityGate.Status status, String failedMetric) {
+        return newQualityGateBuilder()
+                .setId("id")
+                .setName("name")
+                .setStatus(status)
+                .add(newConditionBuilder()
+                        .setMetricKey(failedMetric)
+                        .setOperator(QualityGate.Operator.GREATER_THAN)
+                        .setErrorThreshold("0")
+                        .build(QualityGate.EvaluationStatus.ERROR, "1"))
+                .build();
+    }
+}
@@ -0,0 +1,98 @@
+package com.koant.sonar.slacknotifier.common.component;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.MapSettings;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+
+import static com.koant.sonar.slacknotifier.common.SlackNotifierProp.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProjectConfigSnapshotTest {
+
+    private Settings settings;
+
+    @Before
+    public void before() {
+        settings = new MapSettings();
+        settings.setProperty(CONFIG.property(), "a,b");
+        configure("a", "project:a", "#a", "false");
+        configure("b", "project:b*", "#b", "true");
+    }
+
+    @Test
+    public void shouldBuildConfigsAndIndex() {
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        assertThat(snapshot.getProjectConfigs()).containsOnlyKeys("project:a", "project:b*");
+        assertThat(snapshot.lookup("project:b:module")).contains(new ProjectConfig("project:b*", "#b", true));
+    }
+
+    @Test
+    public void shouldKeepEveryRuleOfAProjectKey() {
+        settings.setProperty(CONFIG.property(), "a,alerts,b");
+        configure("alerts", "project:a", "#alerts", "true");
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        assertThat(snapshot.getProjectConfigs().get("project:a").getSlackChannel()).isEqualTo("#a");
+        assertThat(snapshot.getRules()).extracting(ProjectConfig::getSlackChannel).containsExactly("#a", "#alerts", "#b");
+    }
+
+    @Test
+    public void shouldStayCurrentWhileSettingsAreUnchanged() {
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        settings.setProperty(ENABLED.property(), "true");
+        assertThat(snapshot.isCurrent(settings)).isTrue();
+    }
+
+    @Test
+    public void shouldDetectChangedFieldValue() {
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        configure("b", "project:b*", "#b", "false");
+        assertThat(snapshot.isCurrent(settings)).isFalse();
+    }
+
+    @Test
+    public void shouldDetectValueMovedBetweenFields() {
+        configure("a", "project:a", "#a", null);
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        settings.setProperty(CONFIG.property() + ".a." + CHANNEL.property(), "#");
+        settings.setProperty(CONFIG.property() + ".a." + QG_FAIL_ONLY.property(), "a");
+        assertThat(snapshot.isCurrent(settings)).isFalse();
+    }
+
+    @Test
+    public void shouldDetectAddedConfig() {
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        settings.setProperty(CONFIG.property(), "a,b,c");
+        configure("c", "project:c", "#c", "false");
+        assertThat(snapshot.isCurrent(settings)).isFalse();
+    }
+
+    @Test
+    public void shouldRememberUnconfiguredProjects() {
+        ProjectConfigSnapshot snapshot = ProjectConfigSnapshot.build(settings);
+        assertThat(snapshot.lookup("project:a")).isPresent();
+        assertThat(snapshot.lookup("project:c")).isEmpty();
+        assertThat(snapshot.isKnownUnconfigured("project:a")).isFalse();
+        assertThat(snapshot.isKnownUnconfigured("project:c")).isTrue();
+        assertThat(snapshot.isKnownUnconfigured("project:d")).isFalse();
+
+        for (int i = 0; i < ProjectConfigSnapshot.MAX_UNCONFIGURED_KEYS; i++) {
+            snapshot.lookup("other:" + i);
+        }
+        assertThat(snapshot.isKnownUnconfigured("project:c")).isFalse();
+    }
+
+    @Test(expected = MessageException.class)
+    public void shouldFailOnMissingProjectKey() {
+        settings.removeProperty(CONFIG.property() + ".a." + PROJECT.property());
+        ProjectConfigSnapshot.build(settings);
+    }
+
+    private void configure(String id, String projectKey, String channel, String qgFailOnly) {
+        String prefix = CONFIG.property() + "." + id + ".";
+        settings.setProperty(prefix + PROJECT.property(), projectKey);
+        settings.setProperty(prefix + CHANNEL.property(), channel);
+        settings.setProperty(prefix + QG_FAIL_ONLY.property(), qgFailOnly);
+    }
+}
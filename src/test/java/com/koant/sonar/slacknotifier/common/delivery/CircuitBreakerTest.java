@@ -0,0 +1,152 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.koant.sonar.slacknotifier.common.delivery.CircuitBreaker.State.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+    private static final String HOOK = "https://hooks.slack.com/services/T000/B000/secret-token";
+
+    private final AtomicLong now = new AtomicLong();
+    private final List<String> transitions = new ArrayList<>();
+    private final CircuitBreakers breakers = new CircuitBreakers(10, 50, 30_000, now::get,
+            (name, from, to) -> transitions.add(from + "->" + to));
+
+    @Test
+    public void shouldOpenWhenFailureRateIsReached() {
+        CircuitBreaker breaker = breakers.forHook(HOOK);
+        for (int i = 0; i < 4; i++) {
+            breaker.onSuccess();
+        }
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+
+        breaker.onFailure();
+
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breakers.openCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldWaitForMinimumCallsBeforeOpening() {
+        CircuitBreaker breaker = breakers.forHook(HOOK);
+        for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS - 1; i++) {
+            breaker.onFailure();
+        }
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+    }
+
+    @Test
+    public void shouldLetOneProbeThroughAfterOpenDuration() {
+        CircuitBreaker breaker = open(breakers.forHook(HOOK));
+
+        now.addAndGet(30_000);
+        assertThat(breaker.isProbeDue()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+
+        breaker.onFailure();
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+        assertThat(breaker.isProbeDue()).isFalse();
+
+        now.addAndGet(30_000);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        assertThat(breaker.getState()).isEqualTo(CLOSED);
+        assertThat(transitions).containsExactly("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED");
+    }
+
+    @Test
+    public void shouldNameBreakerWithoutWebhookToken() {
+        assertThat(breakers.forHook(HOOK).getName()).isEqualTo("hooks.slack.com/...oken");
+    }
+
+    @Test
+    public void parkingLotShouldReleaseProbeThenEverythingOnceClosed() {
+        CircuitBreaker breaker = open(breakers.forHook(HOOK));
+        List<Notification> released = new ArrayList<>();
+        ParkingLot lot = new ParkingLot(breakers, released::add, 2, 60_000);
+        try {
+            Notification first = new Notification("a", HOOK, Payload.builder().build());
+            Notification second = new Notification("b", HOOK, Payload.builder().build());
+            assertThat(lot.park(first)).isTrue();
+            assertThat(lot.park(second)).isTrue();
+            assertThat(lot.park(new Notification("c", HOOK, Payload.builder().build()))).isFalse();
+
+            lot.releaseReady();
+            assertThat(released).isEmpty();
+
+            now.addAndGet(30_000);
+            lot.releaseReady();
+            assertThat(released).containsExactly(first);
+
+            breaker.tryAcquire();
+            breaker.onSuccess();
+            lot.releaseReady();
+            assertThat(released).containsExactly(first, second);
+            assertThat(lot.size()).isZero();
+        } finally {
+            lot.stop();
+        }
+    }
+
+    @Test
+    public void parkingLotShouldWaitForTheOutcomeOfADelayedProbe() {
+        CircuitBreaker breaker = open(breakers.forHook(HOOK));
+        List<Notification> released = new ArrayList<>();
+        ParkingLot lot = new ParkingLot(breakers, released::add, 3, 60_000);
+        try {
+            Notification first = new Notification("a", HOOK, Payload.builder().build());
+            Notification second = new Notification("b", HOOK, Payload.builder().build());
+            Notification third = new Notification("c", HOOK, Payload.builder().build());
+            lot.park(first);
+            lot.park(second);
+            lot.park(third);
+
+            now.addAndGet(30_000);
+            lot.releaseReady();
+            // The probe is still queued, the circuit is open and a probe is due
+            lot.releaseReady();
+            assertThat(breaker.isProbeDue()).isTrue();
+            assertThat(released).containsExactly(first);
+
+            assertThat(breaker.tryAcquire()).isTrue();
+            lot.releaseReady();
+            assertThat(released).containsExactly(first);
+
+            breaker.onFailure();
+            now.addAndGet(30_000);
+            lot.releaseReady();
+            lot.releaseReady();
+            assertThat(released).containsExactly(first, second);
+
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onSuccess();
+            lot.releaseReady();
+            assertThat(released).containsExactly(first, second, third);
+        } finally {
+            lot.stop();
+        }
+    }
+
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        for (int i = 0; i < CircuitBreaker.MINIMUM_CALLS; i++) {
+            breaker.onFailure();
+        }
+        assertThat(breaker.getState()).isEqualTo(OPEN);
+        return breaker;
+    }
+}
@@ -0,0 +1,249 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeliveryQueueTest {
+
+    private final RecordingShedListener shed = new RecordingShedListener();
+    private DeliveryQueue queue;
+
+    @After
+    public void after() {
+        if (queue != null) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    public void shouldDeliverOnWorkerThread() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        queue = new DeliveryQueue(10, 1, n -> {
+            threads.add(Thread.currentThread().getName());
+            delivered.countDown();
+        });
+
+        assertThat(queue.offer(notification("a"))).isTrue();
+
+        assertThat(delivered.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(threads).containsExactly("slack-notifier-delivery-0");
+    }
+
+    @Test
+    public void shouldDropWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        queue = new DeliveryQueue(1, 1, n -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertThat(queue.offer(notification("in flight"))).isTrue();
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(queue.offer(notification("queued"))).isTrue();
+        assertThat(queue.offer(notification("dropped"))).isFalse();
+        assertThat(queue.size()).isEqualTo(1);
+        release.countDown();
+    }
+
+    @Test
+    public void shouldRejectAfterStop() {
+        queue = new DeliveryQueue(10, 1, n -> {
+        });
+        queue.stop();
+        assertThat(queue.offer(notification("late"))).isFalse();
+    }
+
+    @Test
+    public void shouldDeliverQueuedNotificationsOnStop() {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        queue = new DeliveryQueue(10, 1, n -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(n.getProjectKey());
+        });
+        for (int i = 0; i < 5; i++) {
+            queue.offer(notification("p" + i));
+        }
+
+        queue.stop(2000);
+
+        assertThat(delivered).containsExactly("p0", "p1", "p2", "p3", "p4");
+    }
+
+    @Test
+    public void shouldDiscardQueuedNotificationsAfterGracePeriod() throws Exception {
+        Gate gate = new Gate();
+        queue = new DeliveryQueue(10, 1, gate.recording(new CopyOnWriteArrayList<>()));
+        gate.hold(queue);
+        queue.offer(notification("waiting"));
+
+        long start = System.nanoTime();
+        queue.stop(100);
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    public void shouldDeliverByPriorityWithAging() throws Exception {
+        AtomicLong clock = new AtomicLong();
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        Gate gate = new Gate();
+        queue = new DeliveryQueue(10, 1, gate.recording(delivered), 1000, DeliveryQueue.LoadShedding.NONE, 10, shed, clock::get);
+        gate.hold(queue);
+
+        queue.offer(notification("old ok", Priority.LOW));
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        queue.offer(notification("ok", Priority.LOW));
+        queue.offer(notification("warn", Priority.NORMAL));
+        queue.offer(notification("error", Priority.HIGH));
+        queue.offer(notification("error again", Priority.HIGH));
+        gate.release();
+
+        awaitDelivered(delivered, 5);
+        // The old OK waited 1.5 aging periods of the 2 separating it from the errors, so it goes before the warning
+        assertThat(delivered).containsExactly("error", "error again", "old ok", "warn", "ok");
+    }
+
+    @Test
+    public void shouldDropLowPriorityNotificationsAboveThreshold() throws Exception {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        Gate gate = new Gate();
+        queue = new DeliveryQueue(10, 1, gate.recording(delivered), 1000, DeliveryQueue.LoadShedding.DROP, 2, shed, System::nanoTime);
+        gate.hold(queue);
+
+        assertThat(queue.offer(notification("ok 1", Priority.LOW))).isTrue();
+        assertThat(queue.offer(notification("error", Priority.HIGH))).isTrue();
+        assertThat(queue.offer(notification("ok 2", Priority.LOW))).isTrue();
+        assertThat(queue.offer(notification("warn", Priority.NORMAL))).isTrue();
+        gate.release();
+
+        awaitDelivered(delivered, 3);
+        assertThat(delivered).containsExactly("error", "warn", "ok 1");
+        assertThat(shed.dropped).extracting(Notification::getProjectKey).containsExactly("ok 2");
+    }
+
+    @Test
+    public void shouldMakeRoomForHigherPriorityWhenFull() throws Exception {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        Gate gate = new Gate();
+        queue = new DeliveryQueue(2, 1, gate.recording(delivered), 1000, DeliveryQueue.LoadShedding.DROP, 5, shed, System::nanoTime);
+        gate.hold(queue);
+
+        queue.offer(notification("ok 1", Priority.LOW));
+        queue.offer(notification("ok 2", Priority.LOW));
+        assertThat(queue.offer(notification("ok 3", Priority.LOW))).isFalse();
+        assertThat(queue.offer(notification("error", Priority.HIGH))).isTrue();
+        gate.release();
+
+        awaitDelivered(delivered, 2);
+        assertThat(delivered).containsExactly("error", "ok 1");
+        assertThat(shed.dropped).extracting(Notification::getProjectKey).containsExactly("ok 2");
+    }
+
+    @Test
+    public void shouldMergeLowPriorityNotificationsToSameChannelAboveThreshold() throws Exception {
+        List<Notification> delivered = new CopyOnWriteArrayList<>();
+        Gate gate = new Gate();
+        queue = new DeliveryQueue(10, 1, gate.recording(delivered::add), 1000, DeliveryQueue.LoadShedding.MERGE, 1, shed, System::nanoTime);
+        gate.hold(queue);
+
+        queue.offer(notification("a", Priority.LOW));
+        queue.offer(notification("b", Priority.LOW));
+        queue.offer(new Notification("c", "hook", Payload.builder().channel("#other").text("c").build(), Priority.LOW));
+        queue.offer(notification("d", Priority.LOW));
+        gate.release();
+
+        awaitDelivered(delivered, 2);
+        assertThat(delivered).extracting(Notification::getProjectKey).containsExactly("a,b,d", "c");
+        assertThat(delivered.get(0).getPayload().getAttachments()).hasSize(3);
+        assertThat(shed.merged).extracting(Notification::getProjectKey).containsExactly("b", "d");
+        assertThat(shed.dropped).isEmpty();
+    }
+
+    private static void awaitDelivered(List<?> delivered, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (delivered.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+    }
+
+    private static Notification notification(String projectKey) {
+        return new Notification(projectKey, "hook", Payload.builder().channel("#channel").build());
+    }
+
+    private static Notification notification(String projectKey, Priority priority) {
+        return new Notification(projectKey, "hook", Payload.builder().channel("#channel").text(projectKey).build(), priority);
+    }
+
+    private static class RecordingShedListener implements DeliveryQueue.ShedListener {
+        private final List<Notification> dropped = new CopyOnWriteArrayList<>();
+        private final List<Notification> merged = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void dropped(Notification notification) {
+            dropped.add(notification);
+        }
+
+        @Override
+        public void merged(Notification notification) {
+            merged.add(notification);
+        }
+    }
+
+    /**
+     * Keeps the single worker busy with a first notification, so that the next ones wait in the queue
+     */
+    private static class Gate {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        Consumer<Notification> recording(List<String> projectKeys) {
+            return recording(n -> projectKeys.add(n.getProjectKey()));
+        }
+
+        Consumer<Notification> recording(Consumer<Notification> delivered) {
+            return n -> {
+                if ("gate".equals(n.getProjectKey())) {
+                    started.countDown();
+                    try {
+                        released.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                } else {
+                    delivered.accept(n);
+                }
+            };
+        }
+
+        void hold(DeliveryQueue queue) throws InterruptedException {
+            queue.offer(new Notification("gate", "hook", Payload.builder().channel("#gate").build(), Priority.HIGH));
+            assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DestinationTest {
+
+    private static final String HOOK = "https://hooks.slack.com/services/T/B/default";
+    private static final String OTHER_HOOK = "https://hooks.slack.com/services/T/B/other";
+
+    @Test
+    public void shouldParseChannelsAndWebhooks() {
+        assertThat(Destination.parse(" #random, @someone ,," + OTHER_HOOK + ", #random", HOOK)).containsExactly(
+                new Destination(HOOK, "#random"),
+                new Destination(HOOK, "@someone"),
+                new Destination(OTHER_HOOK, null));
+    }
+
+    @Test
+    public void shouldSkipChannelsWithoutDefaultWebhook() {
+        assertThat(Destination.parse("#random, " + OTHER_HOOK, " ")).containsExactly(new Destination(OTHER_HOOK, null));
+        assertThat(Destination.parse(null, HOOK)).isEmpty();
+    }
+
+    @Test
+    public void shouldAddressSharedRenderedPayload() {
+        Payload payload = Payload.builder()
+                .channel("#random, #general")
+                .username("user")
+                .text("text")
+                .attachments(Collections.singletonList(Attachment.builder().text("attachment").build()))
+                .build();
+
+        Payload addressed = new Destination(HOOK, "#general").address(payload);
+
+        assertThat(addressed.getChannel()).isEqualTo("#general");
+        assertThat(addressed.getText()).isEqualTo("text");
+        assertThat(addressed.getAttachments()).isSameAs(payload.getAttachments());
+        assertThat(new Destination(OTHER_HOOK, null).address(payload).getChannel()).isNull();
+        assertThat(new Destination(OTHER_HOOK, null).toString()).doesNotContain("hooks.slack.com");
+    }
+}
@@ -0,0 +1,101 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NotificationBatcherTest {
+
+    private List<Notification> sent;
+    private NotificationBatcher batcher;
+
+    @Before
+    public void before() {
+        sent = new CopyOnWriteArrayList<>();
+        batcher = new NotificationBatcher(sent::add);
+    }
+
+    @After
+    public void after() {
+        batcher.stop();
+    }
+
+    @Test
+    public void shouldMergeNotificationsToSameChannel() throws Exception {
+        batcher.add(notification("a", "#one"), 200);
+        batcher.add(notification("b", "#one"), 200);
+        batcher.add(notification("c", "#two"), 200);
+        assertThat(sent).isEmpty();
+
+        waitForSent(2);
+
+        Notification one = sent.stream().filter(n -> "#one".equals(n.getPayload().getChannel())).findFirst().get();
+        assertThat(one.getProjectKey()).isEqualTo("a,b");
+        assertThat(one.getPayload().getText()).isEqualTo("2 projects analyzed.");
+        assertThat(one.getPayload().getAttachments()).hasSize(2);
+        Attachment first = one.getPayload().getAttachments().get(0);
+        assertThat(first.getText()).isEqualTo("Project [a] analyzed.");
+        assertThat(first.getColor()).isEqualTo("good");
+        assertThat(first.getFields()).extracting("title").containsExactly("a condition");
+
+        Notification two = sent.stream().filter(n -> "#two".equals(n.getPayload().getChannel())).findFirst().get();
+        assertThat(two.getPayload().getText()).isEqualTo("Project [c] analyzed.");
+    }
+
+    @Test
+    public void shouldFlushOpenBatchesOnStop() {
+        batcher.add(notification("a", "#one"), 60_000);
+        batcher.add(notification("b", "#one"), 60_000);
+        batcher.stop();
+        assertThat(sent).hasSize(1);
+        assertThat(sent.get(0).getPayload().getAttachments()).hasSize(2);
+    }
+
+    @Test
+    public void shouldSplitBatchesExceedingSlackLimits() {
+        for (int i = 0; i < 250; i++) {
+            batcher.add(notification("project" + i, "#one"), 60_000);
+        }
+        batcher.stop();
+
+        assertThat(sent.size()).isGreaterThan(1);
+        assertThat(sent).flatExtracting(n -> n.getPayload().getAttachments()).hasSize(250);
+        for (Notification notification : sent) {
+            Payload payload = notification.getPayload();
+            assertThat(payload.getAttachments().size()).isLessThanOrEqualTo(SlackLimits.MAX_ATTACHMENTS);
+            assertThat(payload.getText()).isEqualTo(payload.getAttachments().size() + " projects analyzed.");
+            assertThat(SlackLimits.payloadLength(payload)).isLessThanOrEqualTo(SlackLimits.MAX_PAYLOAD_BYTES);
+        }
+    }
+
+    private void waitForSent(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(sent).hasSize(count);
+    }
+
+    private static Notification notification(String projectKey, String channel) {
+        Attachment conditions = Attachment.builder()
+                .color("good")
+                .fields(Collections.singletonList(Field.builder().title(projectKey + " condition").value("OK").build()))
+                .build();
+        Payload payload = Payload.builder()
+                .channel(channel)
+                .username("user")
+                .text("Project [" + projectKey + "] analyzed.")
+                .attachments(Collections.singletonList(conditions))
+                .build();
+        return new Notification(projectKey, "hook", payload);
+    }
+}
@@ -0,0 +1,90 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class OkHttpWebhookSenderTest {
+
+    private SlackWebhookStub stub;
+    private OkHttpWebhookSender sender;
+
+    @Before
+    public void before() throws IOException {
+        stub = new SlackWebhookStub();
+        sender = new OkHttpWebhookSender(1000, 1000, 500);
+    }
+
+    @After
+    public void after() {
+        sender.close();
+        stub.close();
+    }
+
+    @Test
+    public void shouldPostPayloadAsSnakeCaseJson() throws IOException {
+        DeliveryResult result = sender.send(stub.url(), Payload.builder().text("hello").iconEmoji(":ghost:").build());
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getBody()).isEqualTo("ok");
+        assertThat(stub.bodies()).hasSize(1);
+        assertThat(stub.bodies().get(0)).contains("\"text\":\"hello\"", "\"icon_emoji\":\":ghost:\"");
+    }
+
+    @Test
+    public void shouldReportSizeOfStreamedPayload() throws IOException {
+        sender.close();
+        AtomicLong size = new AtomicLong();
+        sender = new OkHttpWebhookSender(1000, 1000, 500, size::addAndGet);
+
+        sender.send(stub.url(), Payload.builder().text("hello").build());
+
+        assertThat(size.get()).isEqualTo(stub.bodies().get(0).getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void shouldReportRetryAfterOfRateLimitedResponse() throws IOException {
+        stub.respond(429, "3");
+
+        DeliveryResult result = sender.send(stub.url(), Payload.builder().text("hello").build());
+
+        assertThat(result.isRateLimited()).isTrue();
+        assertThat(result.getRetryAfterMillis()).isEqualTo(3000L);
+    }
+
+    @Test
+    public void shouldCancelCallAfterDeadline() throws IOException {
+        sender.close();
+        sender = new OkHttpWebhookSender(1000, 5000, 200);
+        stub.delay(2000);
+
+        long start = System.nanoTime();
+        try {
+            sender.send(stub.url(), Payload.builder().text("hello").build());
+            fail("Expected the call to be cancelled");
+        } catch (InterruptedIOException e) {
+            assertThat(e).hasMessageContaining("deadline");
+        }
+        assertThat(System.nanoTime() - start).isLessThan(1_500_000_000L);
+    }
+
+    @Test
+    public void shouldReuseKeepAliveConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertThat(sender.send(stub.url(), Payload.builder().text("hello " + i).build()).isSuccess()).isTrue();
+        }
+
+        assertThat(stub.bodies()).hasSize(5);
+        assertThat(stub.connectionCount()).isEqualTo(1);
+        assertThat(sender.connectionCount()).isEqualTo(1);
+    }
+}
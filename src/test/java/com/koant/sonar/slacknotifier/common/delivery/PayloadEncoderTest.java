@@ -0,0 +1,90 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadEncoderTest {
+
+    private static final String TRICKY = "<a href='x'>&=\"\\\t\b\n\r\f\u0001\u001f \u2028 \u2029 é ✓ 😀";
+
+    private final Gson gson = GsonFactory.createSnakeCase();
+    private final PayloadEncoder encoder = new PayloadEncoder();
+
+    @Test
+    public void shouldEscapeLikeGson() throws IOException {
+        Payload payload = Payload.builder()
+                .channel(TRICKY)
+                .username(TRICKY)
+                .text(TRICKY)
+                .attachments(Collections.singletonList(Attachment.builder()
+                        .color(TRICKY)
+                        .fields(Collections.singletonList(Field.builder().title(TRICKY).value(TRICKY).build()))
+                        .build()))
+                .build();
+
+        assertSameAsGson(payload);
+    }
+
+    @Test
+    public void shouldWriteEveryMemberLikeGson() throws IOException {
+        Attachment full = Attachment.builder()
+                .fallback("fallback").color("danger").pretext("pretext")
+                .authorName("author").authorLink("http://author").authorIcon("http://author/icon")
+                .title("title").titleLink("http://title").text("text")
+                .fields(Arrays.asList(
+                        Field.builder().title("short").value("1").valueShortEnough(true).build(),
+                        Field.builder().title("long").value("2").build(),
+                        Field.builder().value("no title").build(),
+                        Field.builder().build()))
+                .imageUrl("http://image").thumbUrl("http://thumb")
+                .footer("footer").footerIcon("http://footer")
+                .ts(1500000000)
+                .mrkdwnIn(Arrays.asList("text", "pretext"))
+                .build();
+        Payload payload = Payload.builder()
+                .channel("#channel").username("user").iconUrl("http://icon").iconEmoji(":ghost:")
+                .text("text")
+                .attachments(Arrays.asList(full, Attachment.builder().build(), Attachment.builder().text("only text").build()))
+                .build();
+
+        assertSameAsGson(payload);
+    }
+
+    @Test
+    public void shouldLeaveOutNullMembersLikeGson() throws IOException {
+        assertSameAsGson(Payload.builder().build());
+        assertSameAsGson(Payload.builder().channel("#channel").build());
+        assertSameAsGson(Payload.builder().text("text").build());
+        assertSameAsGson(Payload.builder().attachments(Collections.emptyList()).build());
+        assertSameAsGson(Payload.builder().username("user").attachments(Collections.singletonList(
+                Attachment.builder().color("good").build())).build());
+    }
+
+    @Test
+    public void shouldEncodeEachChannelAndUsernameWithItsOwnFragment() throws IOException {
+        for (int i = 0; i < PayloadEncoder.MAX_CACHED_FRAGMENTS + 10; i++) {
+            assertSameAsGson(Payload.builder().channel("#channel-" + (i % 3)).username("user " + i).text("text").build());
+        }
+        for (String color : Arrays.asList("good", "warning", "danger", "good")) {
+            assertSameAsGson(Payload.builder().channel("#channel").text(color)
+                    .attachments(Collections.singletonList(Attachment.builder().color(color).build())).build());
+        }
+    }
+
+    private void assertSameAsGson(Payload payload) throws IOException {
+        Buffer sink = new Buffer();
+        encoder.encode(payload, sink);
+        assertThat(sink.readUtf8()).isEqualTo(gson.toJson(payload));
+    }
+}
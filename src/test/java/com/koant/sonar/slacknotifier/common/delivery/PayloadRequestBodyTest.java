@@ -0,0 +1,57 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import okio.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadRequestBodyTest {
+
+    private final Gson gson = GsonFactory.createSnakeCase();
+
+    @Test
+    public void shouldWriteSameJsonAsGsonAndReportItsSize() throws IOException {
+        Payload payload = payload();
+        AtomicLong size = new AtomicLong(-1);
+        Buffer sink = new Buffer();
+
+        new PayloadRequestBody(new PayloadEncoder(), payload, size::set).writeTo(sink);
+
+        String expected = gson.toJson(payload);
+        assertThat(sink.readUtf8()).isEqualTo(expected);
+        assertThat(size.get()).isEqualTo(expected.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void shouldBeStreamedWithUnknownLength() {
+        PayloadRequestBody body = new PayloadRequestBody(new PayloadEncoder(), payload(), bytes -> { });
+
+        assertThat(body.contentLength()).isEqualTo(-1L);
+        assertThat(body.contentType().toString()).isEqualTo("application/json; charset=utf-8");
+    }
+
+    private static Payload payload() {
+        List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            fields.add(Field.builder().title("Coverage on New Code ✓ " + i + ": ERROR").value("75.51%, error if <80.0%").build());
+        }
+        return Payload.builder()
+                .channel("#channel")
+                .username("CKSSlackNotifier")
+                .text("Project [Project Name] analyzed. See http://localhost:9000/dashboard?id=project:key. Quality gate status: ERROR")
+                .attachments(Collections.singletonList(Attachment.builder().color("danger").fields(fields).build()))
+                .build();
+    }
+}
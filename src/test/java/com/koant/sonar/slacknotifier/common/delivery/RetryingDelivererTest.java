@@ -0,0 +1,122 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetryingDelivererTest {
+
+    private static final Notification NOTIFICATION = new Notification("project:key", "hook", Payload.builder().channel("#channel").build());
+
+    private final WebhookRateLimiters unlimited = new WebhookRateLimiters(1000);
+    private final RetryPolicy quickRetries = new RetryPolicy(3, 1, 5);
+
+    @Test
+    public void shouldRetryServerErrorsUntilSuccess() throws Exception {
+        ScriptedSender sender = new ScriptedSender(result(500), result(503), result(200));
+        assertThat(new RetryingDeliverer(sender, quickRetries, unlimited).deliver(NOTIFICATION)).isTrue();
+        assertThat(sender.attempts).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxAttempts() throws Exception {
+        ScriptedSender sender = new ScriptedSender(null, null, null, result(200));
+        assertThat(new RetryingDeliverer(sender, quickRetries, unlimited).deliver(NOTIFICATION)).isFalse();
+        assertThat(sender.attempts).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotRetryClientErrors() throws Exception {
+        ScriptedSender sender = new ScriptedSender(result(404), result(200));
+        assertThat(new RetryingDeliverer(sender, quickRetries, unlimited).deliver(NOTIFICATION)).isFalse();
+        assertThat(sender.attempts).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldHonorRetryAfter() throws Exception {
+        ScriptedSender sender = new ScriptedSender(new DeliveryResult(429, "rate_limited", 150), result(200));
+        long start = System.nanoTime();
+        assertThat(new RetryingDeliverer(sender, new RetryPolicy(3, 1, 1000), unlimited).deliver(NOTIFICATION)).isTrue();
+        assertThat((System.nanoTime() - start) / 1_000_000).isGreaterThanOrEqualTo(150);
+    }
+
+    @Test
+    public void shouldCapRetryAfterAtMaxDelay() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+        assertThat(policy.delayMillis(1, new DeliveryResult(429, "rate_limited", 3_600_000))).isEqualTo(1000);
+    }
+
+    @Test
+    public void backoffShouldStayWithinCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.delayMillis(1, null)).isBetween(0L, 100L);
+            assertThat(policy.delayMillis(3, result(500))).isBetween(0L, 400L);
+            assertThat(policy.delayMillis(9, null)).isBetween(0L, 1000L);
+            assertThat(policy.delayMillis(1, result(429))).isEqualTo(RetryPolicy.DEFAULT_RATE_LIMITED_DELAY_MS);
+        }
+    }
+
+    @Test
+    public void shouldParkInsteadOfAttemptingWhileCircuitIsOpen() throws Exception {
+        ScriptedSender sender = new ScriptedSender(result(500), result(500), result(500), result(200));
+        CircuitBreakers breakers = new CircuitBreakers(2, 50, 60_000, (name, from, to) -> { });
+        List<Notification> parked = new ArrayList<>();
+        RetryingDeliverer deliverer = new RetryingDeliverer(sender, quickRetries, unlimited, breakers, new DeliveryListener() {
+            @Override
+            public void parked(Notification notification) {
+                parked.add(notification);
+            }
+        });
+
+        assertThat(deliverer.deliver(NOTIFICATION)).isFalse();
+        assertThat(deliverer.deliver(NOTIFICATION)).isFalse();
+
+        assertThat(sender.attempts).isEqualTo(2);
+        assertThat(parked).containsExactly(NOTIFICATION, NOTIFICATION);
+    }
+
+    @Test
+    public void tokenBucketShouldSpaceOutReservations() {
+        TokenBucket bucket = new TokenBucket(2, 1);
+        long now = System.nanoTime();
+        assertThat(bucket.reserve(now)).isEqualTo(0);
+        assertThat(bucket.reserve(now)).isEqualTo(500_000_000L);
+        assertThat(bucket.reserve(now)).isEqualTo(1_000_000_000L);
+    }
+
+    private static DeliveryResult result(int code) {
+        return new DeliveryResult(code, "", DeliveryResult.NO_RETRY_AFTER);
+    }
+
+    /**
+     * Returns the given results in order, a null result is thrown as an IOException.
+     */
+    private static class ScriptedSender implements WebhookSender {
+        private final Deque<DeliveryResult> results;
+        int attempts;
+
+        ScriptedSender(DeliveryResult... results) {
+            this.results = new ArrayDeque<>();
+            Arrays.stream(results).forEach(r -> this.results.add(r == null ? new DeliveryResult(-1, null, -1) : r));
+        }
+
+        @Override
+        public DeliveryResult send(String hook, Payload payload) throws IOException {
+            attempts++;
+            DeliveryResult result = results.poll();
+            if (result.getCode() == -1) {
+                throw new IOException("connection refused");
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlackLimitsTest {
+
+    private static final String AWKWARD = "<a href='x'>&amp;</a> \"quoted\" \\ tab\t line\n é 漢字 😀  ";
+
+    private final Gson gson = GsonFactory.createSnakeCase();
+
+    @Test
+    public void shouldBoundTheEncodedSizeOfStrings() {
+        assertThat(SlackLimits.encodedLength("plain")).isEqualTo(gson.toJson("plain").getBytes(StandardCharsets.UTF_8).length);
+        assertThat(SlackLimits.encodedLength(AWKWARD)).isGreaterThanOrEqualTo(encoded(AWKWARD));
+    }
+
+    @Test
+    public void shouldBoundTheEncodedSizeOfPayloads() {
+        List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            fields.add(Field.builder().title(AWKWARD + i).value(i % 2 == 0 ? AWKWARD : "").valueShortEnough(i % 3 == 0).build());
+        }
+        List<Attachment> attachments = new ArrayList<>();
+        attachments.add(Attachment.builder().color("danger").fields(fields).build());
+        attachments.add(Attachment.builder().text(AWKWARD).fallback(AWKWARD).title(AWKWARD).build());
+        attachments.add(Attachment.builder().fields(Collections.emptyList()).build());
+        Payload payload = Payload.builder()
+                .channel("#random")
+                .username("user")
+                .text(AWKWARD)
+                .iconEmoji(":ghost:")
+                .attachments(attachments)
+                .build();
+
+        assertThat(SlackLimits.payloadLength(payload)).isGreaterThanOrEqualTo(encoded(payload));
+        assertThat(SlackLimits.payloadLength(Payload.builder().build())).isGreaterThanOrEqualTo(encoded(Payload.builder().build()));
+    }
+
+    @Test
+    public void shouldTruncateWithinBudget() {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longText.append(AWKWARD);
+        }
+        String truncated = SlackLimits.truncate(longText.toString(), 500);
+        assertThat(truncated).endsWith("…");
+        assertThat(SlackLimits.encodedLength(truncated)).isLessThanOrEqualTo(500);
+        assertThat(encoded(truncated)).isLessThanOrEqualTo(500);
+        assertThat(SlackLimits.truncate("short", 500)).isEqualTo("short");
+        assertThat(SlackLimits.truncate(null, 500)).isNull();
+    }
+
+    private int encoded(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,159 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.github.seratch.jslack.api.webhook.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlackWebApiSenderTest {
+
+    private static final String TOKEN = "xoxb-test";
+
+    private SlackWebApiStub stub;
+    private OkHttpWebhookSender transport;
+    private List<String> webhookPosts;
+
+    @Before
+    public void before() throws IOException {
+        stub = new SlackWebApiStub(TOKEN);
+        transport = new OkHttpWebhookSender(1000, 1000, 1000);
+        webhookPosts = new ArrayList<>();
+    }
+
+    @After
+    public void after() {
+        transport.close();
+        stub.close();
+    }
+
+    @Test
+    public void shouldPostFirstNotificationAndUpdateItWithTheNextOnes() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 10);
+
+        assertThat(sender.send(notification("project", "#dev", "first")).isSuccess()).isTrue();
+        assertThat(sender.send(notification("project", "#dev", "second")).isSuccess()).isTrue();
+
+        assertThat(stub.calls()).extracting(SlackWebApiStub.Call::getMethod).containsExactly("chat.postMessage", "chat.update");
+        SlackWebApiStub.Call update = stub.calls().get(1);
+        assertThat(update.argument("channel")).isEqualTo(SlackWebApiStub.CHANNEL_ID);
+        assertThat(update.argument("ts")).isEqualTo(stub.messages().keySet().iterator().next());
+        assertThat(stub.messages().values()).containsExactly("second");
+    }
+
+    @Test
+    public void shouldReplyInThreadOfFirstNotification() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.THREAD, 10);
+
+        sender.send(notification("project", "#dev", "first"));
+        sender.send(notification("project", "#dev", "second"));
+
+        assertThat(stub.calls()).extracting(SlackWebApiStub.Call::getMethod).containsExactly("chat.postMessage", "chat.postMessage");
+        assertThat(stub.calls().get(0).argument("thread_ts")).isNull();
+        assertThat(stub.calls().get(1).argument("thread_ts")).isEqualTo("1500000000.000001");
+        assertThat(stub.messages()).hasSize(2);
+    }
+
+    @Test
+    public void shouldKeepOneMessagePerProjectAndChannel() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 10);
+
+        sender.send(notification("a", "#dev", "a"));
+        sender.send(notification("b", "#dev", "b"));
+        sender.send(notification("a", "#ops", "a"));
+        sender.send(notification("a", "#dev", "a again"));
+
+        assertThat(stub.calls()).extracting(SlackWebApiStub.Call::getMethod)
+                .containsExactly("chat.postMessage", "chat.postMessage", "chat.postMessage", "chat.update");
+        assertThat(stub.messages().values()).containsOnly("a again", "b", "a");
+    }
+
+    @Test
+    public void shouldPostNewMessageIfRememberedOneWasDeleted() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 10);
+        sender.send(notification("project", "#dev", "first"));
+        stub.delete("1500000000.000001");
+
+        DeliveryResult result = sender.send(notification("project", "#dev", "second"));
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(stub.calls()).extracting(SlackWebApiStub.Call::getMethod)
+                .containsExactly("chat.postMessage", "chat.update", "chat.postMessage");
+        assertThat(stub.messages().values()).containsExactly("second");
+
+        sender.send(notification("project", "#dev", "third"));
+        assertThat(stub.messages().values()).containsExactly("third");
+    }
+
+    @Test
+    public void shouldForgetLeastRecentlyNotifiedProjectsWhenFull() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 2);
+
+        sender.send(notification("a", "#dev", "a"));
+        sender.send(notification("b", "#dev", "b"));
+        sender.send(notification("c", "#dev", "c"));
+        sender.send(notification("a", "#dev", "a again"));
+
+        assertThat(sender.rememberedMessages()).isEqualTo(2);
+        assertThat(stub.calls()).extracting(SlackWebApiStub.Call::getMethod).containsOnly("chat.postMessage");
+    }
+
+    @Test
+    public void shouldMapWebApiErrorsToRetryableOrPermanentResults() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 10);
+
+        stub.fail("internal_error");
+        DeliveryResult transientError = sender.send(notification("project", "#dev", "text"));
+        stub.fail("channel_not_found");
+        DeliveryResult permanentError = sender.send(notification("project", "#dev", "text"));
+
+        assertThat(transientError.isSuccess()).isFalse();
+        assertThat(transientError.isRetryable()).isTrue();
+        assertThat(permanentError.isSuccess()).isFalse();
+        assertThat(permanentError.isRetryable()).isFalse();
+        assertThat(permanentError.getBody()).contains("channel_not_found");
+        assertThat(sender.rememberedMessages()).isZero();
+    }
+
+    @Test
+    public void shouldRejectInvalidToken() throws IOException {
+        SlackWebApiSender sender = new SlackWebApiSender(this::postToWebhook, transport, stub.url(), "revoked",
+                SlackWebApiSender.Mode.UPDATE, 10, TimeUnit.HOURS.toMillis(1));
+
+        DeliveryResult result = sender.send(notification("project", "#dev", "text"));
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.isRetryable()).isFalse();
+    }
+
+    @Test
+    public void shouldHandNotificationsToOtherHooksToWebhookSender() throws IOException {
+        SlackWebApiSender sender = sender(SlackWebApiSender.Mode.UPDATE, 10);
+
+        DeliveryResult result = sender.send(new Notification("project", "https://hooks.slack.com/services/T/B/X",
+                Payload.builder().text("text").build()));
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(webhookPosts).containsExactly("https://hooks.slack.com/services/T/B/X");
+        assertThat(stub.calls()).isEmpty();
+    }
+
+    private SlackWebApiSender sender(SlackWebApiSender.Mode mode, int maxMessages) {
+        return new SlackWebApiSender(this::postToWebhook, transport, stub.url(), TOKEN, mode, maxMessages, TimeUnit.HOURS.toMillis(1));
+    }
+
+    private DeliveryResult postToWebhook(String hook, Payload payload) {
+        webhookPosts.add(hook);
+        return new DeliveryResult(200, "ok", DeliveryResult.NO_RETRY_AFTER);
+    }
+
+    private Notification notification(String projectKey, String channel, String text) {
+        return new Notification(projectKey, stub.url(), Payload.builder().channel(channel).text(text).build());
+    }
+}
@@ -0,0 +1,168 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded stand-in for the Slack Web API chat methods: {@code chat.postMessage} and {@code chat.update} check the
+ * bearer token, keep the text of the messages by timestamp, and answer like Slack does. Channel names are answered
+ * with the id {@value #CHANNEL_ID}.
+ */
+public class SlackWebApiStub implements AutoCloseable {
+
+    public static final String CHANNEL_ID = "C0000STUB";
+
+    private final HttpServer server;
+    private final String token;
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+    private final Map<String, String> messages = new ConcurrentHashMap<>();
+    private final AtomicInteger lastTs = new AtomicInteger();
+    private volatile String error;
+
+    public SlackWebApiStub(String token) throws IOException {
+        this.token = token;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/";
+    }
+
+    /**
+     * Answers every later call with ok false and the given error, null to answer normally again
+     */
+    public SlackWebApiStub fail(String error) {
+        this.error = error;
+        return this;
+    }
+
+    /**
+     * Deletes a message, as a user would in Slack
+     */
+    public void delete(String ts) {
+        messages.remove(ts);
+    }
+
+    public List<Call> calls() {
+        return calls;
+    }
+
+    /**
+     * @return the text of the messages currently in the channel, by timestamp
+     */
+    public Map<String, String> messages() {
+        return messages;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestURI().getPath().substring("/api/".length());
+        JsonObject request = new JsonParser().parse(read(exchange.getRequestBody())).getAsJsonObject();
+        calls.add(new Call(method, request));
+        JsonObject response = new JsonObject();
+        if (!("Bearer " + token).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            fail(response, "invalid_auth");
+        } else if (error != null) {
+            fail(response, error);
+        } else if ("chat.postMessage".equals(method)) {
+            postMessage(request, response);
+        } else if ("chat.update".equals(method)) {
+            update(request, response);
+        } else {
+            fail(response, "unknown_method");
+        }
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void postMessage(JsonObject request, JsonObject response) {
+        if (request.has("thread_ts") && !messages.containsKey(request.get("thread_ts").getAsString())) {
+            fail(response, "thread_not_found");
+            return;
+        }
+        String ts = "1500000000." + String.format(Locale.ENGLISH, "%06d", lastTs.incrementAndGet());
+        messages.put(ts, request.get("text").getAsString());
+        ok(response, ts);
+    }
+
+    private void update(JsonObject request, JsonObject response) {
+        String ts = request.get("ts").getAsString();
+        if (!CHANNEL_ID.equals(request.get("channel").getAsString())) {
+            fail(response, "channel_not_found");
+        } else if (!messages.containsKey(ts)) {
+            fail(response, "message_not_found");
+        } else {
+            messages.put(ts, request.get("text").getAsString());
+            ok(response, ts);
+        }
+    }
+
+    private static void ok(JsonObject response, String ts) {
+        response.addProperty("ok", true);
+        response.addProperty("channel", CHANNEL_ID);
+        response.addProperty("ts", ts);
+    }
+
+    private static void fail(JsonObject response, String error) {
+        response.addProperty("ok", false);
+        response.addProperty("error", error);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * A Web API method called, with its JSON arguments
+     */
+    public static final class Call {
+        private final String method;
+        private final JsonObject arguments;
+
+        private Call(String method, JsonObject arguments) {
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String argument(String name) {
+            return arguments.has(name) ? arguments.get(name).getAsString() : null;
+        }
+    }
+}
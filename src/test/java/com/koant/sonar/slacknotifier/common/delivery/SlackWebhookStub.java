@@ -0,0 +1,183 @@
+package com.koant.sonar.slacknotifier.common.delivery;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded stand-in for a Slack incoming webhook: records the posted bodies and answers with a configurable
+ * status, Retry-After header and delay.
+ * <p>
+ * For load tests, failures can be injected at random: rate limited responses with a Retry-After header,
+ * server errors, and responses held back long enough for the client to time out.
+ * </p>
+ */
+public class SlackWebhookStub implements AutoCloseable {
+
+    static {
+        // Without it, the JDK server's separate header and body writes wait on delayed acknowledgements
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile int status = 200;
+    private volatile String retryAfter;
+    private volatile long delayMillis;
+    private volatile double rateLimitedShare;
+    private volatile String rateLimitedRetryAfter;
+    private volatile double serverErrorShare;
+    private volatile double timeoutShare;
+    private volatile long timeoutMillis;
+    private volatile boolean recordBodies = true;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+
+    public SlackWebhookStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/services/T000/B000/XXXX";
+    }
+
+    public SlackWebhookStub respond(int status, String retryAfter) {
+        this.status = status;
+        this.retryAfter = retryAfter;
+        return this;
+    }
+
+    public SlackWebhookStub delay(long delayMillis) {
+        this.delayMillis = delayMillis;
+        return this;
+    }
+
+    /**
+     * Answers the given share of requests with 429 and the Retry-After header
+     */
+    public SlackWebhookStub rateLimit(double share, String retryAfter) {
+        this.rateLimitedShare = share;
+        this.rateLimitedRetryAfter = retryAfter;
+        return this;
+    }
+
+    /**
+     * Answers the given share of requests with 500
+     */
+    public SlackWebhookStub serverErrors(double share) {
+        this.serverErrorShare = share;
+        return this;
+    }
+
+    /**
+     * Holds the response to the given share of requests for the given time
+     */
+    public SlackWebhookStub timeouts(double share, long timeoutMillis) {
+        this.timeoutShare = share;
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Stops recording request bodies, to keep memory flat during load tests
+     */
+    public SlackWebhookStub discardBodies() {
+        this.recordBodies = false;
+        return this;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests answered with 200, not counting the ones held back to time out
+     */
+    public int acceptedCount() {
+        return accepted.get();
+    }
+
+    public List<String> bodies() {
+        return bodies;
+    }
+
+    /**
+     * @return the number of distinct client connections seen
+     */
+    public int connectionCount() {
+        return clientPorts.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        String body = read(exchange.getRequestBody());
+        if (recordBodies) {
+            bodies.add(body);
+        }
+        int responseStatus = status;
+        String responseRetryAfter = retryAfter;
+        long responseDelay = delayMillis;
+        boolean heldBack = false;
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < rateLimitedShare) {
+            responseStatus = 429;
+            responseRetryAfter = rateLimitedRetryAfter;
+        } else if (dice < rateLimitedShare + serverErrorShare) {
+            responseStatus = 500;
+        } else if (dice < rateLimitedShare + serverErrorShare + timeoutShare) {
+            responseDelay = timeoutMillis;
+            heldBack = true;
+        }
+        if (responseDelay > 0) {
+            try {
+                Thread.sleep(responseDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (responseRetryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", responseRetryAfter);
+        }
+        if (responseStatus == 200 && !heldBack) {
+            accepted.incrementAndGet();
+        }
+        byte[] response = (responseStatus == 200 ? "ok" : "error").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(responseStatus, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
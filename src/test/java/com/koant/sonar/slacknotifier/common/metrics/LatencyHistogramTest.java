@@ -0,0 +1,46 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramShouldReportZeros() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getP99Millis()).isZero();
+    }
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(100);
+        assertThat(snapshot.getMeanMillis()).isCloseTo(50.5, within(0.01));
+        assertThat(snapshot.getP50Millis()).isBetween(50.0, 50 * 1.125);
+        assertThat(snapshot.getP95Millis()).isBetween(95.0, 95 * 1.125);
+        assertThat(snapshot.getP99Millis()).isBetween(99.0, 100.0);
+        assertThat(snapshot.getMaxMillis()).isEqualTo(100.0);
+    }
+
+    @Test
+    public void bucketsShouldCoverValuesContiguously() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertThat(LatencyHistogram.bucketUpperBound(index)).isGreaterThanOrEqualTo(micros);
+            if (index > 0) {
+                assertThat(LatencyHistogram.bucketUpperBound(index - 1)).isLessThan(micros);
+            }
+        }
+    }
+}
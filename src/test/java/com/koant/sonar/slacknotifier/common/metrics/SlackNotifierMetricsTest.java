@@ -0,0 +1,49 @@
+package com.koant.sonar.slacknotifier.common.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlackNotifierMetricsTest {
+
+    private final SlackNotifierMetrics metrics = new SlackNotifierMetrics();
+
+    @After
+    public void after() {
+        metrics.unregister();
+    }
+
+    @Test
+    public void shouldPublishThroughJmx() throws Exception {
+        metrics.register();
+        metrics.recordWebhookRoundTrip(TimeUnit.MILLISECONDS.toNanos(120));
+        metrics.skipped(SkipReason.QUALITY_GATE_OK);
+        metrics.backlog(() -> 7);
+        metrics.recordPayloadSize(300);
+        metrics.recordPayloadSize(1200);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SlackNotifierMetrics.OBJECT_NAME);
+
+        CompositeData latency = (CompositeData) server.getAttribute(name, "WebhookLatency");
+        assertThat(latency.get("count")).isEqualTo(1L);
+        assertThat((Double) latency.get("maxMillis")).isEqualTo(120.0);
+        TabularData skipped = (TabularData) server.getAttribute(name, "SkippedCounts");
+        assertThat(skipped.get(new Object[] {SkipReason.QUALITY_GATE_OK.name()}).get("value")).isEqualTo(1L);
+        assertThat(server.getAttribute(name, "Backlog")).isEqualTo(7);
+        assertThat(server.getAttribute(name, "PayloadBytesSent")).isEqualTo(1500L);
+        assertThat(server.getAttribute(name, "LargestPayloadBytes")).isEqualTo(1200L);
+
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertThat(metrics.getWebhookLatency().getCount()).isZero();
+        assertThat(metrics.getLargestPayloadBytes()).isZero();
+    }
+}
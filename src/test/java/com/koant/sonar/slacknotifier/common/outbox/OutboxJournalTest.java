@@ -0,0 +1,235 @@
+package com.koant.sonar.slacknotifier.common.outbox;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.koant.sonar.slacknotifier.common.delivery.Notification;
+import com.koant.sonar.slacknotifier.common.delivery.Priority;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private OutboxJournal journal;
+
+    @Before
+    public void before() throws IOException {
+        directory = temporaryFolder.getRoot().toPath();
+        journal = OutboxJournal.open(directory);
+    }
+
+    @After
+    public void after() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void shouldReplayUndeliveredNotifications() throws IOException {
+        Notification first = journal.append(notification("first"));
+        Notification second = journal.append(notification("second"));
+        journal.append(notification("third"));
+        journal.markDelivered(second.getOutboxIds());
+
+        reopen();
+
+        List<Notification> undelivered = undelivered();
+        assertThat(undelivered).extracting(Notification::getProjectKey).containsExactly("first", "third");
+        assertThat(undelivered.get(0).getOutboxIds()).isEqualTo(first.getOutboxIds());
+        assertThat(undelivered.get(0).getHook()).isEqualTo("hook");
+        assertThat(undelivered.get(0).getPayload()).isEqualTo(notification("first").getPayload());
+    }
+
+    @Test
+    public void shouldReplayThePriorityOfTheNotifications() throws IOException {
+        journal.append(new Notification("high", "hook", notification("high").getPayload(), Priority.HIGH));
+        journal.append(notification("normal"));
+
+        reopen();
+
+        assertThat(undelivered()).extracting(Notification::getPriority).containsExactly(Priority.HIGH, Priority.NORMAL);
+    }
+
+    @Test
+    public void shouldNotReuseIdsAfterReopen() throws IOException {
+        Notification first = journal.append(notification("first"));
+        reopen();
+        Notification second = journal.append(notification("second"));
+        assertThat(second.getOutboxIds().get(0)).isGreaterThan(first.getOutboxIds().get(0));
+    }
+
+    @Test
+    public void shouldIgnoreTornTail() throws IOException {
+        journal.append(notification("first"));
+        journal.append(notification("second"));
+        journal.close();
+        Path segment = segments().get(segments().size() - 1);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        journal = OutboxJournal.open(directory);
+
+        assertThat(undelivered()).extracting(Notification::getProjectKey).containsExactly("first");
+    }
+
+    @Test
+    public void shouldDeleteDeliveredSegments() throws IOException {
+        reopen(256);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.addAll(journal.append(notification("p" + i)).getOutboxIds());
+        }
+        assertThat(segments().size()).isGreaterThan(5);
+
+        journal.markDelivered(ids);
+        journal.append(notification("last"));
+
+        // The segment holding "last" and the empty current segment it rolled over to
+        assertThat(segments().size()).isLessThanOrEqualTo(2);
+        assertThat(journal.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepTombstonesWhileTheirRecordsAreOnDisk() throws IOException {
+        reopen(2048);
+        Notification a = journal.append(notification("a"));
+        journal.append(notification("b"));
+        while (segments().size() < 2) {
+            journal.append(notification("b" + journal.size()));
+        }
+        // The tombstone of a lands in the second segment, while b keeps the first one on disk
+        journal.markDelivered(a.getOutboxIds());
+        List<Long> second = new ArrayList<>();
+        while (segments().size() < 3) {
+            second.addAll(journal.append(notification("c" + second.size())).getOutboxIds());
+        }
+        journal.markDelivered(second);
+
+        reopen(2048);
+
+        assertThat(undelivered()).extracting(Notification::getProjectKey).doesNotContain("a").contains("b");
+    }
+
+    @Test
+    public void shouldCompactMostlyDeliveredSegments() throws IOException {
+        reopen(2048);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.addAll(journal.append(notification("p" + i)).getOutboxIds());
+        }
+        // Keep p0 undelivered, it is copied forward when its segment is compacted
+        journal.markDelivered(ids.subList(1, ids.size()));
+        for (int i = 0; i < 20; i++) {
+            journal.markDelivered(journal.append(notification("q" + i)).getOutboxIds());
+        }
+
+        reopen(2048);
+
+        assertThat(undelivered()).extracting(Notification::getProjectKey).containsExactly("p0");
+        assertThat(segments().size()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void shouldGroupConcurrentAppends() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Notification>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String key = "p" + i;
+            futures.add(executor.submit(() -> journal.append(notification(key))));
+        }
+        for (Future<Notification> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        reopen();
+
+        assertThat(undelivered()).hasSize(200);
+    }
+
+    @Test
+    public void shouldKeepHooksOutOfTheSegments() throws IOException {
+        String hook = "https://hooks.slack.com/services/T000/B000/secret-token";
+        journal.append(new Notification("first", hook, notification("first").getPayload()));
+        journal.append(notification("second"));
+        journal.close();
+        for (Path segment : segments()) {
+            assertThat(new String(Files.readAllBytes(segment), StandardCharsets.UTF_8)).doesNotContain("secret-token");
+        }
+
+        journal = OutboxJournal.open(directory);
+        List<Notification> undelivered = journal.undelivered(Collections.singleton(hook));
+        assertThat(undelivered).extracting(Notification::getHook).containsExactly(hook);
+
+        // The notification to the hook that is no longer configured was settled
+        reopen();
+        assertThat(journal.undelivered(Collections.singleton(hook))).extracting(Notification::getProjectKey).containsExactly("first");
+    }
+
+    @Test
+    public void shouldOnlyLetTheOwnerReadTheSegments() throws IOException {
+        Assume.assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        journal.append(notification("first"));
+
+        for (Path segment : segments()) {
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(segment))).isEqualTo("rw-------");
+        }
+    }
+
+    private List<Notification> undelivered() {
+        return journal.undelivered(Collections.singleton("hook"));
+    }
+
+    private void reopen() throws IOException {
+        reopen(OutboxJournal.DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    private void reopen(long maxSegmentBytes) throws IOException {
+        journal.close();
+        journal = OutboxJournal.open(directory, maxSegmentBytes);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Notification notification(String projectKey) {
+        Attachment attachment = Attachment.builder()
+                .color("danger")
+                .fields(Collections.singletonList(Field.builder().title("Bugs: ERROR").value("1, error if >0").build()))
+                .build();
+        return new Notification(projectKey, "hook", Payload.builder()
+                .channel("#channel")
+                .username("user")
+                .text("Project [" + projectKey + "] analyzed.")
+                .attachments(Collections.singletonList(attachment))
+                .build());
+    }
+}
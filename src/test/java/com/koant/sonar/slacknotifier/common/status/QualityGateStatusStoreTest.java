@@ -0,0 +1,64 @@
+package com.koant.sonar.slacknotifier.common.status;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class QualityGateStatusStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void shouldReturnPreviousStatus() throws IOException {
+        QualityGateStatusStore store = QualityGateStatusStore.inMemory();
+
+        assertThat(store.put("a", QualityGate.Status.OK)).isEmpty();
+        assertThat(store.put("a", QualityGate.Status.ERROR)).contains(QualityGate.Status.OK);
+        assertThat(store.put("b", QualityGate.Status.WARN)).isEmpty();
+        assertThat(store.get("a")).contains(QualityGate.Status.ERROR);
+        assertThat(store.get("c")).isEmpty();
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldGrowAndSurviveReopening() throws IOException {
+        Path file = temp.getRoot().toPath().resolve("status").resolve("quality-gates.tbl");
+        int projects = 100_000;
+        QualityGateStatusStore store = QualityGateStatusStore.open(file);
+        for (int i = 0; i < projects; i++) {
+            store.put("project:" + i, QualityGate.Status.values()[i % 3]);
+        }
+        assertThat(store.capacity()).isGreaterThanOrEqualTo(2 * projects);
+        store.close();
+
+        QualityGateStatusStore reopened = QualityGateStatusStore.open(file);
+        assertThat(reopened.size()).isEqualTo(projects);
+        for (int i = 0; i < projects; i++) {
+            assertThat(reopened.get("project:" + i)).isEqualTo(Optional.of(QualityGate.Status.values()[i % 3]));
+        }
+        // 16 bytes per project at most
+        assertThat(Files.size(file)).isLessThanOrEqualTo(16L * reopened.capacity() / 2 + 16);
+        reopened.close();
+    }
+
+    @Test
+    public void shouldStartOverFromInvalidFile() throws IOException {
+        Path file = temp.newFile("quality-gates.tbl").toPath();
+        Files.write(file, new byte[] {1, 2, 3});
+
+        QualityGateStatusStore store = QualityGateStatusStore.open(file);
+
+        assertThat(store.size()).isZero();
+        assertThat(store.put("a", QualityGate.Status.OK)).isEmpty();
+        store.close();
+    }
+}
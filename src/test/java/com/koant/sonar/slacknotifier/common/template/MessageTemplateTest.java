@@ -0,0 +1,41 @@
+package com.koant.sonar.slacknotifier.common.template;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageTemplateTest {
+
+    private static final List<String> VARIABLES = Arrays.asList("project.name", "qualityGate.status");
+
+    @Test
+    public void shouldRenderPlaceholders() {
+        MessageTemplate template = MessageTemplate.compile("${project.name} is ${qualityGate.status}, ${project.name}!", VARIABLES);
+
+        assertThat(template.render("Foo", "OK")).isEqualTo("Foo is OK, Foo!");
+        assertThat(template.render("Bar", null)).isEqualTo("Bar is , Bar!");
+    }
+
+    @Test
+    public void shouldKeepUnknownAndUnclosedPlaceholdersAndEscapedDollars() {
+        assertThat(MessageTemplate.compile("${unknown} costs $$5 ${project.name}", VARIABLES).render("Foo", "OK"))
+                .isEqualTo("${unknown} costs $5 Foo");
+        assertThat(MessageTemplate.compile("Status ${qualityGate.status", VARIABLES).render("Foo", "OK"))
+                .isEqualTo("Status ${qualityGate.status");
+        assertThat(MessageTemplate.compile("Ends with $", VARIABLES).render("Foo", "OK"))
+                .isEqualTo("Ends with $");
+    }
+
+    @Test
+    public void shouldCompileEachTemplateTextOnce() {
+        TemplateCache cache = new TemplateCache(VARIABLES);
+
+        MessageTemplate first = cache.get("${project.name}");
+        assertThat(cache.get("${project.name}")).isSameAs(first);
+        assertThat(cache.get("[${project.name}]")).isNotSameAs(first);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+}
@@ -21,6 +21,20 @@ public class Analyses {
             .setStatus(CeTask.Status.SUCCESS)
             .build();
 
+    private static final String[] SYNTHETIC_METRICS = {
+            CoreMetrics.NEW_BUGS_KEY,
+            CoreMetrics.NEW_VULNERABILITIES_KEY,
+            CoreMetrics.NEW_COVERAGE_KEY,
+            CoreMetrics.NEW_SQALE_DEBT_RATIO_KEY,
+            CoreMetrics.VIOLATIONS_KEY
+    };
+    private static final QualityGate.EvaluationStatus[] SYNTHETIC_STATUSES = {
+            QualityGate.EvaluationStatus.OK,
+            QualityGate.EvaluationStatus.ERROR,
+            QualityGate.EvaluationStatus.WARN,
+            QualityGate.EvaluationStatus.NO_VALUE
+    };
+
     public static void simple(PostProjectAnalysisTask analysisTask) {
         PostProjectAnalysisTaskTester.of(analysisTask)
                 .withCeTask(CE_TASK)
@@ -140,6 +154,53 @@ public class Analyses {
     }
 
 
+    /**
+     * Synthetic analysis of the given project with a quality gate of the given number of conditions,
+     * cycling through a few core metrics and evaluation statuses.
+     */
+    public static void qualityGateWithConditions(PostProjectAnalysisTask analysisTask, String projectKey,
+                                                 QualityGate.Status status, int conditionCount) {
+        QualityGateBuilder qualityGate = newQualityGateBuilder()
+                .setId("id")
+                .setName("name")
+                .setStatus(status);
+        for (int i = 0; i < conditionCount; i++) {
+            String metricKey = SYNTHETIC_METRICS[i % SYNTHETIC_METRICS.length];
+            QualityGate.EvaluationStatus evaluationStatus = SYNTHETIC_STATUSES[i % SYNTHETIC_STATUSES.length];
+            ConditionBuilder condition = newConditionBuilder()
+                    .setMetricKey(metricKey)
+                    .setOperator(CoreMetrics.NEW_COVERAGE_KEY.equals(metricKey) ? QualityGate.Operator.LESS_THAN : QualityGate.Operator.GREATER_THAN)
+                    .setWarningThreshold(i % 2 == 0 ? "5" : null)
+                    .setErrorThreshold("10")
+                    .setOnLeakPeriod(true);
+            qualityGate.add(QualityGate.EvaluationStatus.NO_VALUE.equals(evaluationStatus)
+                    ? condition.buildNoValue()
+                    : condition.build(evaluationStatus, String.valueOf(i * 1.5)));
+        }
+        PostProjectAnalysisTaskTester.of(analysisTask)
+                .withCeTask(CE_TASK)
+                .withProject(PostProjectAnalysisTaskTester.newProjectBuilder()
+                        .setUuid("uuid-" + projectKey)
+                        .setKey(projectKey)
+                        .setName(projectKey)
+                        .build())
+                .withScannerContext(newScannerContextBuilder().build())
+                .at(new Date())
+                .withQualityGate(qualityGate.build())
+                .execute();
+    }
+
+    /**
+     * Same as {@link #qualityGateWithConditions(PostProjectAnalysisTask, String, QualityGate.Status, int)}, but
+     * returns the analysis instead of passing it to a task, so that many can be built concurrently.
+     */
+    public static PostProjectAnalysisTask.ProjectAnalysis synthetic(String projectKey, QualityGate.Status status,
+                                                                    int conditionCount) {
+        CaptorPostProjectAnalysisTask captor = new CaptorPostProjectAnalysisTask();
+        qualityGateWithConditions(captor, projectKey, status, conditionCount);
+        return captor.getProjectAnalysis();
+    }
+
     public static void noQualityGate(PostProjectAnalysisTask analysisTask) {
         PostProjectAnalysisTaskTester.of(analysisTask)
                 .withCeTask(CE_TASK)
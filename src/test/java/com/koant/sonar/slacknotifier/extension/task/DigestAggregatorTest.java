@@ -0,0 +1,95 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.github.seratch.jslack.api.model.Attachment;
+import com.github.seratch.jslack.api.model.Field;
+import com.github.seratch.jslack.api.webhook.Payload;
+import com.koant.sonar.slacknotifier.common.delivery.Destination;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.i18n.I18n;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+
+public class DigestAggregatorTest {
+
+    private static final Destination RANDOM = new Destination("hook", "#random");
+    private static final Destination GENERAL = new Destination("hook", "#general");
+
+    private final List<ChannelDigest> sent = new ArrayList<>();
+    private final DigestAggregator aggregator = new DigestAggregator(sent::add, TimeUnit.HOURS.toMillis(1), () -> 0L, null);
+
+    @Test
+    public void shouldKeepLatestStatusPerProjectAndCountFailures() {
+        for (int i = 0; i < 100; i++) {
+            QualityGate.Status status = i % 4 == 0 ? QualityGate.Status.ERROR : QualityGate.Status.OK;
+            aggregator.add(RANDOM, Analyses.synthetic("project:" + (i % 3), status, 4), "url" + (i % 3));
+        }
+        aggregator.add(RANDOM, Analyses.synthetic("project:1", QualityGate.Status.ERROR, 4), "url1");
+        aggregator.add(GENERAL, Analyses.synthetic("project:0", QualityGate.Status.OK, 4), "url0");
+        assertThat(aggregator.size()).isEqualTo(2);
+
+        aggregator.flush();
+
+        assertThat(aggregator.size()).isZero();
+        assertThat(sent).extracting(ChannelDigest::getDestination).containsOnly(RANDOM, GENERAL);
+        ChannelDigest random = sent.stream().filter(d -> d.getDestination().equals(RANDOM)).findFirst().get();
+        assertThat(random.getAnalyses()).isEqualTo(101);
+        assertThat(random.getFailedAnalyses()).isEqualTo(26);
+        assertThat(random.getProjectCount()).isEqualTo(3);
+        assertThat(random.getFailingProjects()).extracting(ChannelDigest.ProjectStatus::getName).containsExactly("project:1");
+        assertThat(random.getWorstConditions(2)).hasSize(2);
+    }
+
+    @Test
+    public void shouldStartNewDigestAfterFlush() {
+        aggregator.add(RANDOM, Analyses.synthetic("project:0", QualityGate.Status.OK, 1), "url0");
+        aggregator.flush();
+        aggregator.flush();
+        assertThat(sent).hasSize(1);
+
+        aggregator.add(RANDOM, Analyses.synthetic("project:1", QualityGate.Status.OK, 1), "url1");
+        aggregator.stop();
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(1).getAnalyses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRenderFailingProjectsAndWorstConditions() {
+        aggregator.add(RANDOM, Analyses.synthetic("project:a", QualityGate.Status.ERROR, 4), "http://sonar/a");
+        aggregator.add(RANDOM, Analyses.synthetic("project:b", QualityGate.Status.OK, 4), "http://sonar/b");
+        aggregator.flush();
+        I18n i18n = Mockito.mock(I18n.class);
+        Mockito.when(i18n.message(Matchers.any(Locale.class), anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArguments()[2]);
+
+        Payload payload = DigestPayloadBuilder.of(sent.get(0))
+                .i18n(i18n)
+                .period(TimeUnit.DAYS.toMillis(1))
+                .username("user")
+                .build();
+
+        assertThat(payload.getChannel()).isEqualTo("#random");
+        assertThat(payload.getText())
+                .isEqualTo("Quality gate digest of the last day: 2 analyses of 2 projects, 1 failed. 1 not passing now:");
+        assertThat(payload.getAttachments()).extracting(Attachment::getText)
+                .contains("<http://sonar/a|project:a>: ERROR");
+        assertThat(payload.getAttachments().get(1).getFields()).extracting(Field::getTitle)
+                .containsExactly("new_vulnerabilities", "new_coverage");
+    }
+
+    @Test
+    public void shouldDescribePeriods() {
+        assertThat(DigestPayloadBuilder.describePeriod(TimeUnit.MINUTES.toMillis(30))).isEqualTo("30 minutes");
+        assertThat(DigestPayloadBuilder.describePeriod(TimeUnit.HOURS.toMillis(1))).isEqualTo("hour");
+        assertThat(DigestPayloadBuilder.describePeriod(TimeUnit.HOURS.toMillis(6))).isEqualTo("6 hours");
+        assertThat(DigestPayloadBuilder.describePeriod(TimeUnit.DAYS.toMillis(7))).isEqualTo("7 days");
+    }
+}
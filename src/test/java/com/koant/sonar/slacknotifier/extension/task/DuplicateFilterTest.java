@@ -0,0 +1,60 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import org.junit.Test;
+import org.sonar.api.ce.posttask.QualityGate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DuplicateFilterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final DuplicateFilter filter = new DuplicateFilter(100, 60, now::get);
+    private final CaptorPostProjectAnalysisTask captor = new CaptorPostProjectAnalysisTask();
+    private final ProjectConfig projectConfig = new ProjectConfig(Analyses.PROJECT_KEY, "#random", false);
+
+    @Test
+    public void shouldSuppressSameContentWithinTtl() {
+        Analyses.qualityGateOk4Conditions(captor);
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isFalse();
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isTrue();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isFalse();
+    }
+
+    @Test
+    public void shouldSendChangedContentAndOtherChannels() {
+        Analyses.qualityGateOk4Conditions(captor);
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isFalse();
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), new ProjectConfig(Analyses.PROJECT_KEY, "#other", false))).isFalse();
+
+        Analyses.qualityGateError2Of3ConditionsFailed(captor);
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isFalse();
+        assertThat(filter.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldSendAgainOnceForgotten() {
+        Analyses.qualityGateOk4Conditions(captor);
+        ProjectConfig otherChannel = new ProjectConfig(Analyses.PROJECT_KEY, "#other", false);
+        filter.isRepeat(captor.getProjectAnalysis(), projectConfig);
+        filter.isRepeat(captor.getProjectAnalysis(), otherChannel);
+
+        filter.forget(Analyses.PROJECT_KEY);
+
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), projectConfig)).isFalse();
+        assertThat(filter.isRepeat(captor.getProjectAnalysis(), otherChannel)).isFalse();
+    }
+
+    @Test
+    public void shouldOnlyFingerprintConditionsIncludedInTheMessage() {
+        Analyses.qualityGateWithConditions(captor, Analyses.PROJECT_KEY, QualityGate.Status.OK, 3);
+        QualityGate okGate = captor.getProjectAnalysis().getQualityGate();
+
+        assertThat(DuplicateFilter.fingerprint(okGate, true)).isNotEqualTo(DuplicateFilter.fingerprint(okGate, false));
+    }
+}
@@ -0,0 +1,141 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeasureFetcherTest {
+
+    private static final List<String> METRICS = Arrays.asList("coverage", "bugs", "sqale_rating");
+    private static final String MEASURES = "{\"component\":{\"key\":\"project\",\"measures\":["
+            + "{\"metric\":\"bugs\",\"value\":\"3\"},"
+            + "{\"metric\":\"coverage\",\"value\":\"81.2\"},"
+            + "{\"metric\":\"sqale_rating\",\"periods\":[{\"index\":1,\"value\":\"1.0\"}]}]},"
+            + "\"metrics\":[{\"key\":\"coverage\",\"type\":\"PERCENT\"},{\"key\":\"bugs\",\"type\":\"INT\"},"
+            + "{\"key\":\"sqale_rating\",\"type\":\"RATING\"}]}";
+
+    private HttpServer server;
+    private final List<HttpExchange> requests = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean slow;
+    private volatile int status = 200;
+    private MeasureFetcher fetcher;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/measures/component", exchange -> {
+            requests.add(exchange);
+            if (slow) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = (status == 200 ? MEASURES : "{\"errors\":[]}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void after() {
+        release.countDown();
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldCompleteWithoutMeasuresOnceClosed() throws Exception {
+        fetcher = fetcher(null);
+        fetcher.close();
+
+        assertThat(fetcher.fetch("project", "AV1", 2000).get(1, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    @Test
+    public void shouldFetchAllMetricsWithOneRequest() throws Exception {
+        fetcher = fetcher(null);
+
+        List<MeasureFetcher.Measure> measures = fetcher.fetch("project", "AV1", 2000).get(5, TimeUnit.SECONDS);
+
+        assertThat(measures).extracting(MeasureFetcher.Measure::getMetricKey).containsExactly("coverage", "bugs");
+        assertThat(measures).extracting(MeasureFetcher.Measure::getValue).containsExactly("81.2", "3");
+        assertThat(measures).extracting(MeasureFetcher.Measure::getType).containsExactly("PERCENT", "INT");
+        assertThat(requests).hasSize(1);
+        String query = requests.get(0).getRequestURI().getQuery();
+        assertThat(query).contains("componentKey=project").contains("metricKeys=coverage,bugs,sqale_rating");
+        assertThat(requests.get(0).getRequestHeaders().getFirst("Authorization")).isNull();
+    }
+
+    @Test
+    public void shouldFetchMeasuresOncePerAnalysis() throws Exception {
+        fetcher = fetcher(null);
+
+        fetcher.fetch("project", "AV1", 2000).get(5, TimeUnit.SECONDS);
+        fetcher.fetch("project", "AV1", 2000).get(5, TimeUnit.SECONDS);
+        assertThat(requests).hasSize(1);
+
+        fetcher.fetch("project", "AV2", 2000).get(5, TimeUnit.SECONDS);
+        assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    public void shouldGiveUpOnMeasuresAfterBudget() throws Exception {
+        fetcher = fetcher(null);
+        slow = true;
+
+        long start = System.nanoTime();
+        List<MeasureFetcher.Measure> measures = fetcher.fetch("project", "AV1", 100).get(5, TimeUnit.SECONDS);
+
+        assertThat(measures).isEmpty();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+    }
+
+    @Test
+    public void shouldSendTokenAsBasicAuthenticationLogin() throws Exception {
+        fetcher = fetcher("squ_token");
+
+        fetcher.fetch("project", "AV1", 2000).get(5, TimeUnit.SECONDS);
+
+        String expected = "Basic " + Base64.getEncoder().encodeToString("squ_token:".getBytes(StandardCharsets.UTF_8));
+        assertThat(requests.get(0).getRequestHeaders().getFirst("Authorization")).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldGiveNoMeasuresForUnknownProjectsAndErrors() throws Exception {
+        fetcher = fetcher(null);
+
+        status = 404;
+        assertThat(fetcher.fetch("unknown", "AV1", 2000).get(5, TimeUnit.SECONDS)).isEmpty();
+        status = 500;
+        assertThat(fetcher.fetch("project", "AV1", 2000).get(5, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    private MeasureFetcher fetcher(String token) {
+        return new MeasureFetcher("http://127.0.0.1:" + server.getAddress().getPort() + "/", token, METRICS, 1000, 5000);
+    }
+}
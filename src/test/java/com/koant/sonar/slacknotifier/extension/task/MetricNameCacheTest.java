@@ -0,0 +1,46 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.sonar.api.i18n.I18n;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetricNameCacheTest {
+
+    private final MetricNameCache cache = new MetricNameCache();
+
+    @Test
+    public void shouldLookUpEachMetricOncePerLocale() {
+        I18n i18n = Mockito.mock(I18n.class);
+        when(i18n.message(eq(Locale.ENGLISH), eq("metric.new_bugs.name"), eq("new_bugs"))).thenReturn("New Bugs");
+        when(i18n.message(eq(Locale.FRENCH), eq("metric.new_bugs.name"), eq("new_bugs"))).thenReturn("Nouveaux bugs");
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(cache.name(i18n, Locale.ENGLISH, "new_bugs")).isEqualTo("New Bugs");
+            assertThat(cache.name(i18n, Locale.FRENCH, "new_bugs")).isEqualTo("Nouveaux bugs");
+        }
+
+        verify(i18n, times(2)).message(any(Locale.class), eq("metric.new_bugs.name"), eq("new_bugs"));
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldForgetNamesOfPreviousI18n() {
+        I18n before = Mockito.mock(I18n.class);
+        when(before.message(Locale.ENGLISH, "metric.new_bugs.name", "new_bugs")).thenReturn("New Bugs");
+        I18n reloaded = Mockito.mock(I18n.class);
+        when(reloaded.message(Locale.ENGLISH, "metric.new_bugs.name", "new_bugs")).thenReturn("Bugs on New Code");
+
+        assertThat(cache.name(before, Locale.ENGLISH, "new_bugs")).isEqualTo("New Bugs");
+        assertThat(cache.name(reloaded, Locale.ENGLISH, "new_bugs")).isEqualTo("Bugs on New Code");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+}
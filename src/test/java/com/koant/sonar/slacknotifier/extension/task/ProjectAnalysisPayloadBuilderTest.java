@@ -5,17 +5,23 @@ import static org.assertj.core.api.Assertions.assertThat;
 import com.github.seratch.jslack.api.model.Attachment;
 import com.github.seratch.jslack.api.model.Field;
 import com.github.seratch.jslack.api.webhook.Payload;
+import com.github.seratch.jslack.common.json.GsonFactory;
+import com.google.gson.Gson;
 import com.koant.sonar.slacknotifier.common.component.ProjectConfig;
+import com.koant.sonar.slacknotifier.common.delivery.SlackLimits;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.utils.System2;
 import org.sonar.core.i18n.DefaultI18n;
 import org.sonar.core.platform.PluginRepository;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -130,6 +136,116 @@ public class ProjectAnalysisPayloadBuilderTest {
                 .contains("Functions: WARN", "Issues: ERROR");
     }
 
+    @Test
+    public void shouldFormatNumbersInConfiguredLocale() throws Exception {
+        Analyses.qualityGateOk4Conditions(postProjectAnalysisTask);
+        ProjectConfig projectConfig = new ProjectConfig("key", "#channel", false);
+        MetricNameCache metricNames = new MetricNameCache();
+        Payload payload = ProjectAnalysisPayloadBuilder.of(postProjectAnalysisTask.getProjectAnalysis())
+                .projectConfig(projectConfig)
+                .i18n(i18n)
+                .locale(Locale.FRENCH)
+                .metricNames(metricNames)
+                .projectUrl("http://localhist:9000/dashboard?id=project:key")
+                .username("CKSSlackNotifier")
+                .build();
+
+        assertThat(payload.getAttachments())
+                .flatExtracting(Attachment::getFields)
+                .extracting(Field::getValue)
+                .contains("75,51%, error if <80.0%");
+        assertThat(metricNames.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldRenderProjectTemplatesOverGlobalOnes() throws Exception {
+        Analyses.qualityGateOk4Conditions(postProjectAnalysisTask);
+        ProjectConfig projectConfig = new ProjectConfig("key", "#channel", false, false,
+                "${project.name} (${project.key}) is ${qualityGate.status}", null);
+        Payload payload = ProjectAnalysisPayloadBuilder.of(postProjectAnalysisTask.getProjectAnalysis())
+                .projectConfig(projectConfig)
+                .i18n(i18n)
+                .messageTemplate("Global ${project.name}")
+                .conditionTemplate("${condition.status} ${condition.metric} = ${condition.value}")
+                .projectUrl("http://localhist:9000/dashboard?id=project:key")
+                .username("CKSSlackNotifier")
+                .build();
+
+        assertThat(payload.getText()).isEqualTo("Project Name (project:key) is OK");
+        assertThat(payload.getAttachments())
+                .flatExtracting(Attachment::getFields)
+                .extracting(Field::getTitle)
+                .contains("ERROR Coverage on New Code = 75.51%");
+    }
+
+    @Test
+    public void shouldBuildOneMessageIfItFitsSlackLimits() throws Exception {
+        Analyses.qualityGateOk4Conditions(postProjectAnalysisTask);
+        List<Payload> messages = builder(new ProjectConfig("key", "#channel", false)).buildMessages();
+        assertThat(messages).containsExactly(expected());
+    }
+
+    @Test
+    public void shouldCollapsePassingConditionsOfLargeQualityGates() throws Exception {
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, "key", QualityGate.Status.ERROR, 200);
+        List<Payload> messages = builder(new ProjectConfig("key", "#channel", false)).buildMessages();
+
+        assertThat(messages).hasSize(1);
+        assertFitsSlackLimits(messages);
+        List<Field> fields = messages.get(0).getAttachments().get(0).getFields();
+        // 50 ERROR and 50 WARN conditions, and a summary of the 50 OK and 50 NO_VALUE ones
+        assertThat(fields).hasSize(101);
+        assertThat(fields.get(100).getTitle()).isEqualTo("Other conditions");
+        assertThat(fields.get(100).getValue()).isEqualTo("50 OK, 50 without value");
+    }
+
+    @Test
+    public void shouldSplitFailedConditionsOverSeveralMessages() throws Exception {
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, "key", QualityGate.Status.ERROR, 1000);
+        List<Payload> messages = builder(new ProjectConfig("key", "#channel", QG_FAIL_ONLY)).buildMessages();
+
+        assertThat(messages.size()).isGreaterThan(1);
+        assertFitsSlackLimits(messages);
+        assertThat(messages.get(0).getText()).startsWith("Project [key] analyzed.");
+        assertThat(messages.get(1).getText()).isEqualTo("key quality gate conditions, continued");
+        assertThat(messages).flatExtracting(m -> m.getAttachments().get(0).getFields()).hasSize(500);
+    }
+
+    @Test
+    public void shouldAddMeasuresAttachmentToFirstMessage() throws Exception {
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, "key", QualityGate.Status.ERROR, 1000);
+        List<Payload> messages = builder(new ProjectConfig("key", "#channel", QG_FAIL_ONLY))
+                .measures(Arrays.asList(
+                        new MeasureFetcher.Measure("coverage", "81.256", "PERCENT"),
+                        new MeasureFetcher.Measure("bugs", "3", "INT"),
+                        new MeasureFetcher.Measure("reliability_rating", "2.0", "RATING")))
+                .buildMessages();
+
+        assertFitsSlackLimits(messages);
+        assertThat(messages.get(0).getAttachments()).hasSize(2);
+        Attachment measures = messages.get(0).getAttachments().get(1);
+        assertThat(measures.getText()).isEqualTo("Measures");
+        assertThat(measures.getFields()).extracting(Field::getTitle).containsExactly("Coverage", "Bugs", "Reliability Rating");
+        assertThat(measures.getFields()).extracting(Field::getValue).containsExactly("81.26%", "3", "B");
+        assertThat(messages.get(1).getAttachments()).hasSize(1);
+    }
+
+    private ProjectAnalysisPayloadBuilder builder(ProjectConfig projectConfig) {
+        return ProjectAnalysisPayloadBuilder.of(postProjectAnalysisTask.getProjectAnalysis())
+                .projectConfig(projectConfig)
+                .i18n(i18n)
+                .projectUrl("http://localhist:9000/dashboard?id=project:key")
+                .username("CKSSlackNotifier");
+    }
+
+    private static void assertFitsSlackLimits(List<Payload> messages) {
+        Gson gson = GsonFactory.createSnakeCase();
+        for (Payload message : messages) {
+            assertThat(SlackLimits.payloadLength(message)).isLessThanOrEqualTo(SlackLimits.MAX_PAYLOAD_BYTES);
+            assertThat(gson.toJson(message).getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(SlackLimits.MAX_PAYLOAD_BYTES);
+        }
+    }
+
     @Test
     public void buildPayloadWithoutQualityGateWay() throws Exception {
         Analyses.noQualityGate(postProjectAnalysisTask);
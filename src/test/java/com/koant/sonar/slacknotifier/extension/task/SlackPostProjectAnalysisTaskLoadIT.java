@@ -0,0 +1,166 @@
+package com.koant.sonar.slacknotifier.extension.task;
+
+import com.koant.sonar.slacknotifier.common.delivery.SlackWebhookStub;
+import com.koant.sonar.slacknotifier.common.metrics.LatencyHistogram;
+import com.koant.sonar.slacknotifier.common.metrics.LatencySnapshot;
+import com.koant.sonar.slacknotifier.common.metrics.SlackNotifierMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.sonar.api.ce.posttask.PostProjectAnalysisTask;
+import org.sonar.api.ce.posttask.QualityGate;
+import org.sonar.api.config.MapSettings;
+import org.sonar.api.config.Settings;
+import org.sonar.api.i18n.I18n;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.koant.sonar.slacknotifier.common.SlackNotifierProp.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+
+/**
+ * End to end load test: many threads hand synthetic analyses to the task, which delivers them over HTTP to an
+ * embedded webhook stub injecting latency, rate limiting, server errors and timeouts.
+ * <p>
+ * Run by failsafe during {@code mvn verify}. The load profile can be tuned with system properties, for instance
+ * {@code mvn verify -Dload.analyses=20000 -Dload.threads=16 -Dload.serverErrors=0.1}.
+ * </p>
+ */
+public class SlackPostProjectAnalysisTaskLoadIT {
+
+    private static final int ANALYSES = Integer.getInteger("load.analyses", 2000);
+    private static final int THREADS = Integer.getInteger("load.threads", 8);
+    private static final int CONDITIONS = Integer.getInteger("load.conditions", 5);
+    private static final long LATENCY_MS = Long.getLong("load.latencyMs", 5L);
+    private static final double RATE_LIMITED = doubleProperty("load.rateLimited", 0.002);
+    private static final double SERVER_ERRORS = doubleProperty("load.serverErrors", 0.02);
+    private static final double TIMEOUTS = doubleProperty("load.timeouts", 0.002);
+    private static final double MIN_THROUGHPUT = doubleProperty("load.minThroughput", 50);
+    private static final long DRAIN_TIMEOUT_MS = Long.getLong("load.drainTimeoutMs", 120_000L);
+
+    private static final int READ_TIMEOUT_MS = 1000;
+    private static final int DEADLINE_MS = 2000;
+
+    private SlackWebhookStub stub;
+    private SlackPostProjectAnalysisTask task;
+
+    @Before
+    public void before() throws Exception {
+        stub = new SlackWebhookStub()
+                .delay(LATENCY_MS)
+                .rateLimit(RATE_LIMITED, "1")
+                .serverErrors(SERVER_ERRORS)
+                .timeouts(TIMEOUTS, DEADLINE_MS + 500L)
+                .discardBodies();
+
+        Settings settings = new MapSettings();
+        settings.setProperty(ENABLED.property(), "true");
+        settings.setProperty(HOOK.property(), stub.url());
+        settings.setProperty(USER.property(), "load");
+        settings.setProperty(CONFIG.property(), "load");
+        settings.setProperty(CONFIG.property() + ".load." + PROJECT.property(), "load:*");
+        settings.setProperty(CONFIG.property() + ".load." + CHANNEL.property(), "#load");
+        settings.setProperty(CONFIG.property() + ".load." + QG_FAIL_ONLY.property(), "false");
+        settings.setProperty(DELIVERY_QUEUE_CAPACITY.property(), String.valueOf(ANALYSES));
+        settings.setProperty(DELIVERY_WORKERS.property(), String.valueOf(THREADS));
+        settings.setProperty(DELIVERY_RATE.property(), "100000");
+        settings.setProperty(DELIVERY_RETRY_ATTEMPTS.property(), "4");
+        settings.setProperty(HTTP_READ_TIMEOUT.property(), String.valueOf(READ_TIMEOUT_MS));
+        settings.setProperty(HTTP_DEADLINE.property(), String.valueOf(DEADLINE_MS));
+        settings.setProperty(CIRCUIT_OPEN_SECONDS.property(), "1");
+        settings.setProperty("sonar.core.serverBaseURL", "http://localhost:9000/");
+
+        I18n i18n = Mockito.mock(I18n.class);
+        Mockito.when(i18n.message(Matchers.any(Locale.class), anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArguments()[2]);
+
+        task = new SlackPostProjectAnalysisTask(settings, i18n);
+    }
+
+    @After
+    public void after() {
+        task.stop();
+        stub.close();
+    }
+
+    @Test
+    public void deliversEveryNotificationUnderConcurrentLoadWithInjectedFailures() throws Exception {
+        List<PostProjectAnalysisTask.ProjectAnalysis> analyses = new ArrayList<>(ANALYSES);
+        for (int i = 0; i < ANALYSES; i++) {
+            QualityGate.Status status = i % 3 == 0 ? QualityGate.Status.ERROR : QualityGate.Status.OK;
+            analyses.add(Analyses.synthetic("load:project-" + i, status, CONDITIONS));
+        }
+
+        LatencyHistogram finishedLatency = new LatencyHistogram();
+        ExecutorService producers = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int first = t;
+            futures.add(producers.submit(() -> {
+                start.await();
+                for (int i = first; i < ANALYSES; i += THREADS) {
+                    long begin = System.nanoTime();
+                    task.finished(analyses.get(i));
+                    finishedLatency.record(System.nanoTime() - begin);
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        producers.shutdown();
+
+        SlackNotifierMetrics metrics = task.getMetrics();
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (accountedFor(metrics) < ANALYSES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        double elapsedSeconds = (System.nanoTime() - began) / 1e9;
+
+        report(metrics, finishedLatency.snapshot(), elapsedSeconds);
+
+        assertThat(accountedFor(metrics)).as("notifications accounted for").isEqualTo(ANALYSES);
+        assertThat(metrics.getDroppedCount()).as("dropped").isZero();
+        assertThat(metrics.getDeliveredCount()).as("delivered").isEqualTo(stub.acceptedCount());
+        assertThat(metrics.getDeliveredCount() / elapsedSeconds).as("throughput").isGreaterThanOrEqualTo(MIN_THROUGHPUT);
+    }
+
+    private static long accountedFor(SlackNotifierMetrics metrics) {
+        return metrics.getDeliveredCount() + metrics.getFailedCount() + metrics.getDroppedCount();
+    }
+
+    private void report(SlackNotifierMetrics metrics, LatencySnapshot finishedLatency, double elapsedSeconds) {
+        StringBuilder report = new StringBuilder()
+                .append(String.format(Locale.ENGLISH, "%n--- Slack notifier load test ---%n"))
+                .append(String.format(Locale.ENGLISH, "analyses=%d threads=%d conditions=%d latency=%dms rateLimited=%.3f serverErrors=%.3f timeouts=%.3f%n",
+                        ANALYSES, THREADS, CONDITIONS, LATENCY_MS, RATE_LIMITED, SERVER_ERRORS, TIMEOUTS))
+                .append(String.format(Locale.ENGLISH, "elapsed=%.2fs throughput=%.1f delivered/s webhook requests=%d%n",
+                        elapsedSeconds, metrics.getDeliveredCount() / elapsedSeconds, stub.requestCount()))
+                .append(String.format(Locale.ENGLISH, "delivered=%d failed=%d dropped=%d parked=%d circuitsOpened=%d%n",
+                        metrics.getDeliveredCount(), metrics.getFailedCount(), metrics.getDroppedCount(),
+                        metrics.getParked(), metrics.getCircuitOpenedCount()))
+                .append("finished()      ").append(finishedLatency).append(System.lineSeparator())
+                .append("payload build   ").append(metrics.getPayloadBuildLatency()).append(System.lineSeparator())
+                .append("webhook         ").append(metrics.getWebhookLatency()).append(System.lineSeparator());
+        System.out.println(report);
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
@@ -4,22 +4,37 @@ import com.github.seratch.jslack.Slack;
 import com.github.seratch.jslack.api.webhook.Payload;
 import com.github.seratch.jslack.api.webhook.WebhookResponse;
 import com.koant.sonar.slacknotifier.common.SlackNotifierProp;
+import com.koant.sonar.slacknotifier.common.delivery.Notification;
+import com.koant.sonar.slacknotifier.common.metrics.SkipReason;
+import com.koant.sonar.slacknotifier.common.metrics.SlackNotifierMetrics;
+import com.koant.sonar.slacknotifier.common.outbox.OutboxJournal;
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sonar.api.ce.posttask.QualityGate;
 import org.sonar.api.config.MapSettings;
 import org.sonar.api.config.Settings;
 import org.sonar.api.i18n.I18n;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Collections;
 import java.util.Locale;
+import java.util.Objects;
 
 import static com.koant.sonar.slacknotifier.common.SlackNotifierProp.*;
 import static com.koant.sonar.slacknotifier.extension.task.Analyses.PROJECT_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +47,9 @@ public class SlackPostProjectAnalysisTaskTest {
     private static final String HOOK = "hook";
     private static final String DIFFERENT_KEY = "different:key";
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     CaptorPostProjectAnalysisTask postProjectAnalysisTask;
     SlackPostProjectAnalysisTask task;
     private Slack slackClient;
@@ -64,11 +82,16 @@ public class SlackPostProjectAnalysisTaskTest {
         task = new SlackPostProjectAnalysisTask(slackClient, settings, i18n);
     }
 
+    @After
+    public void after() {
+        task.stop();
+    }
+
     @Test
     public void shouldCall() throws Exception {
         Analyses.simple(postProjectAnalysisTask);
         task.finished(postProjectAnalysisTask.getProjectAnalysis());
-        Mockito.verify(slackClient, times(1)).send(eq(HOOK), any(Payload.class));
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), any(Payload.class));
     }
 
     @Test
@@ -86,6 +109,21 @@ public class SlackPostProjectAnalysisTaskTest {
         Mockito.verifyZeroInteractions(slackClient);
     }
 
+    @Test
+    public void shouldRejectKnownUnconfiguredProjectWithoutLookupUntilConfigsChange() throws Exception {
+        Analyses.simpleDifferentKey(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        assertThat(task.getMetrics().getSkippedCounts()).containsEntry(SkipReason.NO_PROJECT_CONFIG.name(), 2L);
+        assertThat(task.getMetrics().getConfigLookupLatency().getCount()).isEqualTo(1);
+
+        settings.setProperty(CONFIG.property(), PROJECT_KEY + "," + DIFFERENT_KEY);
+        settings.setProperty(CONFIG.property() + "." + DIFFERENT_KEY + "." + PROJECT.property(), DIFFERENT_KEY);
+        settings.setProperty(CONFIG.property() + "." + DIFFERENT_KEY + "." + CHANNEL.property(), "#general");
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#general")));
+    }
+
     @Test
     public void shouldSkipIfReportFailedQualityGateButOk() throws Exception {
         settings.setProperty(CONFIG.property() + "." + PROJECT_KEY + "." + QG_FAIL_ONLY.property(), "true");
@@ -93,4 +131,209 @@ public class SlackPostProjectAnalysisTaskTest {
         task.finished(postProjectAnalysisTask.getProjectAnalysis());
         Mockito.verifyZeroInteractions(slackClient);
     }
+
+    @Test
+    public void shouldSuppressDuplicateWithinTtl() throws Exception {
+        settings.setProperty(DEDUP_TTL.property(), "60");
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), any(Payload.class));
+        assertThat(task.getMetrics().getSkippedCounts()).containsEntry(SkipReason.DUPLICATE.name(), 1L);
+    }
+
+    @Test
+    public void shouldNotSuppressDuplicateOfFailedNotification() throws Exception {
+        settings.setProperty(DEDUP_TTL.property(), "60");
+        when(slackClient.send(eq(HOOK), any(Payload.class)))
+                .thenReturn(WebhookResponse.builder().code(404).body("channel_not_found").build())
+                .thenReturn(WebhookResponse.builder().code(200).build());
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        SlackNotifierMetrics metrics = task.getMetrics();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (metrics.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+
+        Mockito.verify(slackClient, timeout(2000).times(2)).send(eq(HOOK), any(Payload.class));
+        assertThat(metrics.getSkippedCounts()).containsEntry(SkipReason.DUPLICATE.name(), 0L);
+    }
+
+    @Test
+    public void shouldOnlySendOnStatusChangeIfConfigured() throws Exception {
+        settings.setProperty(CONFIG.property() + "." + PROJECT_KEY + "." + STATUS_CHANGE_ONLY.property(), "true");
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, PROJECT_KEY, QualityGate.Status.OK, 4);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, PROJECT_KEY, QualityGate.Status.ERROR, 4);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verify(slackClient, timeout(2000).times(2)).send(eq(HOOK), any(Payload.class));
+        assertThat(task.getMetrics().getSkippedCounts()).containsEntry(SkipReason.STATUS_UNCHANGED.name(), 1L);
+    }
+
+    @Test
+    public void shouldSendToEveryDestinationIndependently() throws Exception {
+        String failingHook = "https://hooks.example.com/failing";
+        when(slackClient.send(eq(failingHook), any(Payload.class))).thenReturn(WebhookResponse.builder().code(404).build());
+        settings.setProperty(CONFIG.property() + "." + PROJECT_KEY + "." + CHANNEL.property(), "#random, " + failingHook + ", #general");
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#random")));
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#general")));
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(failingHook), Matchers.argThat(hasChannel(null)));
+        SlackNotifierMetrics metrics = task.getMetrics();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (metrics.getDeliveredCount() + metrics.getFailedCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(metrics.getDeliveredCount()).isEqualTo(2);
+        assertThat(metrics.getFailedCount()).isEqualTo(1);
+        assertThat(metrics.getPayloadBuildLatency().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotReplayNotificationsThatFailedForGood() throws Exception {
+        settings.setProperty(DATA_DIR.property(), temporaryFolder.getRoot().getAbsolutePath());
+        settings.setProperty(OUTBOX_ENABLED.property(), "true");
+        when(slackClient.send(eq(HOOK), any(Payload.class))).thenReturn(WebhookResponse.builder().code(404).body("channel_not_found").build());
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+
+        SlackNotifierMetrics metrics = task.getMetrics();
+        long deadline = System.currentTimeMillis() + 2000;
+        while (metrics.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(metrics.getFailedCount()).isEqualTo(1);
+        task.stop();
+
+        try (OutboxJournal outbox = OutboxJournal.open(temporaryFolder.getRoot().toPath().resolve("outbox"))) {
+            assertThat(outbox.undelivered(Collections.singleton(HOOK))).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldResendUndeliveredNotificationsToConfiguredHooksOnStart() throws Exception {
+        settings.setProperty(DATA_DIR.property(), temporaryFolder.getRoot().getAbsolutePath());
+        settings.setProperty(OUTBOX_ENABLED.property(), "true");
+        try (OutboxJournal outbox = OutboxJournal.open(temporaryFolder.getRoot().toPath().resolve("outbox"))) {
+            outbox.append(new Notification(PROJECT_KEY, HOOK, Payload.builder().channel("#random").text("pending").build()));
+            outbox.append(new Notification(PROJECT_KEY, "https://hooks.example.com/removed", Payload.builder().text("orphan").build()));
+        }
+
+        task.start();
+
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#random")));
+        Mockito.verify(slackClient, times(1)).send(anyString(), any(Payload.class));
+    }
+
+    @Test
+    public void shouldResendUndeliveredNotificationsToTheHooksOfEveryRuleOnStart() throws Exception {
+        String alertsHook = "https://hooks.example.com/alerts";
+        settings.setProperty(CONFIG.property(), PROJECT_KEY + ",alerts");
+        settings.setProperty(CONFIG.property() + ".alerts." + PROJECT.property(), PROJECT_KEY);
+        settings.setProperty(CONFIG.property() + ".alerts." + CHANNEL.property(), alertsHook);
+        settings.setProperty(CONFIG.property() + ".alerts." + QG_STATUS.property(), "ERROR");
+        settings.setProperty(DATA_DIR.property(), temporaryFolder.getRoot().getAbsolutePath());
+        settings.setProperty(OUTBOX_ENABLED.property(), "true");
+        try (OutboxJournal outbox = OutboxJournal.open(temporaryFolder.getRoot().toPath().resolve("outbox"))) {
+            outbox.append(new Notification(PROJECT_KEY, alertsHook, Payload.builder().text("alert").build()));
+        }
+
+        task.start();
+
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(alertsHook), any(Payload.class));
+    }
+
+    @Test
+    public void shouldRouteToFirstConfigMatchingTheQualityGateStatus() throws Exception {
+        settings.setProperty(CONFIG.property(), "alerts," + PROJECT_KEY);
+        settings.setProperty(CONFIG.property() + ".alerts." + PROJECT.property(), PROJECT_KEY);
+        settings.setProperty(CONFIG.property() + ".alerts." + CHANNEL.property(), "#alerts");
+        settings.setProperty(CONFIG.property() + ".alerts." + QG_STATUS.property(), "ERROR");
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#random")));
+        Mockito.verify(slackClient, times(0)).send(eq(HOOK), Matchers.argThat(hasChannel("#alerts")));
+    }
+
+    @Test
+    public void shouldAddAnalysesToDigestAndSendItAtTheEndOfThePeriod() throws Exception {
+        settings.setProperty(CONFIG.property() + "." + PROJECT_KEY + "." + DIGEST.property(), "true");
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, PROJECT_KEY, QualityGate.Status.OK, 4);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Analyses.qualityGateWithConditions(postProjectAnalysisTask, PROJECT_KEY, QualityGate.Status.ERROR, 4);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verifyZeroInteractions(slackClient);
+        assertThat(task.getMetrics().getDigestedCount()).isEqualTo(2);
+
+        task.sendDigests();
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), Matchers.argThat(new ArgumentMatcher<Payload>() {
+            @Override
+            public boolean matches(Object payload) {
+                return "#random".equals(((Payload) payload).getChannel())
+                        && ((Payload) payload).getText().startsWith("Quality gate digest of the last hour: 2 analyses of 1 project, 1 failed.");
+            }
+        }));
+    }
+
+    @Test
+    public void shouldSendWithoutMeasuresIfTheyCannotBeFetched() throws Exception {
+        settings.setProperty(MEASURES.property(), "coverage,bugs");
+        settings.setProperty(MEASURES_BUDGET.property(), "200");
+        settings.setProperty("sonar.core.serverBaseURL", "http://127.0.0.1:1/");
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verify(slackClient, timeout(5000).times(1)).send(eq(HOOK), Matchers.argThat(hasChannel("#random")));
+    }
+
+    @Test
+    public void shouldNotSendNotificationsWhoseMeasuresArriveAfterStop() throws Exception {
+        // Accepts connections but never answers
+        try (ServerSocket sonarQube = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            settings.setProperty(MEASURES.property(), "coverage");
+            settings.setProperty(MEASURES_BUDGET.property(), "300");
+            settings.setProperty("sonar.core.serverBaseURL", "http://127.0.0.1:" + sonarQube.getLocalPort() + "/");
+            Analyses.simple(postProjectAnalysisTask);
+            task.finished(postProjectAnalysisTask.getProjectAnalysis());
+            task.stop();
+
+            Mockito.verify(slackClient, Mockito.after(1000).never()).send(anyString(), any(Payload.class));
+            assertThat(task.getMetrics().getDroppedCount()).isEqualTo(1);
+        }
+    }
+
+    private static ArgumentMatcher<Payload> hasChannel(String channel) {
+        return new ArgumentMatcher<Payload>() {
+            @Override
+            public boolean matches(Object payload) {
+                return Objects.equals(channel, ((Payload) payload).getChannel());
+            }
+        };
+    }
+
+    @Test
+    public void shouldRecordMetrics() throws Exception {
+        Analyses.simple(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Analyses.simpleDifferentKey(postProjectAnalysisTask);
+        task.finished(postProjectAnalysisTask.getProjectAnalysis());
+        Mockito.verify(slackClient, timeout(2000).times(1)).send(eq(HOOK), any(Payload.class));
+
+        SlackNotifierMetrics metrics = task.getMetrics();
+        assertThat(metrics.getSkippedCounts()).containsEntry(SkipReason.NO_PROJECT_CONFIG.name(), 1L);
+        assertThat(metrics.getPayloadBuildLatency().getCount()).isEqualTo(1);
+        assertThat(metrics.getConfigLookupLatency().getCount()).isEqualTo(2);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (metrics.getDeliveredCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(metrics.getDeliveredCount()).isEqualTo(1);
+        assertThat(metrics.getWebhookLatency().getCount()).isEqualTo(1);
+    }
 }